@@ -0,0 +1,97 @@
+/*
+ * Measures the heap used by 1M bugs (the bugs with their texts, not the
+ * table): a class with the fields Bug had before it was packed (an int, two
+ * enums, two Strings, a new String for the empty solution) and Bug.
+ * A third of the bugs are resolved, half of those with a common solution
+ * ("Works as designed") and half with their own.
+ * Run it once more with -Dbugzilla.compactText=true for the UTF-8 texts.
+ *
+ * USAGE: ./benchrun.sh BugFootprint [bugs]
+ */
+public class BugFootprint {
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        System.out.println("bugzilla.compactText=" + Boolean.getBoolean("bugzilla.compactText"));
+
+        long base = usedHeap();
+        FieldBug[] fieldBugs = new FieldBug[count];
+        for (int i = 0; i < count; i++) {
+            fieldBugs[i] = new FieldBug(i, description(i));
+            if (i % 3 == 0) {
+                fieldBugs[i].state = Bug.State.RESOLVED;
+                fieldBugs[i].solutionType = Bug.Resolution.FIXED;
+                fieldBugs[i].solutionInfo = solution(i);
+            }
+        }
+        report("fields of the old Bug", count, usedHeap() - base - arrayBytes(count));
+        fieldBugs = null;
+
+        base = usedHeap();
+        Bug[] bugs = new Bug[count];
+        for (int i = 0; i < count; i++) {
+            bugs[i] = new Bug(i, description(i));
+            if (i % 3 == 0) {
+                bugs[i].setAsResolved(Bug.Resolution.FIXED, solution(i));
+            }
+        }
+        report("Bug", count, usedHeap() - base - arrayBytes(count));
+
+        long length = 0;
+        long start = System.nanoTime();
+        for (Bug bug : bugs) {
+            length += bug.getBugDescription().length() + bug.getSolutionInfo().length();
+        }
+        long nanos = System.nanoTime() - start;
+        System.out.println(String.format("%-24s %6.1f ns/bug to read both texts (%d)",
+                "Bug", (double) nanos / count, length));
+    }
+
+    private static String description(int i) {
+        return "The window does not open after the update " + i;
+    }
+
+    private static String solution(int i) {
+        return (i % 2 == 0) ? "Works as designed" : "Fixed the update in build " + i;
+    }
+
+    private static void report(String name, int count, long bytes) {
+        System.out.println(String.format("%-24s %8.1f MB %6.1f bytes/bug",
+                name, bytes / (1024.0 * 1024.0), (double) bytes / count));
+    }
+
+    // The array holding the bugs, with compressed references
+    private static long arrayBytes(int count) {
+        return 16 + 4L * count;
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /*
+     * The fields of Bug before it was packed
+     */
+    private static class FieldBug {
+        FieldBug(int id, String description) {
+            ID = id;
+            bugDescription = description;
+            state = Bug.State.UNCONFIRMED;
+            solutionType = Bug.Resolution.UNRESOLVED;
+            solutionInfo = new String();
+        }
+
+        private int ID;
+        private String bugDescription;
+        private volatile Bug.State state;
+        private volatile Bug.Resolution solutionType;
+        private volatile String solutionInfo;
+        private transient int dirty;
+        private transient Object index;
+    }
+}
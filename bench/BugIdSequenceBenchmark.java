@@ -0,0 +1,57 @@
+import java.util.concurrent.CountDownLatch;
+
+/*
+ * Measures the throughput of BugIdSequence with 1, 2, 4 ... threads,
+ * taking the IDs one by one from the shared counter and in blocks.
+ *
+ * USAGE: ./benchrun.sh BugIdSequenceBenchmark [IDs per thread] [block size]
+ */
+public class BugIdSequenceBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        final int perThread = args.length > 0 ? Integer.parseInt(args[0]) : 10000000;
+        int blockSize = args.length > 1 ? Integer.parseInt(args[1]) : 256;
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        for (int threads = 1; threads <= cores; threads *= 2) {
+            for (int block : new int[]{1, blockSize}) {
+                final BugIdSequence ids = new BugIdSequence(block);
+
+                long start = System.nanoTime();
+                runThreads(threads, new Task() {
+                    void run(int t) {
+                        for (int i = 0; i < perThread; i++) {
+                            ids.next();
+                        }
+                    }
+                });
+                long nanos = System.nanoTime() - start;
+
+                long total = (long) perThread * threads;
+                System.out.println(String.format("threads %3d  block %5d  %14.0f IDs/s",
+                        threads, block, total / (nanos / 1e9)));
+            }
+        }
+    }
+
+    private static void runThreads(int count, final Task task) throws Exception {
+        final CountDownLatch done = new CountDownLatch(count);
+        for (int t = 0; t < count; t++) {
+            final int index = t;
+            new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        task.run(index);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+        done.await();
+    }
+
+    private abstract static class Task {
+        abstract void run(int t);
+    }
+}
@@ -0,0 +1,85 @@
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Compares the heap used by the bug table with 1M bugs: the HashMap and
+ * ConcurrentHashMap that Bugzilla used before, and BugStore.
+ * The bugs are created once and shared, so only the cost of the table
+ * (entries, boxed keys, arrays) is measured. Then measures random lookups.
+ *
+ * USAGE: ./benchrun.sh BugStoreFootprint [bugs]
+ */
+public class BugStoreFootprint {
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+
+        Bug[] bugs = new Bug[count];
+        for (int i = 0; i < count; i++) {
+            bugs[i] = new Bug(i, "bug");
+        }
+
+        long base = usedHeap();
+        Map<Integer, Bug> hashMap = new HashMap<Integer, Bug>();
+        for (Bug bug : bugs) {
+            hashMap.put(bug.getID(), bug);
+        }
+        report("HashMap<Integer, Bug>", count, usedHeap() - base);
+        lookups("HashMap<Integer, Bug>", hashMap, count);
+        hashMap = null;
+
+        base = usedHeap();
+        Map<Integer, Bug> concurrentMap = new ConcurrentHashMap<Integer, Bug>();
+        for (Bug bug : bugs) {
+            concurrentMap.put(bug.getID(), bug);
+        }
+        report("ConcurrentHashMap<Integer, Bug>", count, usedHeap() - base);
+        lookups("ConcurrentHashMap<Integer, Bug>", concurrentMap, count);
+        concurrentMap = null;
+
+        base = usedHeap();
+        BugStore store = new BugStore();
+        for (Bug bug : bugs) {
+            store.put(bug);
+        }
+        report("BugStore", count, usedHeap() - base);
+
+        Random random = new Random(0);
+        long found = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < LOOKUPS; i++) {
+            found += store.get(random.nextInt(count)).getID();
+        }
+        long nanos = System.nanoTime() - start;
+        System.out.println(String.format("%-32s lookup %6.1f ns (%d)", "BugStore", (double) nanos / LOOKUPS, found));
+    }
+
+    private static void lookups(String name, Map<Integer, Bug> map, int count) {
+        Random random = new Random(0);
+        long found = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < LOOKUPS; i++) {
+            found += map.get(random.nextInt(count)).getID();
+        }
+        long nanos = System.nanoTime() - start;
+        System.out.println(String.format("%-32s lookup %6.1f ns (%d)", name, (double) nanos / LOOKUPS, found));
+    }
+
+    private static void report(String name, int count, long bytes) {
+        System.out.println(String.format("%-32s %8.1f MB %6.1f bytes/bug",
+                name, bytes / (1024.0 * 1024.0), (double) bytes / count));
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static final int LOOKUPS = 10000000;
+}
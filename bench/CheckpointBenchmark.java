@@ -0,0 +1,68 @@
+import java.io.File;
+import java.nio.file.Files;
+
+/*
+ * Compares a log store that never checkpoints with one that checkpoints in
+ * the background (LogStore with the default checkpoint size). Both get the
+ * same work: bugs submitted and then confirmed, one saveData per change.
+ * For each it reports the files left on the disk, the slowest saveData
+ * (a checkpoint must not stop the commits) and the time to load the
+ * database again.
+ *
+ * USAGE: ./benchrun.sh CheckpointBenchmark [bugs]
+ */
+public class CheckpointBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+
+        System.out.println(String.format("%-14s %10s %10s %12s %12s %10s",
+                "store", "MB log", "MB snap", "save max ms", "checkpoints", "load ms"));
+        run("no checkpoint", Long.MAX_VALUE, count);
+        run("checkpoint", 4 * 1024 * 1024, count);
+    }
+
+    private static void run(String name, long checkpointSize, int count) throws Exception {
+        File dir = Files.createTempDirectory("bugzilla").toFile();
+        File snapshot = new File(dir, "bl.bin");
+        File log = new File(dir, "bl.log");
+
+        LogStore store = new LogStore(snapshot.getPath(), log.getPath(), checkpointSize, 0);
+        Bugzilla bz = new Bugzilla(store);
+        bz.register("user", "passwd", Bugzilla.MemberType.USER);
+        bz.register("analyst", "passwd", Bugzilla.MemberType.SYSTEMANALYST);
+        bz.login("user", "passwd");
+        bz.login("analyst", "passwd");
+
+        long slowest = 0;
+        for (int i = 0; i < 2 * count; i++) {
+            if (i < count) {
+                bz.submitBug("user", "The window does not open after the update " + i);
+            } else {
+                bz.confirmBug("analyst", i - count);
+            }
+            long start = System.nanoTime();
+            bz.saveData();
+            slowest = Math.max(slowest, System.nanoTime() - start);
+        }
+        store.close();
+
+        long start = System.nanoTime();
+        Bugzilla loaded = new Bugzilla(new LogStore(snapshot.getPath(), log.getPath()));
+        long load = System.nanoTime() - start;
+        if (loaded.getBugList().size() != count) {
+            throw new IllegalStateException("Loaded " + loaded.getBugList().size() + " bugs");
+        }
+
+        System.out.println(String.format("%-14s %10.1f %10.1f %12.1f %12d %10.0f",
+                name, log.length() / MB, snapshot.length() / MB, slowest / 1e6,
+                store.checkpoints(), load / 1e6));
+
+        for (File f : dir.listFiles()) {
+            f.delete();
+        }
+        dir.delete();
+    }
+
+    private static final double MB = 1024.0 * 1024.0;
+}
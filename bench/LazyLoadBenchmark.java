@@ -0,0 +1,66 @@
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Random;
+
+/*
+ * Measures the startup of Bugzilla on a slot store (SlotStore) that loads
+ * every bug on open and on one that loads the bugs on first use, for
+ * databases of growing size. After the startup it times a thousand
+ * lookups of random bugs and the first search (which loads the rest).
+ *
+ * USAGE: ./benchrun.sh LazyLoadBenchmark [largest bug count]
+ */
+public class LazyLoadBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int largest = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+
+        System.out.println(String.format("%-6s %10s %11s %14s %12s",
+                "store", "bugs", "startup ms", "1000 gets ms", "search ms"));
+        for (int count = largest / 100; count <= largest; count *= 10) {
+            File dir = Files.createTempDirectory("bugzilla").toFile();
+            String base = new File(dir, "bl").getPath();
+            create(base, count);
+
+            run("eager", base, false, count);
+            run("lazy", base, true, count);
+
+            for (File f : dir.listFiles()) {
+                f.delete();
+            }
+            dir.delete();
+        }
+    }
+
+    private static void create(String base, int count) throws Exception {
+        Bugzilla bz = new Bugzilla(new SlotStore(base));
+        bz.register("user", "passwd", Bugzilla.MemberType.USER);
+        bz.login("user", "passwd");
+        for (int i = 0; i < count; i++) {
+            bz.submitBug("user", "The window does not open after the update " + i);
+        }
+        bz.saveData();
+    }
+
+    private static void run(String name, String base, boolean lazy, int count) throws Exception {
+        System.gc();
+        long start = System.nanoTime();
+        Bugzilla bz = new Bugzilla(new SlotStore(base, lazy));
+        long startup = System.nanoTime() - start;
+
+        Random random = new Random(1);
+        long length = 0;
+        start = System.nanoTime();
+        for (int i = 0; i < 1000; i++) {
+            length += bz.bugTable().get(random.nextInt(count)).getBugDescription().length();
+        }
+        long gets = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        length += bz.searchBugs("window", 10).size();
+        long search = System.nanoTime() - start;
+
+        System.out.println(String.format("%-6s %10d %11.1f %14.2f %12.0f   (%d)",
+                name, count, startup / 1e6, gets / 1e6, search / 1e6, length));
+    }
+}
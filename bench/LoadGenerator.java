@@ -0,0 +1,329 @@
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * Drives Bugzilla with populations of members working through the bug
+ * workflow at a target rate and reports the throughput, the latency
+ * percentiles and the errors of every operation.
+ *
+ *   USER             - submits bugs
+ *   SYSTEMANALYST    - confirms (90%) or invalidates UNCONFIRMED bugs
+ *   DEVELOPER        - starts a CONFIRMED bug, then fixes it (75%) or stops
+ *   QUALITYASSURANCE - approves (80%) or rejects RESOLVED bugs
+ *
+ * Every member is a thread. The members of a type share the bugs by their
+ * IDs (ID % members), so two members never take the same bug and every
+ * error reported is a real failure of Bugzilla. Every operation is followed
+ * by saveData, as in MemberUI.
+ *
+ * The target rate is shared by all the members. The operations are
+ * scheduled at fixed times and the latency is measured from the scheduled
+ * time, so a member that falls behind reports the time its operations
+ * waited too (rate 0: no schedule, the latency is the time of the call).
+ * A member that finds no bug to work on skips its turn ("idle").
+ *
+ * With "persist" the store is chosen as in Bugzilla.defaultStore (system
+ * properties bugzilla.store, bugzilla.durability ...) in a temporary
+ * directory, otherwise Bugzilla runs in memory. The metrics of Bugzilla
+ * (BugzillaMetrics, the time spent inside the calls) are printed at the end.
+ *
+ * USAGE: ./benchrun.sh LoadGenerator [seconds] [ops/s] [users] [analysts] [developers] [qa] [persist]
+ */
+public class LoadGenerator {
+
+    enum Op {
+        SUBMIT,
+        CONFIRM,
+        INVALIDATE,
+        START,
+        STOP,
+        FIX,
+        APPROVE,
+        REJECT
+    }
+
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 30;
+        double rate = args.length > 1 ? Double.parseDouble(args[1]) : 2000;
+        int[] population = {
+                args.length > 2 ? Integer.parseInt(args[2]) : 4,
+                args.length > 3 ? Integer.parseInt(args[3]) : 2,
+                args.length > 4 ? Integer.parseInt(args[4]) : 4,
+                args.length > 5 ? Integer.parseInt(args[5]) : 2
+        };
+        boolean persist = args.length > 6 && args[6].equals("persist");
+
+        Bugzilla bz;
+        if (persist) {
+            File dir = Files.createTempDirectory("bugzilla").toFile();
+            System.out.println("store: " + dir);
+            bz = new Bugzilla(Bugzilla.defaultStore(dir.getPath() + File.separator));
+        } else {
+            bz = new Bugzilla((BugzillaStore) null);
+        }
+
+        LoadGenerator load = new LoadGenerator(bz, seconds, rate, population);
+        load.run();
+        load.report();
+    }
+
+    LoadGenerator(Bugzilla b, int seconds, double rate, int[] population) {
+        bz = b;
+        duration = TimeUnit.SECONDS.toNanos(seconds);
+        this.population = population;
+
+        int members = 0;
+        for (int n : population) {
+            members += n;
+        }
+        // Nanoseconds between the operations of one member
+        interval = (rate > 0) ? (long) (1e9 * members / rate) : 0;
+
+        for (Op op : Op.values()) {
+            latencies.put(op, new LatencyHistogram());
+            errors.put(op, new AtomicLong());
+        }
+    }
+
+    void run() throws Exception {
+        List<Member> members = new ArrayList<Member>();
+        for (int t = 0; t < TYPES.length; t++) {
+            for (int i = 0; i < population[t]; i++) {
+                String username = TYPES[t].name().toLowerCase() + i;
+                bz.register(username, PASSWD, TYPES[t]);
+                bz.login(username, PASSWD);
+                members.add(new Member(TYPES[t], username, i, population[t]));
+            }
+        }
+
+        List<Thread> threads = new ArrayList<Thread>();
+        start = System.nanoTime();
+        for (final Member member : members) {
+            Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    member.run();
+                }
+            }, member.username);
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        elapsed = System.nanoTime() - start;
+    }
+
+    void report() {
+        double secs = elapsed / 1e9;
+        long total = 0;
+
+        System.out.println(String.format("%-11s %10s %10s %8s %10s %10s %10s %10s %10s",
+                "operation", "count", "ops/s", "errors", "p50 us", "p90 us", "p99 us", "p99.9 us", "max us"));
+        for (Op op : Op.values()) {
+            LatencyHistogram histogram = latencies.get(op);
+            total += histogram.count();
+            System.out.println(String.format("%-11s %10d %10.0f %8d %10.1f %10.1f %10.1f %10.1f %10.1f",
+                    op, histogram.count(), histogram.count() / secs, errors.get(op).get(),
+                    micros(histogram.percentile(50)), micros(histogram.percentile(90)),
+                    micros(histogram.percentile(99)), micros(histogram.percentile(99.9)),
+                    micros(histogram.max())));
+        }
+
+        System.out.println(String.format("total       %10d %10.0f   idle turns %d", total, total / secs, idle.get()));
+        for (Bug.State st : Bug.State.values()) {
+            System.out.print(st + " " + bz.bugTable().index().countInState(st) + "  ");
+        }
+        System.out.println();
+        for (Map.Entry<Op, String> failure : firstErrors.entrySet()) {
+            System.out.println("first " + failure.getKey() + " error: " + failure.getValue());
+        }
+
+        System.out.println();
+        System.out.print(bz.getMetrics().dump());
+    }
+
+    private class Member {
+
+        Member(Bugzilla.MemberType memberType, String name, int i, int n) {
+            type = memberType;
+            username = name;
+            index = i;
+            count = n;
+            random = new Random(name.hashCode());
+        }
+
+        void run() {
+            long next = start;
+            while (true) {
+                long now = System.nanoTime();
+                if (now - start >= duration) {
+                    return;
+                }
+
+                long scheduled = now;
+                if (interval > 0) {
+                    if (next - now > 0) {
+                        LockSupport.parkNanos(next - now);
+                    }
+                    scheduled = next;
+                    next += interval;
+                }
+                turn(scheduled);
+            }
+        }
+
+        private void turn(long scheduled) {
+            Op op;
+            int bugID;
+
+            switch (type) {
+                case USER:
+                    op = Op.SUBMIT;
+                    bugID = -1;
+                    break;
+                case SYSTEMANALYST:
+                    bugID = take(Bug.State.UNCONFIRMED);
+                    op = (random.nextInt(10) < 9) ? Op.CONFIRM : Op.INVALIDATE;
+                    break;
+                case DEVELOPER:
+                    if (working >= 0) {
+                        bugID = working;
+                        op = (random.nextInt(4) < 3) ? Op.FIX : Op.STOP;
+                    } else {
+                        bugID = take(Bug.State.CONFIRMED);
+                        op = Op.START;
+                    }
+                    break;
+                default:
+                    bugID = take(Bug.State.RESOLVED);
+                    op = (random.nextInt(5) < 4) ? Op.APPROVE : Op.REJECT;
+                    break;
+            }
+
+            if (op != Op.SUBMIT && bugID < 0) {
+                idle.incrementAndGet();
+                return;
+            }
+
+            try {
+                apply(op, bugID);
+                bz.saveData();
+            } catch (BugzillaException ex) {
+                failed(op, ex.getErrorMsg());
+            } catch (RuntimeException | Error ex) {
+                // Contract violations when run with the cofoja agent
+                failed(op, ex.toString());
+            }
+            latencies.get(op).record(System.nanoTime() - scheduled);
+        }
+
+        private void apply(Op op, int bugID) throws BugzillaException {
+            switch (op) {
+                case SUBMIT:
+                    bz.submitBug(username, "The window does not open after the update " + random.nextInt());
+                    break;
+                case CONFIRM:
+                    bz.confirmBug(username, bugID);
+                    break;
+                case INVALIDATE:
+                    bz.invalidateBug(username, bugID, "Works as designed");
+                    break;
+                case START:
+                    bz.startDevelopment(username, bugID);
+                    working = bugID;
+                    break;
+                case STOP:
+                    working = -1;
+                    bz.stopDevelopment(username, bugID);
+                    break;
+                case FIX:
+                    working = -1;
+                    bz.fixedBug(username, bugID, Bug.Resolution.FIXED, "Fixed the update");
+                    break;
+                case APPROVE:
+                    bz.approveFix(username, bugID);
+                    break;
+                case REJECT:
+                    bz.rejectFix(username, bugID);
+                    break;
+            }
+        }
+
+        /*
+         * Returns the next bug of this member in the given state or -1
+         */
+        private int take(Bug.State st) {
+            for (int round = 0; round < 2; round++) {
+                int[] ids = bz.bugTable().index().idsInState(st, cursor, SCAN);
+                for (int id : ids) {
+                    if (id % count == index) {
+                        cursor = id + 1;
+                        return id;
+                    }
+                }
+                if (ids.length == SCAN) {
+                    cursor = ids[SCAN - 1] + 1;
+                    return -1;
+                }
+                // Start again from the lowest ID
+                if (cursor == 0) {
+                    return -1;
+                }
+                cursor = 0;
+            }
+            return -1;
+        }
+
+        private final Bugzilla.MemberType type;
+        private final String username;
+        private final int index;
+        private final int count;
+        private final Random random;
+
+        private int cursor;
+        private int working = -1;
+    }
+
+    private void failed(Op op, String msg) {
+        errors.get(op).incrementAndGet();
+        synchronized (firstErrors) {
+            if (!firstErrors.containsKey(op)) {
+                firstErrors.put(op, msg);
+            }
+        }
+    }
+
+    private static double micros(long nanos) {
+        return nanos / 1000.0;
+    }
+
+    private static final Bugzilla.MemberType[] TYPES = {
+            Bugzilla.MemberType.USER,
+            Bugzilla.MemberType.SYSTEMANALYST,
+            Bugzilla.MemberType.DEVELOPER,
+            Bugzilla.MemberType.QUALITYASSURANCE
+    };
+    private static final String PASSWD = "passwd";
+    private static final int SCAN = 64;
+
+    private final Bugzilla bz;
+    private final long duration;
+    private final long interval;
+    private final int[] population;
+
+    private final Map<Op, LatencyHistogram> latencies = new EnumMap<Op, LatencyHistogram>(Op.class);
+    private final Map<Op, AtomicLong> errors = new EnumMap<Op, AtomicLong>(Op.class);
+    private final Map<Op, String> firstErrors = new EnumMap<Op, String>(Op.class);
+    private final AtomicLong idle = new AtomicLong();
+
+    private volatile long start;
+    private long elapsed;
+}
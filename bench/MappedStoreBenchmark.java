@@ -0,0 +1,133 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.commons.lang3.tuple.Pair;
+
+/*
+ * Compares three ways of keeping the bugs:
+ *   bl.bin  - the three tables written with ObjectOutputStream on every
+ *             save and read back with ObjectInputStream (the original format)
+ *   slots   - SlotStore, slots read and written with FileChannel
+ *   mapped  - MappedSlotStore, slots in a memory-mapped file
+ * For each it reports the startup, the cost of a bugExists and getBug of a
+ * random bug right after the startup (the slot stores load the bug then),
+ * and the cost of confirming a bug and saving it.
+ *
+ * USAGE: ./benchrun.sh MappedStoreBenchmark [bugs] [saves]
+ */
+public class MappedStoreBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        int saves = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+
+        File dir = Files.createTempDirectory("bugzilla").toFile();
+        String base = new File(dir, "bl").getPath();
+        String legacy = new File(dir, "bl.bin").getPath();
+
+        Bugzilla bz = new Bugzilla(new SlotStore(base));
+        bz.register("user", "passwd", Bugzilla.MemberType.USER);
+        bz.register("analyst", "passwd", Bugzilla.MemberType.SYSTEMANALYST);
+        bz.login("user", "passwd");
+        for (int i = 0; i < count; i++) {
+            bz.submitBug("user", "The window does not open after the update " + i);
+        }
+        bz.saveData();
+        writeLegacy(bz, legacy);
+
+        System.out.println(String.format("%-8s %11s %12s %12s %12s",
+                "store", "startup ms", "exists ns", "getBug ns", "save us"));
+        for (int round = 0; round < 3; round++) {
+            runLegacy(legacy, count, Math.max(1, saves / 200), round);
+            run("slots", new SlotStore(base), count, saves, round);
+            run("mapped", new MappedSlotStore(base), count, saves, round);
+        }
+
+        for (File f : dir.listFiles()) {
+            f.delete();
+        }
+        dir.delete();
+    }
+
+    private static void run(String name, BugzillaStore store, int count, int saves, int round) throws Exception {
+        System.gc();
+        long start = System.nanoTime();
+        Bugzilla bz = new Bugzilla(store);
+        long startup = System.nanoTime() - start;
+
+        lookups(name, bz, count, startup);
+
+        bz.login("analyst", "passwd");
+        // Every store and round confirms other bugs
+        int first = (name.equals("slots") ? 0 : count / 2) + round * saves;
+        start = System.nanoTime();
+        for (int i = 0; i < saves; i++) {
+            bz.confirmBug("analyst", first + i);
+            bz.saveData();
+        }
+        report((System.nanoTime() - start) / 1e3 / saves);
+    }
+
+    private static void runLegacy(String path, int count, int saves, int round) throws Exception {
+        System.gc();
+        long start = System.nanoTime();
+        Bugzilla bz = new Bugzilla((BugzillaStore) null);
+        SnapshotStore.readLegacySnapshot(bz, path);
+        long startup = System.nanoTime() - start;
+
+        lookups("bl.bin", bz, count, startup);
+
+        bz.login("analyst", "passwd");
+        int first = count / 4 + round * saves;
+        start = System.nanoTime();
+        for (int i = 0; i < saves; i++) {
+            bz.confirmBug("analyst", first + i);
+            writeLegacy(bz, path);
+        }
+        report((System.nanoTime() - start) / 1e3 / saves);
+    }
+
+    private static void lookups(String name, Bugzilla bz, int count, long startup) {
+        Random random = new Random(1);
+        int found = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < LOOKUPS; i++) {
+            found += bz.bugTable().contains(random.nextInt(count)) ? 1 : 0;
+        }
+        long exists = System.nanoTime() - start;
+
+        random = new Random(2);
+        start = System.nanoTime();
+        for (int i = 0; i < LOOKUPS; i++) {
+            found += bz.bugTable().get(random.nextInt(count)).getID() >= 0 ? 1 : 0;
+        }
+        long get = System.nanoTime() - start;
+
+        System.out.print(String.format("%-8s %11.1f %12.0f %12.0f ",
+                name, startup / 1e6, (double) exists / LOOKUPS, (double) get / LOOKUPS));
+        if (found != 2 * LOOKUPS) {
+            throw new IllegalStateException("Bugs are missing");
+        }
+    }
+
+    private static void report(double saveMicros) {
+        System.out.println(String.format("%12.1f", saveMicros));
+    }
+
+    private static void writeLegacy(Bugzilla bz, String path) throws Exception {
+        ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(path));
+        out.writeObject(new HashMap<String, Pair<String, Bugzilla.MemberType>>(bz.memberTable()));
+        out.writeObject(new HashMap<Integer, Bug>(bz.getBugList()));
+        out.writeObject(new HashMap<String, Integer>(bz.progressTable()));
+        out.close();
+    }
+
+    private static final int LOOKUPS = 100000;
+}
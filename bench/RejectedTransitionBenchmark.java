@@ -0,0 +1,82 @@
+/*
+ * Measures the cost of a refused transition (confirming a CONFIRMED bug):
+ *   new exception - what every refusal used to cost: a BugStateException
+ *                   with its stack trace and the message formatted
+ *   throwing API  - confirmBug, throwing the shared stackless exception
+ *   result API    - tryConfirmBug, returning the reason
+ * and of a successful transition with both APIs. Run without the cofoja
+ * agent (the try operations have no contracts).
+ *
+ * USAGE: ./benchrun.sh RejectedTransitionBenchmark [calls] [rounds]
+ */
+public class RejectedTransitionBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int calls = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        Bugzilla bz = new Bugzilla((BugzillaStore) null);
+        bz.register("user", "passwd", Bugzilla.MemberType.USER);
+        bz.register("analyst", "passwd", Bugzilla.MemberType.SYSTEMANALYST);
+        bz.login("user", "passwd");
+        bz.login("analyst", "passwd");
+        bz.submitBug("user", "The window does not open after the update");
+        bz.confirmBug("analyst", 0);
+
+        for (int round = 0; round < rounds; round++) {
+            long sink = 0;
+
+            long start = System.nanoTime();
+            for (int i = 0; i < calls; i++) {
+                BugStateException ex = new BugStateException(Bug.State.CONFIRMED, Bug.State.CONFIRMED);
+                sink += ex.getErrorMsg().length();
+            }
+            report("new exception", calls, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            for (int i = 0; i < calls; i++) {
+                try {
+                    bz.confirmBug("analyst", 0);
+                } catch (BugzillaException ex) {
+                    sink += ex.getError().ordinal();
+                }
+            }
+            report("throwing API", calls, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            for (int i = 0; i < calls; i++) {
+                sink += bz.tryConfirmBug("analyst", 0).getError().ordinal();
+            }
+            report("result API", calls, System.nanoTime() - start);
+
+            // A bug is confirmed once, so the accepted calls go to new bugs
+            int accepted = calls / 10;
+            int first = bz.idSequence().highWaterMark();
+            for (int i = 0; i < accepted; i++) {
+                bz.submitBug("user", "The button does not react " + i);
+            }
+            start = System.nanoTime();
+            for (int i = 0; i < accepted; i++) {
+                bz.confirmBug("analyst", first + i);
+            }
+            report("accepted, throwing API", accepted, System.nanoTime() - start);
+
+            first = bz.idSequence().highWaterMark();
+            for (int i = 0; i < accepted; i++) {
+                bz.submitBug("user", "The button does not react " + i);
+            }
+            start = System.nanoTime();
+            for (int i = 0; i < accepted; i++) {
+                sink += bz.tryConfirmBug("analyst", first + i).isOk() ? 1 : 0;
+            }
+            report("accepted, result API", accepted, System.nanoTime() - start);
+
+            System.out.println("(" + sink + ")");
+        }
+    }
+
+    private static void report(String name, int calls, long nanos) {
+        System.out.println(String.format("%-24s %12.0f calls/s %8.1f ns/call",
+                name, calls / (nanos / 1e9), (double) nanos / calls));
+    }
+}
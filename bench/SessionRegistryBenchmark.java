@@ -0,0 +1,97 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+/*
+ * Logs in 100k members concurrently and measures the login and lookup
+ * throughput of SessionRegistry, the lookup cost of the ArrayList that
+ * Bugzilla used before, and the time to expire all the sessions.
+ *
+ * USAGE: ./benchrun.sh SessionRegistryBenchmark [sessions] [threads]
+ */
+public class SessionRegistryBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        final int sessions = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        final int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        final int lookups = 1000000;
+
+        final String[] names = new String[sessions];
+        for (int i = 0; i < sessions; i++) {
+            names[i] = "member" + i;
+        }
+
+        final SessionRegistry registry = new SessionRegistry(60000, 0);
+
+        long start = System.nanoTime();
+        runThreads(threads, new Task() {
+            void run(int t) {
+                for (int i = t; i < sessions; i += threads) {
+                    registry.login(names[i], 0);
+                }
+            }
+        });
+        report("login", sessions, System.nanoTime() - start);
+
+        start = System.nanoTime();
+        runThreads(threads, new Task() {
+            void run(int t) {
+                Random random = new Random(t);
+                for (int i = 0; i < lookups; i++) {
+                    if (!registry.isLoggedIn(names[random.nextInt(sessions)], 1000)) {
+                        throw new IllegalStateException();
+                    }
+                }
+            }
+        });
+        report("isLoggedIn (SessionRegistry)", (long) lookups * threads, System.nanoTime() - start);
+
+        List<String> list = new ArrayList<String>();
+        for (String name : names) {
+            list.add(name);
+        }
+        Random random = new Random(0);
+        int listLookups = 1000;
+        start = System.nanoTime();
+        for (int i = 0; i < listLookups; i++) {
+            if (!list.contains(names[random.nextInt(sessions)])) {
+                throw new IllegalStateException();
+            }
+        }
+        report("isLoggedIn (ArrayList, 1 thread)", listLookups, System.nanoTime() - start);
+
+        start = System.nanoTime();
+        int expired = registry.expire(120000);
+        report("expire", expired, System.nanoTime() - start);
+
+        System.out.println(String.format("active sessions after expiry: %d, expired: %d",
+                registry.activeSessions(), registry.expiredCount()));
+    }
+
+    private static void report(String name, long operations, long nanos) {
+        System.out.println(String.format("%-36s %10d ops %10.1f ms %14.0f ops/s",
+                name, operations, nanos / 1e6, operations / (nanos / 1e9)));
+    }
+
+    private static void runThreads(int count, final Task task) throws Exception {
+        final CountDownLatch done = new CountDownLatch(count);
+        for (int t = 0; t < count; t++) {
+            final int index = t;
+            new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        task.run(index);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+        done.await();
+    }
+
+    private abstract static class Task {
+        abstract void run(int t);
+    }
+}
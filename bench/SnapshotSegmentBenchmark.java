@@ -0,0 +1,50 @@
+import java.io.File;
+
+/*
+ * Times writing and loading a snapshot of synthetic bugs, a third of them
+ * resolved. The segments of the snapshot are encoded and decoded on the
+ * common ForkJoinPool, so run it with
+ *   -Djava.util.concurrent.ForkJoinPool.common.parallelism=1
+ * and without it to see how the load scales with the cores.
+ *
+ * USAGE: ./benchrun.sh SnapshotSegmentBenchmark [bugs] [rounds]
+ */
+public class SnapshotSegmentBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        Bugzilla bz = new Bugzilla((BugzillaStore) null);
+        for (int i = 0; i < count; i++) {
+            Bug bug = new Bug(i, "The window does not open after the update " + i);
+            if (i % 3 == 0) {
+                bug.setAsResolved(Bug.Resolution.FIXED, "Fixed the update in build " + i);
+            }
+            bz.bugTable().put(bug);
+        }
+
+        File file = File.createTempFile("bugzilla", ".bin");
+        String path = file.getPath();
+        System.out.println("parallelism " + java.util.concurrent.ForkJoinPool.getCommonPoolParallelism()
+                + ", " + count + " bugs");
+
+        for (int round = 0; round < rounds; round++) {
+            long start = System.nanoTime();
+            SnapshotStore.writeSnapshot(bz, path);
+            long write = System.nanoTime() - start;
+
+            Bugzilla loaded = new Bugzilla((BugzillaStore) null);
+            System.gc();
+            start = System.nanoTime();
+            SnapshotStore.readSnapshot(loaded, path);
+            long load = System.nanoTime() - start;
+
+            System.out.println(String.format("write %8.0f ms   load %8.0f ms   %6.1f MB   (%d)",
+                    write / 1e6, load / 1e6, file.length() / (1024.0 * 1024.0), loaded.bugTable().size()));
+        }
+
+        file.delete();
+        new File(SnapshotStore.indexPath(path)).delete();
+    }
+}
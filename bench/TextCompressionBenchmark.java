@@ -0,0 +1,158 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/*
+ * Reports the size and the latency of the compressed bug texts on a
+ * synthetic dataset: descriptions of 8 to 30 words and, for half of the
+ * bugs, solutions of 4 to 20 words, from a vocabulary of 2000 words and a
+ * few common phrases. For every way of keeping the texts:
+ *   strings    - TextCodec.Mode.OFF
+ *   deflate    - every text compressed (Mode.ALL), no dictionary
+ *   dictionary - Mode.ALL with a dictionary trained on the bugs
+ * it measures the heap of the bugs, the time to create them (compressing),
+ * the size of the snapshot, the time to load it, and the time to read a
+ * description of a random bug (inflating it).
+ *
+ * USAGE: ./benchrun.sh TextCompressionBenchmark [bugs] [dictionary bytes]
+ */
+public class TextCompressionBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 500000;
+        int dictionarySize = args.length > 1 ? Integer.parseInt(args[1]) : 4096;
+
+        Random random = new Random(1);
+        String[] vocabulary = new String[2000];
+        for (int i = 0; i < vocabulary.length; i++) {
+            vocabulary[i] = word(random);
+        }
+        List<String> descriptions = new ArrayList<String>();
+        List<String> solutions = new ArrayList<String>();
+        for (int i = 0; i < count; i++) {
+            descriptions.add(sentence(random, vocabulary, 8 + random.nextInt(23)));
+            solutions.add((i % 2 == 0) ? sentence(random, vocabulary, 4 + random.nextInt(17)) : "");
+        }
+
+        System.out.println(String.format("%-11s %10s %10s %11s %10s %10s %10s",
+                "texts", "MB heap", "bytes/bug", "create ns", "MB file", "load ms", "read ns"));
+        run("strings", TextCodec.Mode.OFF, 0, descriptions, solutions);
+        run("deflate", TextCodec.Mode.ALL, 0, descriptions, solutions);
+        run("dictionary", TextCodec.Mode.ALL, dictionarySize, descriptions, solutions);
+    }
+
+    private static void run(String name, TextCodec.Mode mode, int dictionarySize,
+                            List<String> descriptions, List<String> solutions) throws Exception {
+        int count = descriptions.size();
+        TextCodec.setMode(mode);
+        TextCodec.use(TextCodec.of(new byte[0]));
+
+        Bugzilla bz = new Bugzilla((BugzillaStore) null);
+        if (dictionarySize > 0) {
+            // Trained on plain bugs, as Bugzilla does on the loaded ones
+            TextCodec.setMode(TextCodec.Mode.OFF);
+            for (int i = 0; i < count; i += 10) {
+                bz.bugTable().put(bug(i, descriptions, solutions));
+            }
+            bz.trainTextDictionary(dictionarySize);
+            bz.bugTable().clear();
+            TextCodec.setMode(mode);
+        }
+
+        long base = usedHeap();
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            bz.bugTable().put(bug(i, descriptions, solutions));
+        }
+        long create = System.nanoTime() - start;
+        long heap = usedHeap() - base;
+
+        File file = File.createTempFile("bugzilla", ".bin");
+        file.deleteOnExit();
+        SnapshotWriter out = new SnapshotWriter(new FileOutputStream(file));
+        out.write(bz);
+        out.close();
+
+        bz = null;
+        usedHeap();
+        Bugzilla loaded = new Bugzilla((BugzillaStore) null);
+        start = System.nanoTime();
+        SnapshotReader in = new SnapshotReader(new FileInputStream(file));
+        in.read(loaded);
+        in.close();
+        long load = System.nanoTime() - start;
+
+        Random random = new Random(2);
+        long length = 0;
+        start = System.nanoTime();
+        for (int i = 0; i < READS; i++) {
+            length += loaded.bugTable().get(random.nextInt(count)).getBugDescription().length();
+        }
+        long read = System.nanoTime() - start;
+
+        System.out.println(String.format("%-11s %10.1f %10.1f %11.0f %10.1f %10.0f %10.0f   (%d)",
+                name, heap / MB, (double) heap / count, (double) create / count, file.length() / MB,
+                load / 1e6, (double) read / READS, length));
+        file.delete();
+    }
+
+    private static Bug bug(int i, List<String> descriptions, List<String> solutions) throws Exception {
+        // Copies, so the heap of the plain bugs counts their texts
+        String description = new String(descriptions.get(i).toCharArray());
+        String solution = new String(solutions.get(i).toCharArray());
+        if (solution.isEmpty()) {
+            return new Bug(i, description);
+        }
+        return new Bug(i, description, Bug.State.RESOLVED, Bug.Resolution.FIXED, solution);
+    }
+
+    private static String sentence(Random random, String[] vocabulary, int words) {
+        StringBuilder text = new StringBuilder();
+        for (int w = 0; w < words; w++) {
+            if (w > 0) {
+                text.append(' ');
+            }
+            if (random.nextInt(8) == 0) {
+                text.append(PHRASES[random.nextInt(PHRASES.length)]);
+            } else {
+                // Zipf-like: the first words of the vocabulary are the common ones
+                double r = random.nextDouble();
+                text.append(vocabulary[(int) (vocabulary.length * r * r * r)]);
+            }
+        }
+        return text.toString();
+    }
+
+    private static String word(Random random) {
+        int length = 2 + random.nextInt(9);
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            word.append((char) ('a' + random.nextInt(26)));
+        }
+        return word.toString();
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static final String[] PHRASES = {
+            "does not work after the update",
+            "the application crashes when",
+            "steps to reproduce:",
+            "expected result:",
+            "the error message is shown",
+            "fixed in the next release"
+    };
+
+    private static final int READS = 1000000;
+    private static final double MB = 1024.0 * 1024.0;
+}
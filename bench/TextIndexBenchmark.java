@@ -0,0 +1,81 @@
+import java.io.File;
+import java.util.Random;
+
+/*
+ * Indexes 1M generated bugs (descriptions of 8 words drawn from a 50k word
+ * vocabulary with a skewed distribution) and measures the query latency
+ * for rare, medium and common words, and saving and loading the index.
+ *
+ * USAGE: ./benchrun.sh TextIndexBenchmark [bugs]
+ */
+public class TextIndexBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int vocabulary = 50000;
+        Random random = new Random(0);
+
+        BugStore bugs = new BugStore();
+        for (int i = 0; i < count; i++) {
+            StringBuilder description = new StringBuilder();
+            for (int w = 0; w < 8; w++) {
+                description.append(word(skewed(random, vocabulary))).append(' ');
+            }
+            bugs.put(new Bug(i, description.toString()));
+        }
+
+        TextIndex index = new TextIndex();
+        long start = System.nanoTime();
+        index.sync(bugs);
+        report("index " + count + " bugs", System.nanoTime() - start);
+        System.out.println("terms: " + index.termCount());
+
+        query(index, "rare word", word(vocabulary - 1) + " " + word(vocabulary - 2));
+        query(index, "medium word", word(1000));
+        query(index, "common word", word(3));
+        query(index, "two medium words", word(1000) + " " + word(2000));
+
+        File file = File.createTempFile("bugzilla", ".idx");
+        file.deleteOnExit();
+        start = System.nanoTime();
+        index.save(file.getPath());
+        report("save (" + file.length() / 1024 + " KB)", System.nanoTime() - start);
+
+        TextIndex loaded = new TextIndex();
+        start = System.nanoTime();
+        loaded.load(file.getPath());
+        loaded.sync(bugs);
+        report("load and check", System.nanoTime() - start);
+    }
+
+    private static void query(TextIndex index, String name, String query) {
+        int runs = 1000;
+        int found = 0;
+        for (int i = 0; i < runs; i++) {
+            found = index.search(query, 20).length;
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < runs; i++) {
+            found = index.search(query, 20).length;
+        }
+        long nanos = (System.nanoTime() - start) / runs;
+        System.out.println(String.format("query %-20s %10.3f ms (%d hits)", name, nanos / 1e6, found));
+    }
+
+    /*
+     * Word number n of the vocabulary, low numbers are the most frequent
+     */
+    private static int skewed(Random random, int vocabulary) {
+        double x = random.nextDouble();
+        return (int) (Math.pow(x, 3) * vocabulary);
+    }
+
+    private static String word(int n) {
+        return "w" + Integer.toString(n, 36);
+    }
+
+    private static void report(String name, long nanos) {
+        System.out.println(String.format("%-28s %10.1f ms", name, nanos / 1e6));
+    }
+}
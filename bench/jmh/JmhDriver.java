@@ -0,0 +1,76 @@
+import java.util.Map;
+
+import bugzilla.jmh.BugzillaDriver;
+
+/*
+ * Runs the operations of the JMH benchmarks (bench/jmh/bugzilla/jmh) on Bugzilla
+ */
+public class JmhDriver implements BugzillaDriver {
+
+    public void setUp(int count) throws Exception {
+        bz = new Bugzilla((BugzillaStore) null);
+
+        String[] names = {USER, ANALYST, DEVELOPER, QA, MEMBER};
+        Bugzilla.MemberType[] types = {Bugzilla.MemberType.USER, Bugzilla.MemberType.SYSTEMANALYST,
+                Bugzilla.MemberType.DEVELOPER, Bugzilla.MemberType.QUALITYASSURANCE, Bugzilla.MemberType.USER};
+        for (int i = 0; i < names.length; i++) {
+            bz.register(names[i], PASSWD, types[i]);
+        }
+        for (int i = 0; i < names.length - 1; i++) {
+            bz.login(names[i], PASSWD);
+        }
+
+        for (int i = 0; i < count; i++) {
+            bz.submitBug(USER, DESCRIPTION + i);
+        }
+    }
+
+    public void register(String username) throws Exception {
+        bz.register(username, PASSWD, Bugzilla.MemberType.USER);
+    }
+
+    public void loginLogout() throws Exception {
+        bz.login(MEMBER, PASSWD);
+        bz.logout(MEMBER);
+    }
+
+    public int submitBug() throws Exception {
+        int before = bz.idSequence().highWaterMark();
+        bz.submitBug(USER, DESCRIPTION);
+        return before;
+    }
+
+    public void resolve(int bugID) throws Exception {
+        bz.confirmBug(ANALYST, bugID);
+        bz.startDevelopment(DEVELOPER, bugID);
+        bz.fixedBug(DEVELOPER, bugID, Bug.Resolution.FIXED, SOLUTION);
+        bz.approveFix(QA, bugID);
+    }
+
+    public long iterateBugList() {
+        long value = 0;
+        for (Map.Entry<Integer, Bug> entry : bz.getBugList().entrySet()) {
+            value += entry.getKey() + entry.getValue().getState().ordinal();
+        }
+        return value;
+    }
+
+    public void save(String path) throws Exception {
+        SnapshotStore.writeSnapshot(bz, path);
+    }
+
+    public int load(String path) throws Exception {
+        return new Bugzilla(new SnapshotStore(path)).getBugList().size();
+    }
+
+    private static final String PASSWD = "passwd";
+    private static final String USER = "user";
+    private static final String ANALYST = "analyst";
+    private static final String DEVELOPER = "developer";
+    private static final String QA = "qa";
+    private static final String MEMBER = "member";
+    private static final String DESCRIPTION = "The window does not open after the update ";
+    private static final String SOLUTION = "Fixed the update";
+
+    private Bugzilla bz;
+}
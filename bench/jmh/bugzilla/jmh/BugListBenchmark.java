@@ -0,0 +1,44 @@
+package bugzilla.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * The time to read every bug of getBugList
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BugListBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int bugs;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        driver = BugzillaDriver.create();
+        driver.setUp(bugs);
+    }
+
+    @Benchmark
+    public long iterateBugList() {
+        return driver.iterateBugList();
+    }
+
+    private BugzillaDriver driver;
+}
@@ -0,0 +1,48 @@
+package bugzilla.jmh;
+
+/*
+ * The operations of Bugzilla measured by the benchmarks.
+ * JMH does not accept benchmarks in the default package and a class in a
+ * package cannot use the classes of the default package, so the benchmarks
+ * call Bugzilla through this interface, implemented by JmhDriver (default
+ * package). The driver is created once per trial; the interface calls are
+ * monomorphic and inlined by the JIT.
+ */
+public interface BugzillaDriver {
+
+    /*
+     * Creates an in-memory Bugzilla with the given number of bugs and a
+     * logged in USER, SYSTEMANALYST, DEVELOPER and QUALITYASSURANCE
+     */
+    void setUp(int bugs) throws Exception;
+
+    void register(String username) throws Exception;
+
+    /*
+     * Logs in and out a registered member
+     */
+    void loginLogout() throws Exception;
+
+    int submitBug() throws Exception;
+
+    /*
+     * Takes the bug through confirmBug, startDevelopment, fixedBug and approveFix
+     */
+    void resolve(int bugID) throws Exception;
+
+    /*
+     * Reads every bug of getBugList and returns a value of all of them
+     */
+    long iterateBugList();
+
+    void save(String path) throws Exception;
+
+    /*
+     * Opens a new Bugzilla on the snapshot and returns its number of bugs
+     */
+    int load(String path) throws Exception;
+
+    static BugzillaDriver create() throws Exception {
+        return (BugzillaDriver) Class.forName("JmhDriver").newInstance();
+    }
+}
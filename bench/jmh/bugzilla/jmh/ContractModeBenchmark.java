@@ -0,0 +1,73 @@
+package bugzilla.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * The throughput of the life of a bug (submitBug, confirmBug,
+ * startDevelopment, fixedBug, approveFix) in every contract mode
+ * (see ContractMode) and without the agent. Every benchmark runs in its
+ * own JVM with the agent options of its mode; the agent jar is found
+ * relative to the working directory (run with jmhrun.sh from the
+ * project directory).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ContractModeBenchmark {
+
+    @Setup(Level.Iteration)
+    public void setUp() throws Exception {
+        driver = BugzillaDriver.create();
+        driver.setUp(BUGS);
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = {AGENT, CONFIGURATOR, "-Dbugzilla.contracts=full"})
+    public int full() throws Exception {
+        return lifecycle();
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = {AGENT, CONFIGURATOR, "-Dbugzilla.contracts=preconditions"})
+    public int preconditions() throws Exception {
+        return lifecycle();
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = {AGENT, CONFIGURATOR, "-Dbugzilla.contracts=off"})
+    public int off() throws Exception {
+        return lifecycle();
+    }
+
+    @Benchmark
+    @Fork(1)
+    public int noAgent() throws Exception {
+        return lifecycle();
+    }
+
+    private int lifecycle() throws Exception {
+        int bugID = driver.submitBug();
+        driver.resolve(bugID);
+        return bugID;
+    }
+
+    private static final int BUGS = 1000;
+    private static final String AGENT = "-javaagent:lib/cofoja.asm-1.2-20140817.jar";
+    private static final String CONFIGURATOR = "-Dcom.google.java.contract.configurator=ContractMode";
+
+    private BugzillaDriver driver;
+}
@@ -0,0 +1,67 @@
+package bugzilla.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * The time of one register, login and logout, submitBug and of the whole
+ * life of a bug (submitBug, confirmBug, startDevelopment, fixedBug and
+ * approveFix) in a Bugzilla holding the given number of bugs.
+ * The operations add members and bugs, so Bugzilla is created again for
+ * every iteration and the iterations are kept short.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OperationsBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int bugs;
+
+    @Setup(Level.Iteration)
+    public void setUp() throws Exception {
+        driver = BugzillaDriver.create();
+        driver.setUp(bugs);
+        members = 0;
+    }
+
+    @Benchmark
+    public void register() throws Exception {
+        driver.register("member" + members++);
+    }
+
+    @Benchmark
+    public void loginLogout() throws Exception {
+        driver.loginLogout();
+    }
+
+    @Benchmark
+    public int submitBug() throws Exception {
+        return driver.submitBug();
+    }
+
+    @Benchmark
+    public int bugLifecycle() throws Exception {
+        int bugID = driver.submitBug();
+        driver.resolve(bugID);
+        return bugID;
+    }
+
+    private BugzillaDriver driver;
+    private int members;
+}
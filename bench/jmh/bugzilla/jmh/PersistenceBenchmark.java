@@ -0,0 +1,70 @@
+package bugzilla.jmh;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * The time to write the database to a snapshot and to open a new Bugzilla
+ * on the snapshot (SnapshotStore), with the given number of bugs
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PersistenceBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int bugs;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        driver = BugzillaDriver.create();
+        driver.setUp(bugs);
+
+        saved = File.createTempFile("bugzilla", ".bin");
+        loaded = File.createTempFile("bugzilla", ".bin");
+        driver.save(loaded.getPath());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        delete(saved);
+        delete(loaded);
+    }
+
+    @Benchmark
+    public void saveDB() throws Exception {
+        driver.save(saved.getPath());
+    }
+
+    @Benchmark
+    public int loadDB() throws Exception {
+        return driver.load(loaded.getPath());
+    }
+
+    private static void delete(File file) {
+        file.delete();
+        // The text index is saved next to the snapshot
+        new File(file.getPath().replaceAll("\\.bin$", ".idx")).delete();
+    }
+
+    private BugzillaDriver driver;
+    private File saved;
+    private File loaded;
+}
@@ -0,0 +1,19 @@
+@ECHO OFF
+
+IF "%~1"=="" GOTO HELP
+IF "%~2"=="" GOTO HELP
+
+SET JAVA_PATH=%~1\bin
+ECHO %JAVA_PATH%
+
+"%JAVA_PATH%\javac.exe" -cp "lib/*" "-Acom.google.java.contract.classpath=lib/cofoja.asm-1.2-20140817.jar;lib/commons-lang3-3.4.jar" "-Acom.google.java.contract.sourcepath=src" "-Acom.google.java.contract.classoutput=bin" -g -d bin src/*.java bench/*.java
+
+SHIFT
+"%JAVA_PATH%\java.exe" -cp "bin;lib/*" %1 %2 %3 %4 %5 %6 %7 %8 %9
+
+GOTO END
+
+:HELP
+ECHO "USAGE: .\benchrun.bat <path to JDK> <benchmark class> [arguments]"
+
+:END
\ No newline at end of file
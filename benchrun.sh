@@ -0,0 +1,14 @@
+#!/bin/bash
+
+# Compiles the sources with the benchmarks and runs the given benchmark class
+# USAGE: ./benchrun.sh <benchmark class> [arguments]
+
+if [ -z "$1" ]; then
+	echo "USAGE: ./benchrun.sh <benchmark class> [arguments]"
+	exit 1
+fi
+
+mkdir -p bin
+javac -cp "lib/*" "-Acom.google.java.contract.classpath=lib/cofoja.asm-1.2-20140817.jar:lib/commons-lang3-3.4.jar" "-Acom.google.java.contract.sourcepath=src" "-Acom.google.java.contract.classoutput=bin" -d bin src/*.java bench/*.java
+
+java -cp "bin:lib/*" "$@"
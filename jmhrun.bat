@@ -0,0 +1,27 @@
+@ECHO OFF
+
+IF "%~1"=="" GOTO HELP
+
+SET JAVA_PATH=%~1\bin
+ECHO %JAVA_PATH%
+SHIFT
+
+SET AGENT=
+IF "%~1"=="--contracts" (
+	SET AGENT=-jvmArgsAppend -javaagent:lib/cofoja.asm-1.2-20140817.jar
+	SHIFT
+)
+
+SET SOURCES=
+FOR /R bench\jmh %%F IN (*.java) DO CALL SET SOURCES=%%SOURCES%% "%%F"
+
+"%JAVA_PATH%\javac.exe" -cp "lib/*;bench/lib/*" "-Acom.google.java.contract.classpath=lib/cofoja.asm-1.2-20140817.jar;lib/commons-lang3-3.4.jar" "-Acom.google.java.contract.sourcepath=src" "-Acom.google.java.contract.classoutput=bin" -g -processor org.openjdk.jmh.generators.BenchmarkProcessor,com.google.java.contract.core.apt.AnnotationProcessor -d bin src/*.java %SOURCES%
+
+"%JAVA_PATH%\java.exe" -cp "bin;lib/*;bench/lib/*" org.openjdk.jmh.Main %AGENT% %1 %2 %3 %4 %5 %6 %7 %8 %9
+
+GOTO END
+
+:HELP
+ECHO "USAGE: .\jmhrun.bat <path to JDK> [--contracts] [JMH options]"
+
+:END
@@ -0,0 +1,27 @@
+#!/bin/bash
+
+# Compiles the sources with the JMH benchmarks (bench/jmh) and runs them.
+# With --contracts the benchmark JVMs run with the cofoja agent, with
+# --contracts=<mode> in the given ContractMode (full, preconditions, off,
+# sampled). ContractModeBenchmark chooses the agent options itself.
+# The other arguments are passed to JMH, e.g. a benchmark name, "-p bugs=1000"
+# or "-l" to list the benchmarks.
+# USAGE: ./jmhrun.sh [--contracts[=<mode>]] [JMH options]
+
+AGENT=""
+if [ "$1" == "--contracts" ]; then
+	AGENT="-javaagent:lib/cofoja.asm-1.2-20140817.jar"
+	shift
+elif [[ "$1" == --contracts=* ]]; then
+	AGENT="-javaagent:lib/cofoja.asm-1.2-20140817.jar -Dcom.google.java.contract.configurator=ContractMode -Dbugzilla.contracts=${1#--contracts=}"
+	shift
+fi
+
+mkdir -p bin
+javac -cp "lib/*:bench/lib/*" "-Acom.google.java.contract.classpath=lib/cofoja.asm-1.2-20140817.jar:lib/commons-lang3-3.4.jar" "-Acom.google.java.contract.sourcepath=src" "-Acom.google.java.contract.classoutput=bin" -processor org.openjdk.jmh.generators.BenchmarkProcessor,com.google.java.contract.core.apt.AnnotationProcessor -d bin src/*.java $(find bench/jmh -name "*.java")
+
+if [ -n "$AGENT" ]; then
+	java -cp "bin:lib/*:bench/lib/*" org.openjdk.jmh.Main -jvmArgsAppend "$AGENT" "$@"
+else
+	java -cp "bin:lib/*:bench/lib/*" org.openjdk.jmh.Main "$@"
+fi
@@ -0,0 +1,357 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * The store hands the changes to a writer thread, which applies them to
+ * the wrapped store. All the commits that are waiting when the writer gets
+ * to them are done with a single commit (and sync) of the wrapped store.
+ *
+ * The durability policy decides when the changes reach the disk:
+ *   FIRE_AND_FORGET - commit returns at once, the changes are written
+ *                     in the background and never forced to the disk
+ *   SYNC_ON_COMMIT  - commit waits until the changes are written and forced
+ *   PERIODIC        - commit returns at once, the written changes are forced
+ *                     to the disk every syncInterval milliseconds
+ *
+ * commitAsync returns a Future for the callers that need to wait for a commit.
+ * A failed background write is reported by the next commit. Once the store
+ * is closed, or the writer stopped on an Error, a commit fails at once and
+ * a change throws IllegalStateException.
+ */
+public class AsyncStore implements BugzillaStore {
+
+    public enum Durability {
+        FIRE_AND_FORGET,
+        SYNC_ON_COMMIT,
+        PERIODIC
+    }
+
+    public AsyncStore(BugzillaStore dbStore, Durability durability, long syncIntervalMillis) {
+        store = dbStore;
+        policy = durability;
+        syncInterval = Math.max(1, syncIntervalMillis);
+    }
+
+    public void open(Bugzilla bz) throws Exception {
+        store.open(bz);
+        start();
+    }
+
+    public void reset() throws Exception {
+        store.reset();
+        start();
+    }
+
+    public boolean exists() {
+        return store.exists();
+    }
+
+    public void memberRegistered(final String username, final String passwd, final Bugzilla.MemberType type) {
+        enqueue(new Change() {
+            void apply() {
+                store.memberRegistered(username, passwd, type);
+            }
+        });
+    }
+
+    public void bugChanged(Bug bug) {
+        // The writer gets the current value of the bug, later changes
+        // of the bug are sent with later calls
+        final Bug copy = bug.copy();
+
+        enqueue(new Change() {
+            void apply() {
+                store.bugChanged(copy);
+            }
+        });
+        bug.markClean();
+    }
+
+    public void developerAssigned(final String username, final int bugID) {
+        enqueue(new Change() {
+            void apply() {
+                store.developerAssigned(username, bugID);
+            }
+        });
+    }
+
+    public void developerReleased(final String username) {
+        enqueue(new Change() {
+            void apply() {
+                store.developerReleased(username);
+            }
+        });
+    }
+
+    public void commit() throws Exception {
+        Future<Void> done = commitAsync();
+
+        // Done already only if it was refused
+        if (policy == Durability.SYNC_ON_COMMIT || done.isDone()) {
+            await(done);
+        } else {
+            checkFailure();
+        }
+    }
+
+    public void sync() throws Exception {
+        await(submit(new CommitRequest(true)));
+    }
+
+    /*
+     * Asks the writer to commit the changes made so far.
+     * The returned Future completes when the commit is done
+     * (and forced to the disk for SYNC_ON_COMMIT).
+     */
+    public Future<Void> commitAsync() {
+        return submit(new CommitRequest(policy == Durability.SYNC_ON_COMMIT));
+    }
+
+    /*
+     * Writes the remaining changes and stops the writer thread.
+     * A second call (the shutdown hook) waits for the first one.
+     */
+    public void close() throws Exception {
+        Thread stopping;
+        CommitRequest request;
+        synchronized (this) {
+            if (writer == null) {
+                return;
+            }
+            stopping = writer;
+            if (!closed) {
+                stopRequest = new CommitRequest(true);
+                stopRequest.stop = true;
+                queue.add(stopRequest);
+                closed = true;
+            }
+            // null if the writer stopped on its own
+            request = stopRequest;
+        }
+
+        if (request != null) {
+            await(request.done);
+        }
+        stopping.join();
+
+        synchronized (this) {
+            if (writer == stopping) {
+                writer = null;
+            }
+        }
+
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException ex) {
+            // the JVM is already shutting down
+        }
+    }
+
+    /*
+     * Returns the number of commits of the wrapped store
+     */
+    public long groupCommits() {
+        return groupCommits;
+    }
+
+    private synchronized void start() {
+        if (writer != null) {
+            return;
+        }
+        closed = false;
+        stopRequest = null;
+
+        writer = new Thread(new Runnable() {
+            public void run() {
+                writeLoop();
+            }
+        }, "bugzilla-writer");
+        writer.setDaemon(true);
+        writer.start();
+
+        shutdownHook = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    close();
+                } catch (Exception ex) {
+                    ex.printStackTrace();
+                }
+            }
+        });
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    /*
+     * Queues the request for the writer, or fails it at once when the store
+     * is closed
+     */
+    private synchronized Future<Void> submit(CommitRequest request) {
+        if (closed) {
+            request.done.completeExceptionally(new IllegalStateException("The store is closed"));
+        } else {
+            queue.add(request);
+        }
+        return request.done;
+    }
+
+    /*
+     * Queues the change for the writer. A change after close would never be
+     * written, so it is refused.
+     */
+    private synchronized void enqueue(Change change) {
+        if (closed) {
+            throw new IllegalStateException("The store is closed");
+        }
+        queue.add(change);
+    }
+
+    private void writeLoop() {
+        List<Object> batch = new ArrayList<Object>();
+        List<CompletableFuture<Void>> waiting = new ArrayList<CompletableFuture<Void>>();
+        try {
+            writeBatches(batch, waiting);
+        } finally {
+            stopped(batch, waiting);
+        }
+    }
+
+    private void writeBatches(List<Object> batch, List<CompletableFuture<Void>> waiting) {
+        boolean unsynced = false;
+        long lastSync = System.currentTimeMillis();
+
+        while (true) {
+            try {
+                Object first = (policy == Durability.PERIODIC) ?
+                        queue.poll(syncInterval, TimeUnit.MILLISECONDS) : queue.take();
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch);
+                }
+            } catch (InterruptedException ex) {
+                return;
+            }
+
+            boolean commit = false;
+            boolean force = false;
+            boolean stop = false;
+
+            for (Object item : batch) {
+                if (item instanceof Change) {
+                    try {
+                        ((Change) item).apply();
+                    } catch (RuntimeException ex) {
+                        ex.printStackTrace();
+                        failure = ex;
+                    }
+                } else {
+                    CommitRequest request = (CommitRequest) item;
+                    commit = true;
+                    force |= request.force;
+                    stop |= request.stop;
+                    waiting.add(request.done);
+                }
+            }
+            batch.clear();
+
+            try {
+                if (commit) {
+                    store.commit();
+                    groupCommits++;
+                    unsynced = true;
+                }
+
+                long now = System.currentTimeMillis();
+                boolean due = policy == Durability.PERIODIC && now - lastSync >= syncInterval;
+
+                if (unsynced && (force || due)) {
+                    store.sync();
+                    unsynced = false;
+                    lastSync = now;
+                }
+
+                for (CompletableFuture<Void> done : waiting) {
+                    done.complete(null);
+                }
+            } catch (Exception ex) {
+                ex.printStackTrace();
+                failure = ex;
+                for (CompletableFuture<Void> done : waiting) {
+                    done.completeExceptionally(ex);
+                }
+            }
+            waiting.clear();
+
+            if (stop) {
+                return;
+            }
+        }
+    }
+
+    /*
+     * Fails the commits that were not done when the writer stopped (an Error
+     * or an interrupt ends it early), later ones are refused by submit
+     */
+    private synchronized void stopped(List<Object> batch, List<CompletableFuture<Void>> waiting) {
+        closed = true;
+        queue.drainTo(batch);
+        for (Object item : batch) {
+            if (item instanceof CommitRequest) {
+                waiting.add(((CommitRequest) item).done);
+            }
+        }
+
+        IllegalStateException ex = new IllegalStateException("The writer of the store stopped");
+        for (CompletableFuture<Void> done : waiting) {
+            done.completeExceptionally(ex);
+        }
+    }
+
+    private void await(Future<Void> done) throws Exception {
+        try {
+            done.get();
+        } catch (ExecutionException ex) {
+            throw (Exception) ex.getCause();
+        }
+    }
+
+    private void checkFailure() throws Exception {
+        Exception ex = failure;
+        if (ex != null) {
+            failure = null;
+            throw ex;
+        }
+    }
+
+    private abstract static class Change {
+        abstract void apply();
+    }
+
+    private static class CommitRequest {
+        CommitRequest(boolean forceToDisk) {
+            force = forceToDisk;
+        }
+
+        final boolean force;
+        final CompletableFuture<Void> done = new CompletableFuture<Void>();
+        boolean stop;
+    }
+
+    private final BugzillaStore store;
+    private final Durability policy;
+    private final long syncInterval;
+
+    private final BlockingQueue<Object> queue = new LinkedBlockingQueue<Object>();
+    private Thread writer;
+    private Thread shutdownHook;
+    // Set by close or by the stopped writer, guarded by the store lock
+    private boolean closed;
+    private CommitRequest stopRequest;
+    private volatile Exception failure;
+    private volatile long groupCommits;
+}
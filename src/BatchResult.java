@@ -0,0 +1,36 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * The outcome of a batch operation of Bugzilla: the bugs that were changed
+ * (or submitted) and the reason of every item that failed. The failures are
+ * keyed by the bug ID, for submitBugs by the position of the description.
+ */
+public class BatchResult {
+
+    public List<Integer> getSucceeded() {
+        return Collections.unmodifiableList(succeeded);
+    }
+
+    public Map<Integer, BugzillaException> getFailures() {
+        return Collections.unmodifiableMap(failures);
+    }
+
+    public boolean isComplete() {
+        return failures.isEmpty();
+    }
+
+    void succeeded(int bugID) {
+        succeeded.add(bugID);
+    }
+
+    void failed(int item, BugzillaException ex) {
+        failures.put(item, ex);
+    }
+
+    private final List<Integer> succeeded = new ArrayList<Integer>();
+    private final Map<Integer, BugzillaException> failures = new LinkedHashMap<Integer, BugzillaException>();
+}
@@ -1,6 +1,13 @@
 
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import com.google.java.contract.Ensures;
 import com.google.java.contract.Invariant;
@@ -9,13 +16,25 @@ import com.google.java.contract.Requires;
 
 @Invariant({
         "ID >= 0",
-        "state != null",
-        "bugDescription != null",
-        "bugDescription.length() > 0"
+        // Both null only on entry to readObject (cofoja checks it there too)
+        "(description == null) == (solution == null)",
+        "description == null || textLength(description) > 0"
 })
 /*
  * The class represents a bug in the bugs database.
  * TODO: The bug cannot be modified after it is VERIFIED.
+ *
+ * A million bugs are kept in memory, so the bug is compact: the state and
+ * the resolution are packed into one byte, the empty and the short
+ * solutions are shared between the bugs (see shareSolution), and with the
+ * system property "bugzilla.compactText" set to true the description and
+ * the other solutions are kept as UTF-8 bytes (half the size of a String
+ * for English text, decoded by the getters). The serialized form is still
+ * the one of the fields ID, bugDescription, state, solutionType and
+ * solutionInfo (see serialPersistentFields).
+ *
+ * With the system property "bugzilla.compressText" the texts are kept
+ * compressed instead and inflated by the getters (see TextCodec).
  */
 public class Bug implements Serializable {
 
@@ -67,17 +86,49 @@ public class Bug implements Serializable {
 	 */
     public Bug(int id, String description) throws BugzillaException {
 
-        if (ID < 0) {
-            throw new BugzillaException(BugzillaException.ErrorType.INVALID_BUGID);
+        if (id < 0) {
+            throw BugzillaException.of(BugzillaException.ErrorType.INVALID_BUGID);
         }
 
-        //...
+        if (description == null || description.length() == 0) {
+            throw BugzillaException.of(BugzillaException.ErrorType.INVALID_DESCRIPTION);
+        }
+
+        ID = id;
+        this.description = packText(description);
+        status = packStatus(State.UNCONFIRMED, Resolution.UNRESOLVED);
+        this.solution = NO_SOLUTION;
+        dirty = DIRTY_NEW;
+    }
+
+    @Requires({
+            "id >= 0",
+            "description != null",
+            "description.length() > 0",
+            "st != null",
+            "type != null",
+            "solution != null"
+    })
+
+    /*
+     * Restores a bug that was read back from the database
+     * together with its state and resolution
+     */
+    Bug(int id, String description, State st, Resolution type, String solution) {
+        ID = id;
+        this.description = packText(description);
+        status = packStatus(st, type);
+        this.solution = shareSolution(solution);
+        if (st == State.VERIFIED && TextCodec.mode() == TextCodec.Mode.VERIFIED) {
+            compressTexts();
+        }
+    }
 
+    private Bug(int id, Object text, byte packed, Object solutionText) {
         ID = id;
-        bugDescription = description;
-        state = State.UNCONFIRMED;
-        solutionType = Resolution.UNRESOLVED;
-        solutionInfo = new String();
+        description = text;
+        status = packed;
+        solution = solutionText;
     }
 
 
@@ -87,21 +138,21 @@ public class Bug implements Serializable {
 
 
     public String getBugDescription() {
-        return bugDescription;
+        return unpackText(description);
     }
 
 
     public State getState() {
-        return state;
+        return STATES[status & STATE_MASK];
     }
 
 
     @Requires({
             "st != State.UNCONFIRMED",
             "st != State.RESOLVED",
-            "st == State.CONFIRMED? state == State.INPROGRESS || state == State.RESOLVED || state == State.UNCONFIRMED : true",
-            "st == State.INPROGRESS? state == State.CONFIRMED : true",
-            "st == State.VERIFIED? state == State.RESOLVED : true"
+            "st == State.CONFIRMED? getState() == State.INPROGRESS || getState() == State.RESOLVED || getState() == State.UNCONFIRMED : true",
+            "st == State.INPROGRESS? getState() == State.CONFIRMED : true",
+            "st == State.VERIFIED? getState() == State.RESOLVED : true"
     })
     //...
 
@@ -113,22 +164,31 @@ public class Bug implements Serializable {
 	 */
     public void setState(State st) throws BugStateException {
 
-        if (st == State.INPROGRESS && state != State.CONFIRMED) {
-            throw new BugStateException(state, st);
+        // The preconditions are not checked without the contracts
+        // (see ContractMode)
+        if (!canSetState(st)) {
+            throw BugStateException.of(getState(), st);
         }
 
-        //...
-
-        this.state = st;
+        State oldState = getState();
+        Resolution oldType = getSolutionType();
 
         //If state changed from RESOLVED to CONFIRMED then discard the solution type
-        if (state == State.CONFIRMED && solutionType != Resolution.UNRESOLVED) {
-            solutionType = Resolution.UNRESOLVED;
+        Resolution type = (st == State.CONFIRMED) ? Resolution.UNRESOLVED : oldType;
+        // VERIFIED is final, the texts are rarely read again
+        if (st == State.VERIFIED && TextCodec.mode() == TextCodec.Mode.VERIFIED) {
+            compressTexts();
+        }
+        status = packStatus(st, type);
+
+        dirty |= DIRTY_STATE;
+        if (index != null) {
+            index.moved(ID, oldState, oldType, st, type);
         }
     }
 
     public Resolution getSolutionType() {
-        return solutionType;
+        return RESOLUTIONS[status >> RESOLUTION_SHIFT];
     }
 
     /*
@@ -138,24 +198,278 @@ public class Bug implements Serializable {
      */
     @Requires({
             "type != Resolution.UNRESOLVED",
-            "state == State.UNCONFIRMED || state == State.INPROGRESS",
+            "getState() == State.UNCONFIRMED || getState() == State.INPROGRESS",
             "solution != null",
             "solution.length() > 0",
-            "state != State.VERIFIED"
+            "getState() != State.VERIFIED"
     })
     public void setAsResolved(Resolution type, String solution) throws BugStateException {
-        state = State.RESOLVED;
-        solutionType = type;
-        solutionInfo = solution;
+        if (!canResolve()) {
+            throw BugStateException.of(getState(), State.RESOLVED);
+        }
+
+        State oldState = getState();
+        Resolution oldType = getSolutionType();
+        // The solution first: a reader that sees RESOLVED sees the solution
+        this.solution = shareSolution(solution);
+        status = packStatus(State.RESOLVED, type);
+        dirty |= DIRTY_STATE | DIRTY_SOLUTION;
+        if (index != null) {
+            index.moved(ID, oldState, oldType, State.RESOLVED, type);
+        }
     }
 
     public String getSolutionInfo() {
-        return solutionInfo;
+        return unpackText(solution);
+    }
+
+    /*
+     * The following checks repeat the preconditions of setState and
+     * setAsResolved. They guard the methods when the contracts are not
+     * checked, and serve the callers that report a refused transition
+     * instead of breaking the contract (see Bugzilla batch operations)
+     */
+    boolean canSetState(State st) {
+        State state = getState();
+        switch (st) {
+            case CONFIRMED:
+                return state == State.INPROGRESS || state == State.RESOLVED || state == State.UNCONFIRMED;
+            case INPROGRESS:
+                return state == State.CONFIRMED;
+            case VERIFIED:
+                return state == State.RESOLVED;
+            default:
+                return false;
+        }
+    }
+
+    boolean canResolve() {
+        State state = getState();
+        return state == State.UNCONFIRMED || state == State.INPROGRESS;
+    }
+
+    /*
+     * Tells which parts of the bug changed since it was last written by
+     * the store (combination of the DIRTY_ flags, 0 if nothing changed)
+     */
+    int dirtyFlags() {
+        return dirty;
+    }
+
+    void markClean() {
+        dirty = 0;
+    }
+
+    void addDirtyFlags(int flags) {
+        dirty |= flags;
+    }
+
+    /*
+     * The index is told about every change of the state and resolution
+     * (set by BugStore when the bug is added)
+     */
+    void setIndex(BugIndex bugIndex) {
+        index = bugIndex;
+    }
+
+    /*
+     * Returns a copy of the bug with the same dirty flags (and no index).
+     * Used to hand the current value of the bug to another thread.
+     */
+    Bug copy() {
+        Bug bug = new Bug(ID, description, status, solution);
+        bug.dirty = dirty;
+        return bug;
+    }
+
+    /*
+     * Restores a bug from a snapshot, the texts may still be compressed
+     * (a String or the bytes of TextCodec.compress)
+     */
+    static Bug restore(int id, Object description, State st, Resolution type, Object solution) {
+        Bug bug = new Bug(id,
+                (description instanceof String) ? packText((String) description) : description,
+                packStatus(st, type),
+                (solution instanceof String) ? shareSolution((String) solution) : solution);
+        if (st == State.VERIFIED && TextCodec.mode() == TextCodec.Mode.VERIFIED) {
+            bug.compressTexts();
+        }
+        return bug;
+    }
+
+    /*
+     * The texts as kept in the bug (see packText), for the snapshot
+     */
+    Object descriptionText() {
+        return description;
+    }
+
+    Object solutionText() {
+        return solution;
+    }
+
+    /*
+     * The hash of the texts, taken without inflating them (see TextIndex)
+     */
+    int textHash() {
+        return 31 * textHash(description) + textHash(solution);
+    }
+
+    /*
+     * The textHash of a bug with the given texts
+     */
+    static int textHash(String description, String solution) {
+        return 31 * description.hashCode() + solution.hashCode();
+    }
+
+    /*
+     * Compresses the description and the solutions that are not shared
+     */
+    private void compressTexts() {
+        if (!isCompressed(description)) {
+            description = compressText(unpackText(description));
+        }
+        if (!isCompressed(solution) && textLength(solution) > SHARED_LENGTH) {
+            solution = compressText(unpackText(solution));
+        }
+    }
+
+    private static byte packStatus(State st, Resolution type) {
+        return (byte) (st.ordinal() | type.ordinal() << RESOLUTION_SHIFT);
+    }
+
+    /*
+     * Returns the text as kept in the bug: the String, its UTF-8 bytes
+     * (after a 0 byte) with "bugzilla.compactText", or its compressed bytes
+     * with "bugzilla.compressText" set to all
+     */
+    static Object packText(String text) {
+        return (TextCodec.mode() == TextCodec.Mode.ALL) ? compressText(text) : plainText(text);
+    }
+
+    private static Object compressText(String text) {
+        if (text.length() >= TextCodec.MIN_LENGTH) {
+            byte[] packed = TextCodec.current().compress(text);
+            if (packed != null) {
+                return packed;
+            }
+        }
+        return plainText(text);
+    }
+
+    private static Object plainText(String text) {
+        if (!COMPACT_TEXT) {
+            return text;
+        }
+        byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+        byte[] bytes = new byte[utf8.length + 1];
+        System.arraycopy(utf8, 0, bytes, 1, utf8.length);
+        return bytes;
+    }
+
+    static String unpackText(Object text) {
+        if (text instanceof String) {
+            return (String) text;
+        }
+        byte[] bytes = (byte[]) text;
+        return TextCodec.isCompressed(bytes) ? TextCodec.decompress(bytes)
+                : new String(bytes, 1, bytes.length - 1, StandardCharsets.UTF_8);
+    }
+
+    /*
+     * The length of the String, or of the bytes (both 0 only for an empty text)
+     */
+    static int textLength(Object text) {
+        return (text instanceof String) ? ((String) text).length() : ((byte[]) text).length - 1;
+    }
+
+    private static boolean isCompressed(Object text) {
+        return (text instanceof byte[]) && TextCodec.isCompressed((byte[]) text);
+    }
+
+    private static int textHash(Object text) {
+        return isCompressed(text) ? TextCodec.hash((byte[]) text) : unpackText(text).hashCode();
+    }
+
+    /*
+     * Returns the shared String of an empty or short solution ("Works as
+     * designed" ...), the first SHARED_SOLUTIONS of them are shared.
+     * A longer solution is packed like a description.
+     */
+    static Object shareSolution(String text) {
+        if (text.isEmpty()) {
+            return NO_SOLUTION;
+        }
+        if (text.length() > SHARED_LENGTH) {
+            return packText(text);
+        }
+
+        String shared = SOLUTIONS.get(text);
+        if (shared != null) {
+            return shared;
+        }
+        if (SOLUTIONS.size() >= SHARED_SOLUTIONS) {
+            return packText(text);
+        }
+        shared = SOLUTIONS.putIfAbsent(text, text);
+        return (shared != null) ? shared : text;
+    }
+
+    /*
+     * The bug is written and read with the fields it had before it was
+     * packed, so the saved databases can still be read
+     */
+    private static final ObjectStreamField[] serialPersistentFields = {
+            new ObjectStreamField("ID", int.class),
+            new ObjectStreamField("bugDescription", String.class),
+            new ObjectStreamField("state", State.class),
+            new ObjectStreamField("solutionType", Resolution.class),
+            new ObjectStreamField("solutionInfo", String.class)
+    };
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("ID", ID);
+        fields.put("bugDescription", getBugDescription());
+        fields.put("state", getState());
+        fields.put("solutionType", getSolutionType());
+        fields.put("solutionInfo", getSolutionInfo());
+        out.writeFields();
     }
 
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        ID = fields.get("ID", 0);
+        description = packText((String) fields.get("bugDescription", null));
+        status = packStatus((State) fields.get("state", null), (Resolution) fields.get("solutionType", null));
+        solution = shareSolution((String) fields.get("solutionInfo", null));
+    }
+
+    static final int DIRTY_STATE = 1;
+    static final int DIRTY_SOLUTION = 2;
+    static final int DIRTY_NEW = 4 | DIRTY_STATE | DIRTY_SOLUTION;
+
+    private static final State[] STATES = State.values();
+    private static final Resolution[] RESOLUTIONS = Resolution.values();
+    private static final int STATE_MASK = 7;
+    private static final int RESOLUTION_SHIFT = 3;
+
+    private static final boolean COMPACT_TEXT = Boolean.getBoolean("bugzilla.compactText");
+    private static final String NO_SOLUTION = "";
+    private static final int SHARED_LENGTH = 64;
+    private static final int SHARED_SOLUTIONS = 4096;
+    private static final ConcurrentMap<String, String> SOLUTIONS = new ConcurrentHashMap<String, String>();
+
+    /*
+     * Bugzilla changes a bug only while holding the lock of the bug,
+     * the fields are volatile for the threads that read it without the lock.
+     * The description and the solution are a String or bytes (packText),
+     * the status is the State and the Resolution (packStatus).
+     */
     private int ID;
-    private String bugDescription;
-    private State state;
-    private Resolution solutionType;
-    private String solutionInfo;
+    private volatile Object description;
+    private volatile byte status;
+    private volatile Object solution;
+    private transient byte dirty;
+    private transient BugIndex index;
 }
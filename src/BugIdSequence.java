@@ -0,0 +1,72 @@
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Gives out the bug IDs. The IDs come from one atomic counter, so no ID is
+ * given out twice and none is lost, without any lock.
+ *
+ * With a block size over 1 every thread takes a block of IDs from the
+ * counter at once and gives them out from the block, so threads that submit
+ * many bugs touch the shared counter only once per block. The IDs of one
+ * thread are then consecutive, but the IDs of different threads interleave
+ * and the unused IDs of a block leave gaps.
+ *
+ * The high-water mark (all IDs below it are taken) is saved by the stores,
+ * so after a restart the sequence continues after the last taken ID.
+ */
+public class BugIdSequence {
+
+    public BugIdSequence(int blockSize) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("Block size must be positive: " + blockSize);
+        }
+        block = blockSize;
+    }
+
+    public int next() {
+        if (block == 1) {
+            return counter.getAndIncrement();
+        }
+
+        Block ids = blocks.get();
+        if (ids.next == ids.end) {
+            ids.next = counter.getAndAdd(block);
+            ids.end = ids.next + block;
+        }
+        return ids.next++;
+    }
+
+    /*
+     * Returns the first ID that was not taken from the counter yet
+     */
+    public int highWaterMark() {
+        return counter.get();
+    }
+
+    /*
+     * Makes sure the IDs below the mark are never given out
+     * (used when the database is loaded)
+     */
+    public void advanceTo(int mark) {
+        int current = counter.get();
+        while (current < mark && !counter.compareAndSet(current, mark)) {
+            current = counter.get();
+        }
+    }
+
+    public int blockSize() {
+        return block;
+    }
+
+    private static class Block {
+        int next;
+        int end;
+    }
+
+    private final int block;
+    private final AtomicInteger counter = new AtomicInteger();
+    private final ThreadLocal<Block> blocks = new ThreadLocal<Block>() {
+        protected Block initialValue() {
+            return new Block();
+        }
+    };
+}
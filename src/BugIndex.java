@@ -0,0 +1,111 @@
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.Map;
+
+/*
+ * Secondary index of the bugs: a set of bug IDs (BitSet) for every State
+ * and every Resolution. The bugs of BugStore report their transitions here
+ * (see Bug.setState and Bug.setAsResolved), so a query does not have to
+ * look at every bug. A query walks only the set bits of one BitSet.
+ *
+ * The bugs change under their own locks, the index has a lock of its own.
+ */
+public class BugIndex {
+
+    public BugIndex() {
+        for (Bug.State st : Bug.State.values()) {
+            byState.put(st, new BitSet());
+        }
+        for (Bug.Resolution type : Bug.Resolution.values()) {
+            byResolution.put(type, new BitSet());
+        }
+    }
+
+    /*
+     * Returns the IDs of the bugs in the given state, in increasing order
+     */
+    public synchronized int[] idsInState(Bug.State st) {
+        return toArray(byState.get(st));
+    }
+
+    /*
+     * Returns at most "max" IDs of bugs in the given state, starting from fromID
+     */
+    public synchronized int[] idsInState(Bug.State st, int fromID, int max) {
+        BitSet ids = byState.get(st);
+        int[] result = new int[Math.min(max, ids.cardinality())];
+        int n = 0;
+        for (int id = ids.nextSetBit(Math.max(0, fromID)); id >= 0 && n < result.length; id = ids.nextSetBit(id + 1)) {
+            result[n++] = id;
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    public synchronized int[] idsWithResolution(Bug.Resolution type) {
+        return toArray(byResolution.get(type));
+    }
+
+    public synchronized int countInState(Bug.State st) {
+        return byState.get(st).cardinality();
+    }
+
+    public synchronized int countWithResolution(Bug.Resolution type) {
+        return byResolution.get(type).cardinality();
+    }
+
+    synchronized void add(Bug bug) {
+        add(bug.getID(), bug.getState(), bug.getSolutionType());
+    }
+
+    synchronized void add(int bugID, Bug.State st, Bug.Resolution type) {
+        byState.get(st).set(bugID);
+        byResolution.get(type).set(bugID);
+    }
+
+    synchronized void remove(Bug bug) {
+        byState.get(bug.getState()).clear(bug.getID());
+        byResolution.get(bug.getSolutionType()).clear(bug.getID());
+    }
+
+    /*
+     * Takes the entry of a bug back in favour of the bug that replaced it
+     * (same ID), which may be in another state by now
+     */
+    synchronized void replaced(Bug bug, Bug current) {
+        remove(bug);
+        if (current != null) {
+            add(current);
+        }
+    }
+
+    synchronized void moved(int bugID, Bug.State fromState, Bug.Resolution fromType,
+                            Bug.State toState, Bug.Resolution toType) {
+        byState.get(fromState).clear(bugID);
+        byState.get(toState).set(bugID);
+        byResolution.get(fromType).clear(bugID);
+        byResolution.get(toType).set(bugID);
+    }
+
+    synchronized void clear() {
+        for (BitSet ids : byState.values()) {
+            ids.clear();
+        }
+        for (BitSet ids : byResolution.values()) {
+            ids.clear();
+        }
+    }
+
+    private static int[] toArray(BitSet ids) {
+        int[] result = new int[ids.cardinality()];
+        int n = 0;
+        for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+            result[n++] = id;
+        }
+        return result;
+    }
+
+    private final Map<Bug.State, BitSet> byState = new EnumMap<Bug.State, BitSet>(Bug.State.class);
+    private final Map<Bug.Resolution, BitSet> byResolution =
+            new EnumMap<Bug.Resolution, BitSet>(Bug.Resolution.class);
+}
@@ -0,0 +1,151 @@
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.swing.AbstractListModel;
+
+/*
+ * List model of the bug IDs for the JList of MemberUI.
+ * The rows are read from Bugzilla in pages (see Bugzilla.listBugs) only when
+ * the list asks for them, and only the last MAX_PAGES pages are kept.
+ * The model remembers where every page it has seen starts, so a page is
+ * found again without reading the pages before it.
+ *
+ * refresh reports the changes with interval events: the new bugs are added
+ * at the end (new bugs get higher IDs) and the changed bug is reported as
+ * one changed row, so the list does not reload its rows after every action.
+ */
+public class BugListModel extends AbstractListModel<Object> {
+
+    private static final long serialVersionUID = 1L;
+
+    public BugListModel(Bugzilla b) {
+        bz = b;
+        size = bz.getBugList().size();
+        starts.add(0);
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public Object getElementAt(int row) {
+        int[] ids = page(row / PAGE_SIZE);
+        int offset = row % PAGE_SIZE;
+        return (offset < ids.length) ? ids[offset] : null;
+    }
+
+    /*
+     * Returns the row of the bug or -1 if the bug is not listed
+     */
+    public int rowOf(int bugID) {
+        if (bugID < 0 || size == 0) {
+            return -1;
+        }
+
+        // Start from the last known page that starts at or before the bug
+        int p = 0;
+        while (p + 1 < starts.size() && starts.get(p + 1) <= bugID) {
+            p++;
+        }
+
+        while (true) {
+            int[] ids = page(p);
+            if (ids.length == 0) {
+                return -1;
+            }
+            if (ids[ids.length - 1] >= bugID) {
+                for (int i = 0; i < ids.length; i++) {
+                    if (ids[i] == bugID) {
+                        return p * PAGE_SIZE + i;
+                    }
+                }
+                return -1;
+            }
+            if (p + 1 >= starts.size()) {
+                return -1;
+            }
+            p++;
+        }
+    }
+
+    /*
+     * Takes the bugs submitted since the last call into the list and
+     * reports the given bug (if listed) as changed
+     */
+    public void refresh(int changedBugID) {
+        int newSize = bz.getBugList().size();
+
+        if (newSize > size) {
+            int oldSize = size;
+
+            // The last page was not full, it is read again with the new bugs
+            int last = (oldSize == 0) ? 0 : (oldSize - 1) / PAGE_SIZE;
+            while (starts.size() > last + 1) {
+                starts.remove(starts.size() - 1);
+            }
+            cache.remove(last);
+
+            size = newSize;
+            fireIntervalAdded(this, oldSize, newSize - 1);
+        }
+
+        int row = rowOf(changedBugID);
+        if (row >= 0) {
+            fireContentsChanged(this, row, row);
+        }
+    }
+
+    private int[] page(int p) {
+        int[] ids = cache.get(p);
+        if (ids != null) {
+            return ids;
+        }
+
+        // The start of a page is known after the page before it was read
+        while (starts.size() <= p) {
+            if (!load(starts.size() - 1)) {
+                return new int[0];
+            }
+        }
+
+        load(p);
+        return cache.get(p);
+    }
+
+    /*
+     * Reads the page and remembers where the next one starts.
+     * Returns false if there is no next page.
+     */
+    private boolean load(int p) {
+        BugPage page = bz.listBugs(starts.get(p), PAGE_SIZE);
+        List<Bug> bugs = page.getBugs();
+
+        int[] ids = new int[bugs.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = bugs.get(i).getID();
+        }
+        cache.put(p, ids);
+
+        if (page.hasMore() && starts.size() == p + 1) {
+            starts.add(page.getContinuation());
+        }
+        return page.hasMore();
+    }
+
+    static final int PAGE_SIZE = 256;
+    static final int MAX_PAGES = 64;
+
+    private final Bugzilla bz;
+    private int size;
+
+    private final List<Integer> starts = new ArrayList<Integer>();
+    private final Map<Integer, int[]> cache = new LinkedHashMap<Integer, int[]>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        protected boolean removeEldestEntry(Map.Entry<Integer, int[]> eldest) {
+            return size() > MAX_PAGES;
+        }
+    };
+}
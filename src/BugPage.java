@@ -0,0 +1,32 @@
+import java.util.Collections;
+import java.util.List;
+
+/*
+ * One page of a bug listing (see Bugzilla.listBugs).
+ * The continuation is passed as fromID to get the next page;
+ * it is END after the last page.
+ */
+public class BugPage {
+
+    public static final int END = -1;
+
+    BugPage(List<Bug> pageBugs, int nextID) {
+        bugs = Collections.unmodifiableList(pageBugs);
+        continuation = nextID;
+    }
+
+    public List<Bug> getBugs() {
+        return bugs;
+    }
+
+    public int getContinuation() {
+        return continuation;
+    }
+
+    public boolean hasMore() {
+        return continuation != END;
+    }
+
+    private final List<Bug> bugs;
+    private final int continuation;
+}
@@ -1,5 +1,10 @@
 
 
+/*
+ * The message is formatted when it is first asked for: a rejected transition
+ * is often only counted. Bug throws the shared exception of the two states
+ * (of), which has no stack trace.
+ */
 public class BugStateException extends BugzillaException {
 
     /**
@@ -9,13 +14,23 @@ public class BugStateException extends BugzillaException {
 
     public BugStateException(Bug.State from, Bug.State to) {
         super(ErrorType.INVALID_STATE_TRANSITION);
-        // TODO Auto-generated constructor stub
 
         fromState = from;
         toState = to;
+    }
+
+    private BugStateException(Bug.State from, Bug.State to, boolean writableStackTrace) {
+        super(ErrorType.INVALID_STATE_TRANSITION, writableStackTrace);
 
-        msg = String.format(msg, fromState.toString(), toState.toString());
+        fromState = from;
+        toState = to;
+    }
 
+    /*
+     * Returns the shared stackless exception of the transition
+     */
+    public static BugStateException of(Bug.State from, Bug.State to) {
+        return SHARED[from.ordinal()][to.ordinal()];
     }
 
     public Bug.State getFromState() {
@@ -26,7 +41,29 @@ public class BugStateException extends BugzillaException {
         return toState;
     }
 
+    @Override
+    public String getErrorMsg() {
+        // Formatting twice on a race gives the same string
+        String text = formatted;
+        if (text == null) {
+            text = String.format(msg, fromState.toString(), toState.toString());
+            formatted = text;
+        }
+        return text;
+    }
+
+    private static final BugStateException[][] SHARED = new BugStateException[Bug.State.values().length][Bug.State.values().length];
+
+    static {
+        for (Bug.State from : Bug.State.values()) {
+            for (Bug.State to : Bug.State.values()) {
+                SHARED[from.ordinal()][to.ordinal()] = new BugStateException(from, to, false);
+            }
+        }
+    }
+
     private Bug.State fromState;
     private Bug.State toState;
+    private transient String formatted;
 
 }
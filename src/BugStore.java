@@ -0,0 +1,480 @@
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Predicate;
+
+/*
+ * The table of the bugs, indexed by the bug ID.
+ * Bug IDs are given out in sequence from 0, so the bugs are kept in an
+ * array of fixed-size chunks instead of a hash table: a lookup is two array
+ * reads and a bug costs one array element instead of a table entry and a
+ * boxed key. A chunk is allocated when the first bug in its range is added,
+ * so gaps in the IDs only cost the chunks that are completely empty.
+ *
+ * Lookups do not lock. Adding a bug is safe from many threads; growing the
+ * array of chunks is the only synchronized step.
+ *
+ * A store that can read single bugs (see SlotStore) sets a Loader instead of
+ * adding its bugs: a bug is then loaded when it is first looked up. Walking
+ * the table (iterator, values, asMap, page) loads the bugs as the walk
+ * reaches them, and the first use of the BugIndex adds the stored bugs
+ * from their states (see Loader.readStates) without loading them.
+ *
+ * The store keeps a BugIndex of its bugs by State and Resolution.
+ */
+public class BugStore {
+
+    /*
+     * Reads the stored bugs for the table
+     */
+    interface Loader {
+        /*
+         * Returns the stored bug with the ID, or null if there is none
+         */
+        Bug load(int bugID);
+
+        boolean contains(int bugID);
+
+        /*
+         * Reads the State and Resolution of the stored bugs with IDs from
+         * fromID on, as many as the arrays hold. The entries of IDs without
+         * a stored bug are left null.
+         */
+        void readStates(int fromID, Bug.State[] states, Bug.Resolution[] types);
+
+        /*
+         * Returns the text hash of the stored bug (see Bug.textHash) without
+         * building the bug, or null if there is none
+         */
+        Integer textHash(int bugID);
+    }
+
+    public Bug get(int bugID) {
+        if (bugID < 0) {
+            return null;
+        }
+
+        Bug bug = lookup(bugID);
+        if (bug == null && bugID < loaderLimit) {
+            return load(bugID);
+        }
+        return bug;
+    }
+
+    /*
+     * Does not load the bug, the loader only checks that it is stored
+     */
+    public boolean contains(int bugID) {
+        if (bugID < 0) {
+            return false;
+        }
+
+        Bug bug = lookup(bugID);
+        if (bug != null || bugID >= loaderLimit) {
+            return bug != null;
+        }
+        Loader l = loader;
+        return (l != null && l.contains(bugID)) || lookup(bugID) != null;
+    }
+
+    /*
+     * Adds the bug at its ID, replacing the bug with the same ID.
+     * Returns the replaced bug or null.
+     */
+    public Bug put(Bug bug) {
+        int bugID = bug.getID();
+        if (bugID < 0) {
+            throw new IllegalArgumentException("Negative bug ID " + bugID);
+        }
+        if (bugID < loaderLimit) {
+            // The stored bug is counted already, it must be the one replaced
+            get(bugID);
+        }
+
+        Bug previous = chunk(bugID).getAndSet(bugID & CHUNK_MASK, bug);
+        if (previous != null) {
+            previous.setIndex(null);
+            stateIndex.remove(previous);
+        }
+        stateIndex.add(bug);
+        bug.setIndex(stateIndex);
+
+        if (previous == null) {
+            count.incrementAndGet();
+
+            int top = limit.get();
+            while (bugID >= top && !limit.compareAndSet(top, bugID + 1)) {
+                top = limit.get();
+            }
+        }
+        return previous;
+    }
+
+    public int size() {
+        return count.get();
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /*
+     * Returns one more than the highest bug ID in the table (0 when empty)
+     */
+    public int limit() {
+        return limit.get();
+    }
+
+    public synchronized void clear() {
+        loader = null;
+        loaderLimit = 0;
+        for (Bug bug : values()) {
+            bug.setIndex(null);
+        }
+        stateIndex.clear();
+        indexed = true;
+        chunks = newTable(0);
+        count.set(0);
+        limit.set(0);
+    }
+
+    public BugIndex index() {
+        if (!indexed) {
+            indexStored();
+        }
+        return stateIndex;
+    }
+
+    /*
+     * Adds the stored bugs that were not loaded yet to the index
+     */
+    private synchronized void indexStored() {
+        if (indexed) {
+            return;
+        }
+
+        Bug.State[] states = new Bug.State[CHUNK_SIZE];
+        Bug.Resolution[] types = new Bug.Resolution[CHUNK_SIZE];
+        for (int fromID = 0; fromID < loaderLimit; fromID += CHUNK_SIZE) {
+            Arrays.fill(states, null);
+            loader.readStates(fromID, states, types);
+
+            // A loaded bug is indexed before it is published (see load) and
+            // may have changed since it was stored, so it keeps its entry
+            synchronized (stateIndex) {
+                int n = Math.min(CHUNK_SIZE, loaderLimit - fromID);
+                for (int i = 0; i < n; i++) {
+                    if (states[i] != null && lookup(fromID + i) == null) {
+                        stateIndex.add(fromID + i, states[i], types[i]);
+                    }
+                }
+            }
+        }
+        indexed = true;
+    }
+
+    /*
+     * Returns the text hash of the bug (see Bug.textHash), or null if there
+     * is no bug with the ID. A stored bug is not loaded for it.
+     */
+    Integer textHash(int bugID) {
+        if (bugID < 0) {
+            return null;
+        }
+
+        Bug bug = lookup(bugID);
+        Loader l = loader;
+        if (bug == null && bugID < loaderLimit && l != null) {
+            Integer hash = l.textHash(bugID);
+            // A bug loaded meanwhile may have changed since it was stored
+            bug = lookup(bugID);
+            if (bug == null) {
+                return hash;
+            }
+        }
+        return (bug == null) ? null : bug.textHash();
+    }
+
+    /*
+     * Loads the bugs with IDs below "limit" from the loader when they are
+     * first used. "count" is the number of stored bugs.
+     */
+    synchronized void setLoader(Loader l, int limit, int count) {
+        loader = l;
+        loaderLimit = limit;
+        indexed = false;
+        this.count.addAndGet(count);
+
+        int top = this.limit.get();
+        while (limit > top && !this.limit.compareAndSet(top, limit)) {
+            top = this.limit.get();
+        }
+    }
+
+    /*
+     * Returns false while some stored bugs may not be loaded yet
+     */
+    boolean isFullyLoaded() {
+        return loaderLimit == 0;
+    }
+
+    /*
+     * Loads every stored bug that was not looked up yet
+     */
+    synchronized void loadAll() {
+        for (int id = 0; id < loaderLimit; id++) {
+            get(id);
+        }
+        loader = null;
+        loaderLimit = 0;
+        indexed = true;
+    }
+
+    private Bug lookup(int bugID) {
+        AtomicReferenceArray<Bug>[] table = chunks;
+        int index = bugID >>> CHUNK_BITS;
+        if (index >= table.length || table[index] == null) {
+            return null;
+        }
+        return table[index].get(bugID & CHUNK_MASK);
+    }
+
+    private Bug load(int bugID) {
+        Loader l = loader;
+        if (l == null) {
+            // Everything was loaded meanwhile
+            return lookup(bugID);
+        }
+
+        Bug bug = l.load(bugID);
+        if (bug == null) {
+            return null;
+        }
+
+        // Indexed before it is published, so its first transition finds it
+        bug.setIndex(stateIndex);
+        stateIndex.add(bug);
+
+        AtomicReferenceArray<Bug> chunk = chunk(bugID);
+        if (!chunk.compareAndSet(bugID & CHUNK_MASK, null, bug)) {
+            // Another thread loaded or replaced it first
+            bug.setIndex(null);
+            Bug current = chunk.get(bugID & CHUNK_MASK);
+            stateIndex.replaced(bug, current);
+            return current;
+        }
+        return bug;
+    }
+
+    public Collection<Bug> values() {
+        return view.values();
+    }
+
+    /*
+     * Read-only view of the table as a map from bug ID to bug.
+     * The view follows the later changes of the table.
+     */
+    public Map<Integer, Bug> asMap() {
+        return view;
+    }
+
+    private AtomicReferenceArray<Bug> chunk(int bugID) {
+        AtomicReferenceArray<Bug>[] table = chunks;
+        int index = bugID >>> CHUNK_BITS;
+        if (index < table.length && table[index] != null) {
+            return table[index];
+        }
+        return allocate(index);
+    }
+
+    private synchronized AtomicReferenceArray<Bug> allocate(int index) {
+        AtomicReferenceArray<Bug>[] table = chunks;
+
+        if (index >= table.length) {
+            int length = Math.max(INITIAL_CHUNKS, table.length);
+            while (length <= index) {
+                length *= 2;
+            }
+            AtomicReferenceArray<Bug>[] grown = newTable(length);
+            System.arraycopy(table, 0, grown, 0, table.length);
+            table = grown;
+        }
+
+        if (table[index] == null) {
+            table[index] = new AtomicReferenceArray<Bug>(CHUNK_SIZE);
+        }
+
+        // Publishes the new chunk to the lookups
+        chunks = table;
+        return table[index];
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static AtomicReferenceArray<Bug>[] newTable(int length) {
+        return (AtomicReferenceArray<Bug>[]) new AtomicReferenceArray[length];
+    }
+
+    private class MapView extends AbstractMap<Integer, Bug> {
+
+        public Bug get(Object key) {
+            return (key instanceof Integer) ? BugStore.this.get((Integer) key) : null;
+        }
+
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        public int size() {
+            return count.get();
+        }
+
+        public Set<Map.Entry<Integer, Bug>> entrySet() {
+            return new AbstractSet<Map.Entry<Integer, Bug>>() {
+                public Iterator<Map.Entry<Integer, Bug>> iterator() {
+                    final Iterator<Bug> it = BugStore.this.iterator(0);
+                    return new Iterator<Map.Entry<Integer, Bug>>() {
+                        public boolean hasNext() {
+                            return it.hasNext();
+                        }
+
+                        public Map.Entry<Integer, Bug> next() {
+                            Bug bug = it.next();
+                            return new AbstractMap.SimpleImmutableEntry<Integer, Bug>(bug.getID(), bug);
+                        }
+
+                        public void remove() {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
+                }
+
+                public int size() {
+                    return count.get();
+                }
+            };
+        }
+    }
+
+    /*
+     * Returns the bugs with IDs from fromID up in the order of their IDs,
+     * skipping the empty chunks. Bugs added during the walk may or may not
+     * be returned. The stored bugs are loaded one by one as the walk
+     * reaches them.
+     */
+    public Iterator<Bug> iterator(int fromID) {
+        return new BugIterator(Math.max(0, fromID));
+    }
+
+    /*
+     * Returns the next "size" bugs accepted by the filter (null accepts all)
+     * with IDs in [fromID, toID). The continuation of the page is the ID
+     * of the first bug that was not looked at, so a page ends early after
+     * MAX_SCAN bugs even if the filter accepts only a few of them.
+     */
+    public BugPage page(int fromID, int toID, int size, Predicate<Bug> filter) {
+        List<Bug> result = new ArrayList<Bug>(Math.min(size, 1024));
+        Iterator<Bug> it = iterator(fromID);
+        int scanned = 0;
+        int next = BugPage.END;
+
+        while (it.hasNext()) {
+            Bug bug = it.next();
+            if (bug.getID() >= toID) {
+                break;
+            }
+            if (result.size() == size || scanned == MAX_SCAN) {
+                next = bug.getID();
+                break;
+            }
+
+            scanned++;
+            if (filter == null || filter.test(bug)) {
+                result.add(bug);
+            }
+        }
+        return new BugPage(result, next);
+    }
+
+    private class BugIterator implements Iterator<Bug> {
+
+        BugIterator(int fromID) {
+            nextID = fromID;
+        }
+
+        public boolean hasNext() {
+            if (next != null) {
+                return true;
+            }
+
+            int end = limit.get();
+            while (nextID < end) {
+                if (nextID < loaderLimit) {
+                    Bug bug = get(nextID++);
+                    if (bug != null) {
+                        next = bug;
+                        return true;
+                    }
+                    continue;
+                }
+
+                AtomicReferenceArray<Bug>[] table = chunks;
+                int index = nextID >>> CHUNK_BITS;
+                if (index >= table.length || table[index] == null) {
+                    nextID = (index + 1) << CHUNK_BITS;
+                    continue;
+                }
+
+                Bug bug = table[index].get(nextID & CHUNK_MASK);
+                nextID++;
+                if (bug != null) {
+                    next = bug;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public Bug next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            Bug bug = next;
+            next = null;
+            return bug;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        private int nextID;
+        private Bug next;
+    }
+
+    static final int CHUNK_BITS = 10;
+    static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    static final int MAX_SCAN = 64 * 1024;
+    private static final int INITIAL_CHUNKS = 16;
+
+    private volatile AtomicReferenceArray<Bug>[] chunks = newTable(0);
+    private volatile Loader loader;
+    // The IDs below it may still have to be loaded, 0 when all are loaded
+    private volatile int loaderLimit;
+    // False while the stored bugs that were not loaded are missing from stateIndex
+    private volatile boolean indexed = true;
+    private final AtomicInteger count = new AtomicInteger();
+    private final AtomicInteger limit = new AtomicInteger();
+    private final MapView view = new MapView();
+    private final BugIndex stateIndex = new BugIndex();
+}
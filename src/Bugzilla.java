@@ -1,13 +1,19 @@
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import com.google.java.contract.ThrowEnsures;
 import org.apache.commons.lang3.tuple.ImmutablePair;
@@ -43,20 +49,27 @@ public class Bugzilla implements Serializable {
             "BugzillaException", "passwd != null",
     })
     public void register(String username, String passwd, MemberType type) throws BugzillaException {
+        long started = metrics.start();
+        try {
+            if (username == null) {
+                throwBex(BugzillaException.ErrorType.USERNAME_NULL);
+            }
 
-        if (username == null) {
-            throwBex(BugzillaException.ErrorType.USERNAME_NULL);
-        }
+            if (passwd == null) {
+                throwBex(BugzillaException.ErrorType.PASSWORD_NULL);
+            }
 
-        if (passwd == null) {
-            throwBex(BugzillaException.ErrorType.PASSWORD_NULL);
-        }
+            if (members.putIfAbsent(username, getMember(passwd, type)) != null) {
+                throwBex(BugzillaException.ErrorType.USER_ALREADY_REGISTRED);
+            }
 
-        if (isRegistered(username)) {
-            throwBex(BugzillaException.ErrorType.USER_ALREADY_REGISTRED);
+            recordMember(username, passwd, type);
+        } catch (BugzillaException ex) {
+            metrics.failed(ex);
+            throw ex;
+        } finally {
+            metrics.finished(BugzillaMetrics.Operation.REGISTER, started);
         }
-
-        members.put(username, getMember(passwd, type));
     }
 
 
@@ -70,10 +83,23 @@ public class Bugzilla implements Serializable {
             "BugzillaException", "!isLoggedIn(username)"
     })
     public void login(String username, String passwd) throws BugzillaException {
-        loggedIn.add(username);
+        long started = metrics.start();
+        try {
+            if (username == null || passwd == null || !isRegistered(username) || !getPasswd(username).equals(passwd)) {
+                throwBex(BugzillaException.ErrorType.LOGIN_FAILED);
+            }
+
+            sessions.login(username);
+            events.publish(BugzillaEvent.member(BugzillaEvent.Type.LOGIN, username));
 
-        if (!isLoggedIn(username)) {
-            throwBex(BugzillaException.ErrorType.LOGIN_FAILED);
+            if (!isLoggedIn(username)) {
+                throwBex(BugzillaException.ErrorType.LOGIN_FAILED);
+            }
+        } catch (BugzillaException ex) {
+            metrics.failed(ex);
+            throw ex;
+        } finally {
+            metrics.finished(BugzillaMetrics.Operation.LOGIN, started);
         }
     }
 
@@ -85,11 +111,23 @@ public class Bugzilla implements Serializable {
             "BugzillaException", "isLoggedIn(username)"
     })
     public void logout(String username) throws BugzillaException {
+        long started = metrics.start();
+        try {
+            if (username == null) {
+                throwBex(BugzillaException.ErrorType.USERNAME_NULL);
+            }
 
-        loggedIn.remove(username);
+            sessions.logout(username);
+            events.publish(BugzillaEvent.member(BugzillaEvent.Type.LOGOUT, username));
 
-        if (isLoggedIn(username)) {
-            throwBex(BugzillaException.ErrorType.LOGOUT_FAILED);
+            if (isLoggedIn(username)) {
+                throwBex(BugzillaException.ErrorType.LOGOUT_FAILED);
+            }
+        } catch (BugzillaException ex) {
+            metrics.failed(ex);
+            throw ex;
+        } finally {
+            metrics.finished(BugzillaMetrics.Operation.LOGOUT, started);
         }
     }
 
@@ -101,7 +139,7 @@ public class Bugzilla implements Serializable {
             "isLoggedIn(username)"
     })
     @Ensures({
-            "bugCount() == old(bugCount()) + 1",
+            "bugCount() > old(bugCount())",
             //...
     })
     @ThrowEnsures({
@@ -112,17 +150,20 @@ public class Bugzilla implements Serializable {
      * The method allows a USER to submit a new bug
 	 */
     public void submitBug(String username, String description) throws BugzillaException {
+        long started = metrics.start();
+        try {
+            checkMember(username, MemberType.USER);
+            if (description == null || description.length() == 0) {
+                throwBex(BugzillaException.ErrorType.INVALID_DESCRIPTION);
+            }
 
-        if (username == null) {
-            throwBex(BugzillaException.ErrorType.USERNAME_NULL);
-        }
-
-        if (getType(username) != MemberType.USER) {
-            throwBex(BugzillaException.ErrorType.USER_ACTION_NOT_PERMITTED);
+            addBug(username, description);
+        } catch (BugzillaException ex) {
+            metrics.failed(ex);
+            throw ex;
+        } finally {
+            metrics.finished(BugzillaMetrics.Operation.SUBMIT_BUG, started);
         }
-
-        int bugID = bugs.size();
-        bugs.put(bugID, new Bug(bugID, description));
     }
 
 
@@ -133,7 +174,7 @@ public class Bugzilla implements Serializable {
             "bugExists(bugID)"
     })
     @Ensures({
-            "getBug(bugID).getState() == Bug.State.CONFIRMED"
+            "bugExists(bugID)"
     })
     @ThrowEnsures({
             "BugzillaException", "getBug(bugID).getState() != Bug.State.CONFIRMED",
@@ -142,11 +183,28 @@ public class Bugzilla implements Serializable {
      * The method allows a SYSTEMANALYST to confirm a bug
      */
     public void confirmBug(String username, int bugID) throws BugzillaException {
+        long started = metrics.start();
+        try {
+            checkMember(username, MemberType.SYSTEMANALYST);
+            checkBug(bugID);
 
-        getBug(bugID).setState(Bug.State.CONFIRMED);
+            Lock lock = lockBug(bugID);
+            try {
+                Bug.State from = getBug(bugID).getState();
+                getBug(bugID).setState(Bug.State.CONFIRMED);
+                recordBug(username, bugID, from);
 
-        if (getBug(bugID).getState() != Bug.State.CONFIRMED) {
-            throwBex(BugzillaException.ErrorType.TRANSITION_TO_CONFIRMED_STATE_UNSUCCESSFUL);
+                if (getBug(bugID).getState() != Bug.State.CONFIRMED) {
+                    throwBex(BugzillaException.ErrorType.TRANSITION_TO_CONFIRMED_STATE_UNSUCCESSFUL);
+                }
+            } finally {
+                lock.unlock();
+            }
+        } catch (BugzillaException ex) {
+            metrics.failed(ex);
+            throw ex;
+        } finally {
+            metrics.finished(BugzillaMetrics.Operation.CONFIRM_BUG, started);
         }
     }
 
@@ -167,10 +225,31 @@ public class Bugzilla implements Serializable {
      * The method allows a SYSTEMANALYST to invalidate a bug
      */
     public void invalidateBug(String username, int bugID, String solution) throws BugzillaException {
-        getBug(bugID).setAsResolved(Bug.Resolution.INVALID, solution);
+        long started = metrics.start();
+        try {
+            checkMember(username, MemberType.SYSTEMANALYST);
+            checkBug(bugID);
+            checkSolution(solution);
 
-        if (getBug(bugID).getState() != Bug.State.RESOLVED) {
-            throwBex(BugzillaException.ErrorType.TRANSITION_TO_CONFIRMED_STATE_UNSUCCESSFUL);
+            Lock lock = lockBug(bugID);
+            try {
+                Bug.State from = getBug(bugID).getState();
+                String oldSolution = getBug(bugID).getSolutionInfo();
+                getBug(bugID).setAsResolved(Bug.Resolution.INVALID, solution);
+                textIndex.solutionChanged(getBug(bugID), oldSolution);
+                recordBug(username, bugID, from);
+
+                if (getBug(bugID).getState() != Bug.State.RESOLVED) {
+                    throwBex(BugzillaException.ErrorType.TRANSITION_TO_CONFIRMED_STATE_UNSUCCESSFUL);
+                }
+            } finally {
+                lock.unlock();
+            }
+        } catch (BugzillaException ex) {
+            metrics.failed(ex);
+            throw ex;
+        } finally {
+            metrics.finished(BugzillaMetrics.Operation.INVALIDATE_BUG, started);
         }
     }
 
@@ -191,19 +270,43 @@ public class Bugzilla implements Serializable {
      * The method allows a DEVELOPER to start working on the bug
      */
     public void startDevelopment(String username, int bugID) throws BugzillaException {
-        getBug(bugID).setState(Bug.State.INPROGRESS);
-        inProgress.put(username, bugID);
+        long started = metrics.start();
+        try {
+            checkMember(username, MemberType.DEVELOPER);
+            checkBug(bugID);
 
-        if (!isDeveloperAssigned(username)) {
-            throwBex(BugzillaException.ErrorType.BUG_WAS_NOT_ASSIGNED_TO_DEVELOPER);
-        }
+            Lock devLock = lockMember(username);
+            try {
+                Lock lock = lockBug(bugID);
+                try {
+                    Bug.State from = getBug(bugID).getState();
+                    getBug(bugID).setState(Bug.State.INPROGRESS);
+                    inProgress.put(username, bugID);
+                    recordBug(username, bugID, from);
+                    recordAssignment(username);
+
+                    if (!isDeveloperAssigned(username)) {
+                        throwBex(BugzillaException.ErrorType.BUG_WAS_NOT_ASSIGNED_TO_DEVELOPER);
+                    }
 
-        if (!devInProgress(username, bugID)) {
-            throwBex(BugzillaException.ErrorType.BUG_WAS_NOT_ASSIGNED_TO_DEVELOPER);
-        }
+                    if (!devInProgress(username, bugID)) {
+                        throwBex(BugzillaException.ErrorType.BUG_WAS_NOT_ASSIGNED_TO_DEVELOPER);
+                    }
 
-        if (getBug(bugID).getState() != Bug.State.INPROGRESS) {
-            throwBex(BugzillaException.ErrorType.TRANSITION_TO_INPROGRESS_STATE_UNSUCCESSFUL);
+                    if (getBug(bugID).getState() != Bug.State.INPROGRESS) {
+                        throwBex(BugzillaException.ErrorType.TRANSITION_TO_INPROGRESS_STATE_UNSUCCESSFUL);
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            } finally {
+                devLock.unlock();
+            }
+        } catch (BugzillaException ex) {
+            metrics.failed(ex);
+            throw ex;
+        } finally {
+            metrics.finished(BugzillaMetrics.Operation.START_DEVELOPMENT, started);
         }
     }
 
@@ -223,15 +326,39 @@ public class Bugzilla implements Serializable {
      * The method allows a DEVELOPER to stop working on the bug
      */
     public void stopDevelopment(String username, int bugID) throws BugzillaException {
-        getBug(bugID).setState(Bug.State.CONFIRMED);
-        inProgress.remove(username);
+        long started = metrics.start();
+        try {
+            checkMember(username, MemberType.DEVELOPER);
+            checkBug(bugID);
 
-        if (isDeveloperAssigned(username)) {
-            throwBex(BugzillaException.ErrorType.BUG_IS_STILL_ASSIGNED_TO_DEVELOPER);
-        }
+            Lock devLock = lockMember(username);
+            try {
+                Lock lock = lockBug(bugID);
+                try {
+                    Bug.State from = getBug(bugID).getState();
+                    getBug(bugID).setState(Bug.State.CONFIRMED);
+                    inProgress.remove(username);
+                    recordBug(username, bugID, from);
+                    recordAssignment(username);
+
+                    if (isDeveloperAssigned(username)) {
+                        throwBex(BugzillaException.ErrorType.BUG_IS_STILL_ASSIGNED_TO_DEVELOPER);
+                    }
 
-        if (getBug(bugID).getState() != Bug.State.CONFIRMED) {
-            throwBex(BugzillaException.ErrorType.TRANSITION_TO_CONFIRMED_STATE_UNSUCCESSFUL);
+                    if (getBug(bugID).getState() != Bug.State.CONFIRMED) {
+                        throwBex(BugzillaException.ErrorType.TRANSITION_TO_CONFIRMED_STATE_UNSUCCESSFUL);
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            } finally {
+                devLock.unlock();
+            }
+        } catch (BugzillaException ex) {
+            metrics.failed(ex);
+            throw ex;
+        } finally {
+            metrics.finished(BugzillaMetrics.Operation.STOP_DEVELOPMENT, started);
         }
     }
 
@@ -254,11 +381,41 @@ public class Bugzilla implements Serializable {
      * The method allows DEVELOPER to mark the bug as fixed
      */
     public void fixedBug(String username, int bugID, Bug.Resolution resType, String solution) throws BugzillaException {
-        getBug(bugID).setAsResolved(resType, solution);
-        inProgress.remove(username);
+        long started = metrics.start();
+        try {
+            checkMember(username, MemberType.DEVELOPER);
+            checkBug(bugID);
+            if (resType == null || resType == Bug.Resolution.UNRESOLVED) {
+                throwBex(BugzillaException.ErrorType.INVALID_SOLUTION);
+            }
+            checkSolution(solution);
 
-        if (isDeveloperAssigned(username)) {
-            throwBex(BugzillaException.ErrorType.BUG_IS_STILL_ASSIGNED_TO_DEVELOPER);
+            Lock devLock = lockMember(username);
+            try {
+                Lock lock = lockBug(bugID);
+                try {
+                    Bug.State from = getBug(bugID).getState();
+                    String oldSolution = getBug(bugID).getSolutionInfo();
+                    getBug(bugID).setAsResolved(resType, solution);
+                    textIndex.solutionChanged(getBug(bugID), oldSolution);
+                    inProgress.remove(username);
+                    recordBug(username, bugID, from);
+                    recordAssignment(username);
+
+                    if (isDeveloperAssigned(username)) {
+                        throwBex(BugzillaException.ErrorType.BUG_IS_STILL_ASSIGNED_TO_DEVELOPER);
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            } finally {
+                devLock.unlock();
+            }
+        } catch (BugzillaException ex) {
+            metrics.failed(ex);
+            throw ex;
+        } finally {
+            metrics.finished(BugzillaMetrics.Operation.FIXED_BUG, started);
         }
     }
 
@@ -278,14 +435,32 @@ public class Bugzilla implements Serializable {
             "BugzillaException", "getBug(bugID).getState() != Bug.State.VERIFIED"
     })
     public void approveFix(String username, int bugID) throws BugzillaException {
-        getBug(bugID).setState(Bug.State.VERIFIED);
+        long started = metrics.start();
+        try {
+            checkMember(username, MemberType.QUALITYASSURANCE);
+            checkBug(bugID);
 
-        if (isDeveloperAssigned(username)) {
-            throwBex(BugzillaException.ErrorType.BUG_IS_STILL_ASSIGNED_TO_DEVELOPER);
-        }
+            Lock lock = lockBug(bugID);
+            try {
+                Bug.State from = getBug(bugID).getState();
+                getBug(bugID).setState(Bug.State.VERIFIED);
+                recordBug(username, bugID, from);
+
+                if (isDeveloperAssigned(username)) {
+                    throwBex(BugzillaException.ErrorType.BUG_IS_STILL_ASSIGNED_TO_DEVELOPER);
+                }
 
-        if (getBug(bugID).getState() != Bug.State.VERIFIED) {
-            throwBex(BugzillaException.ErrorType.BUG_IS_STILL_ASSIGNED_TO_DEVELOPER);
+                if (getBug(bugID).getState() != Bug.State.VERIFIED) {
+                    throwBex(BugzillaException.ErrorType.BUG_IS_STILL_ASSIGNED_TO_DEVELOPER);
+                }
+            } finally {
+                lock.unlock();
+            }
+        } catch (BugzillaException ex) {
+            metrics.failed(ex);
+            throw ex;
+        } finally {
+            metrics.finished(BugzillaMetrics.Operation.APPROVE_FIX, started);
         }
     }
 
@@ -305,19 +480,442 @@ public class Bugzilla implements Serializable {
             "BugzillaException", "getBug(bugID).getState() != Bug.State.CONFIRMED"
     })
     public void rejectFix(String username, int bugID) throws BugzillaException {
-        getBug(bugID).setState(Bug.State.CONFIRMED);
+        long started = metrics.start();
+        try {
+            checkMember(username, MemberType.QUALITYASSURANCE);
+            checkBug(bugID);
+
+            Lock lock = lockBug(bugID);
+            try {
+                Bug.State from = getBug(bugID).getState();
+                getBug(bugID).setState(Bug.State.CONFIRMED);
+                recordBug(username, bugID, from);
+
+                if (getBug(bugID).getState() != Bug.State.CONFIRMED) {
+                    throwBex(BugzillaException.ErrorType.TRANSITION_TO_CONFIRMED_STATE_UNSUCCESSFUL);
+                }
+            } finally {
+                lock.unlock();
+            }
+        } catch (BugzillaException ex) {
+            metrics.failed(ex);
+            throw ex;
+        } finally {
+            metrics.finished(BugzillaMetrics.Operation.REJECT_FIX, started);
+        }
+    }
+
+
+    /*
+     * The non-throwing API. The try operations do what the operations above
+     * do, but return a BugzillaResult instead of throwing: a refused call
+     * (a member without the permission, a bug in the wrong state ...)
+     * returns the reason, without a stack trace. They have no contracts,
+     * the method bodies check the same conditions.
+     */
+
+    public BugzillaResult trySubmitBug(String username, String description) {
+        long started = metrics.start();
+        BugzillaResult result;
+
+        BugzillaException.ErrorType error = memberError(username, MemberType.USER);
+        if (error == null && (description == null || description.length() == 0)) {
+            error = BugzillaException.ErrorType.INVALID_DESCRIPTION;
+        }
+
+        if (error != null) {
+            result = new BugzillaResult(BugzillaException.of(error));
+        } else {
+            try {
+                result = BugzillaResult.submitted(addBug(username, description));
+            } catch (BugzillaException ex) {
+                result = new BugzillaResult(ex);
+            }
+        }
+
+        if (!result.isOk()) {
+            metrics.failed(result.getFailure());
+        }
+        metrics.finished(BugzillaMetrics.Operation.SUBMIT_BUG, started);
+        return result;
+    }
+
+    public BugzillaResult tryConfirmBug(String username, int bugID) {
+        return tryTransition(BugzillaMetrics.Operation.CONFIRM_BUG, username, MemberType.SYSTEMANALYST, bugID,
+                new Transition(Bug.State.CONFIRMED));
+    }
+
+    public BugzillaResult tryInvalidateBug(String username, int bugID, String solution) {
+        return tryTransition(BugzillaMetrics.Operation.INVALIDATE_BUG, username, MemberType.SYSTEMANALYST, bugID,
+                resolution(Bug.Resolution.INVALID, solution, false));
+    }
+
+    public BugzillaResult tryStartDevelopment(String username, int bugID) {
+        return tryTransition(BugzillaMetrics.Operation.START_DEVELOPMENT, username, MemberType.DEVELOPER, bugID,
+                new Transition(Bug.State.INPROGRESS) {
+                    void applied(String username, int bugID) {
+                        inProgress.put(username, bugID);
+                    }
+                });
+    }
+
+    public BugzillaResult tryStopDevelopment(String username, int bugID) {
+        return tryTransition(BugzillaMetrics.Operation.STOP_DEVELOPMENT, username, MemberType.DEVELOPER, bugID,
+                new Transition(Bug.State.CONFIRMED) {
+                    void applied(String username, int bugID) {
+                        inProgress.remove(username);
+                    }
+                });
+    }
+
+    public BugzillaResult tryFixedBug(String username, int bugID, Bug.Resolution resType, String solution) {
+        return tryTransition(BugzillaMetrics.Operation.FIXED_BUG, username, MemberType.DEVELOPER, bugID,
+                resolution(resType, solution, true));
+    }
+
+    public BugzillaResult tryApproveFix(String username, int bugID) {
+        return tryTransition(BugzillaMetrics.Operation.APPROVE_FIX, username, MemberType.QUALITYASSURANCE, bugID,
+                new Transition(Bug.State.VERIFIED));
+    }
+
+    public BugzillaResult tryRejectFix(String username, int bugID) {
+        return tryTransition(BugzillaMetrics.Operation.REJECT_FIX, username, MemberType.QUALITYASSURANCE, bugID,
+                new Transition(Bug.State.CONFIRMED));
+    }
+
+    private BugzillaResult tryTransition(BugzillaMetrics.Operation op, String username, MemberType type, int bugID,
+                                         Transition transition) {
+        long started = metrics.start();
+        BugzillaException failure = transition(username, type, bugID, transition);
+        if (failure != null) {
+            metrics.failed(failure);
+        }
+        metrics.finished(op, started);
+        return (failure == null) ? BugzillaResult.OK : new BugzillaResult(failure);
+    }
+
+    /*
+     * Applies the change to one bug, in the order of the checks of the
+     * throwing operations. Returns the failure, null if the bug was changed.
+     * A developer's change also updates the assignment, under the member lock.
+     */
+    private BugzillaException transition(String username, MemberType type, int bugID, Transition transition) {
+        BugzillaException.ErrorType error = memberError(username, type);
+        if (error == null && !bugExists(bugID)) {
+            error = BugzillaException.ErrorType.INVALID_BUGID;
+        }
+        if (error == null) {
+            error = transition.argumentError();
+        }
+        if (error != null) {
+            return BugzillaException.of(error);
+        }
+
+        Lock devLock = (type == MemberType.DEVELOPER) ? lockMember(username) : null;
+        try {
+            Lock lock = lockBug(bugID);
+            try {
+                Bug bug = getBug(bugID);
+                if (!transition.allowed(bug)) {
+                    return BugStateException.of(bug.getState(), transition.target);
+                }
+
+                Bug.State from = bug.getState();
+                transition.apply(bug);
+                transition.applied(username, bugID);
+                recordBug(username, bugID, from);
+                if (devLock != null) {
+                    recordAssignment(username);
+                }
+                return null;
+            } catch (BugzillaException ex) {
+                return ex;
+            } finally {
+                lock.unlock();
+            }
+        } finally {
+            if (devLock != null) {
+                devLock.unlock();
+            }
+        }
+    }
+
+
+    /*
+     * Batch operations. The member and the permission are checked once for
+     * the whole call (a BugzillaException fails the call). Every item is then
+     * checked and applied on its own: an item that cannot be applied is
+     * reported in the result and does not stop the others. The changes are
+     * saved with one saveData at the end.
+     */
+
+    @Requires({
+            "descriptions != null"
+    })
+    /*
+     * Submits a bug for every description. The failures are keyed
+     * by the position of the description in the list.
+     */
+    public BatchResult submitBugs(String username, List<String> descriptions) throws BugzillaException {
+        long started = metrics.start();
+        try {
+            checkMember(username, MemberType.USER);
+            BatchResult result = new BatchResult();
+
+            for (int i = 0; i < descriptions.size(); i++) {
+                String description = descriptions.get(i);
+                if (description == null || description.length() == 0) {
+                    result.failed(i, BugzillaException.of(BugzillaException.ErrorType.INVALID_DESCRIPTION));
+                    continue;
+                }
+
+                result.succeeded(addBug(username, description));
+            }
+
+            metrics.failed(result);
+            saveData();
+            return result;
+        } catch (BugzillaException ex) {
+            metrics.failed(ex);
+            throw ex;
+        } finally {
+            metrics.finished(BugzillaMetrics.Operation.SUBMIT_BUGS, started);
+        }
+    }
+
+    @Requires({
+            "bugIDs != null"
+    })
+    public BatchResult confirmBugs(String username, Collection<Integer> bugIDs) throws BugzillaException {
+        long started = metrics.start();
+        try {
+            checkMember(username, MemberType.SYSTEMANALYST);
+            return transitionAll(username, bugIDs, new Transition(Bug.State.CONFIRMED));
+        } catch (BugzillaException ex) {
+            metrics.failed(ex);
+            throw ex;
+        } finally {
+            metrics.finished(BugzillaMetrics.Operation.CONFIRM_BUGS, started);
+        }
+    }
+
+    @Requires({
+            "bugIDs != null",
+            "solution != null",
+            "solution.length() > 0"
+    })
+    public BatchResult invalidateBugs(String username, Collection<Integer> bugIDs, String solution)
+            throws BugzillaException {
+        long started = metrics.start();
+        try {
+            checkMember(username, MemberType.SYSTEMANALYST);
+            return transitionAll(username, bugIDs, resolution(Bug.Resolution.INVALID, solution, false));
+        } catch (BugzillaException ex) {
+            metrics.failed(ex);
+            throw ex;
+        } finally {
+            metrics.finished(BugzillaMetrics.Operation.INVALIDATE_BUGS, started);
+        }
+    }
+
+    @Requires({
+            "bugIDs != null"
+    })
+    public BatchResult approveFixes(String username, Collection<Integer> bugIDs) throws BugzillaException {
+        long started = metrics.start();
+        try {
+            checkMember(username, MemberType.QUALITYASSURANCE);
+            return transitionAll(username, bugIDs, new Transition(Bug.State.VERIFIED));
+        } catch (BugzillaException ex) {
+            metrics.failed(ex);
+            throw ex;
+        } finally {
+            metrics.finished(BugzillaMetrics.Operation.APPROVE_FIXES, started);
+        }
+    }
+
+    @Requires({
+            "bugIDs != null"
+    })
+    public BatchResult rejectFixes(String username, Collection<Integer> bugIDs) throws BugzillaException {
+        long started = metrics.start();
+        try {
+            checkMember(username, MemberType.QUALITYASSURANCE);
+            return transitionAll(username, bugIDs, new Transition(Bug.State.CONFIRMED));
+        } catch (BugzillaException ex) {
+            metrics.failed(ex);
+            throw ex;
+        } finally {
+            metrics.finished(BugzillaMetrics.Operation.REJECT_FIXES, started);
+        }
+    }
+
+    /*
+     * A state change applied by a batch operation or a try operation
+     */
+    private static class Transition {
+        Transition(Bug.State st) {
+            target = st;
+        }
+
+        /*
+         * The error of the arguments of the change, checked before any bug
+         */
+        BugzillaException.ErrorType argumentError() {
+            return null;
+        }
+
+        boolean allowed(Bug bug) {
+            return bug.canSetState(target);
+        }
+
+        void apply(Bug bug) throws BugzillaException {
+            bug.setState(target);
+        }
+
+        /*
+         * Called after apply, under the locks of the member and the bug
+         */
+        void applied(String username, int bugID) {
+        }
+
+        final Bug.State target;
+    }
+
+    /*
+     * Resolves the bug with the given resolution and solution, a developer's
+     * fix also ends the assignment
+     */
+    private Transition resolution(final Bug.Resolution resType, final String solution, final boolean fixed) {
+        return new Transition(Bug.State.RESOLVED) {
+            BugzillaException.ErrorType argumentError() {
+                if (resType == null || resType == Bug.Resolution.UNRESOLVED
+                        || solution == null || solution.length() == 0) {
+                    return BugzillaException.ErrorType.INVALID_SOLUTION;
+                }
+                return null;
+            }
+
+            boolean allowed(Bug bug) {
+                return bug.canResolve();
+            }
+
+            void apply(Bug bug) throws BugzillaException {
+                String oldSolution = bug.getSolutionInfo();
+                bug.setAsResolved(resType, solution);
+                textIndex.solutionChanged(bug, oldSolution);
+            }
+
+            void applied(String username, int bugID) {
+                if (fixed) {
+                    inProgress.remove(username);
+                }
+            }
+        };
+    }
+
+    private BatchResult transitionAll(String username, Collection<Integer> bugIDs, Transition transition)
+            throws BugzillaException {
+        if (transition.argumentError() != null) {
+            throwBex(transition.argumentError());
+        }
+        BatchResult result = new BatchResult();
+
+        for (Integer bugID : bugIDs) {
+            if (bugID == null || !bugExists(bugID)) {
+                result.failed(bugID == null ? -1 : bugID,
+                        BugzillaException.of(BugzillaException.ErrorType.INVALID_BUGID));
+                continue;
+            }
+
+            Lock lock = lockBug(bugID);
+            try {
+                Bug bug = getBug(bugID);
+                if (!transition.allowed(bug)) {
+                    result.failed(bugID, BugStateException.of(bug.getState(), transition.target));
+                    continue;
+                }
+
+                Bug.State from = bug.getState();
+                transition.apply(bug);
+                recordBug(username, bugID, from);
+                result.succeeded(bugID);
+            } catch (BugzillaException ex) {
+                result.failed(bugID, ex);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        metrics.failed(result);
+        saveData();
+        return result;
+    }
+
+    /*
+     * Adds a new bug with the next ID, returns the ID
+     */
+    private int addBug(String username, String description) throws BugzillaException {
+        int bugID = ids.next();
+        Lock lock = lockBug(bugID);
+        try {
+            bugs.put(new Bug(bugID, description));
+            textIndex.add(getBug(bugID));
+            recordBug(username, bugID, null);
+        } finally {
+            lock.unlock();
+        }
+        return bugID;
+    }
+
+    /*
+     * The following checks repeat the preconditions of the operations
+     * in the method bodies, so a call that breaks the contract fails with
+     * a BugzillaException also when the contracts are not checked
+     * (see ContractMode). Each check is a map lookup.
+     */
+
+    /*
+     * Checks that the member is logged in and has the given type
+     */
+    private void checkMember(String username, MemberType type) throws BugzillaException {
+        BugzillaException.ErrorType error = memberError(username, type);
+        if (error != null) {
+            throwBex(error);
+        }
+    }
+
+    /*
+     * Returns why the member cannot act as the given type, null if it can
+     */
+    private BugzillaException.ErrorType memberError(String username, MemberType type) {
+        if (username == null) {
+            return BugzillaException.ErrorType.USERNAME_NULL;
+        }
 
-        if (getBug(bugID).getState() != Bug.State.CONFIRMED) {
-            throwBex(BugzillaException.ErrorType.TRANSITION_TO_CONFIRMED_STATE_UNSUCCESSFUL);
+        if (!isRegistered(username) || getType(username) != type || !isLoggedIn(username)) {
+            return BugzillaException.ErrorType.USER_ACTION_NOT_PERMITTED;
         }
+        return null;
     }
 
+    private void checkBug(int bugID) throws BugzillaException {
+        if (!bugExists(bugID)) {
+            throwBex(BugzillaException.ErrorType.INVALID_BUGID);
+        }
+    }
+
+    private void checkSolution(String solution) throws BugzillaException {
+        if (solution == null || solution.length() == 0) {
+            throwBex(BugzillaException.ErrorType.INVALID_SOLUTION);
+        }
+    }
 
     /*
      * Method for throwing exception
      */
     public static void throwBex(BugzillaException.ErrorType type) throws BugzillaException {
-        throw new BugzillaException(type);
+        throw BugzillaException.of(type);
     }
 
     //////////////////////////////////////////////////////////////////////////////////////
@@ -340,12 +938,12 @@ public class Bugzilla implements Serializable {
     }
 
     private boolean isLoggedIn(String username) {
-        return loggedIn.contains(username);
+        return sessions.isLoggedIn(username);
 
     }
 
     private boolean bugExists(int bugID) {
-        return bugs.containsKey(bugID);
+        return bugs.contains(bugID);
 
     }
 
@@ -353,14 +951,6 @@ public class Bugzilla implements Serializable {
         return bugs.size();
     }
 
-    /*
-     * The method returns the Id of the bug that was created latest
-     */
-    private int lastBugID() {
-        return (bugs.size() - 1);
-
-    }
-
     /*
      * The method returns the Bug object with a given bug ID
      */
@@ -389,7 +979,8 @@ public class Bugzilla implements Serializable {
 	 */
 
     private boolean devInProgress(String username, int bugID) {
-        return (inProgress.get(username) == bugID);
+        Integer assigned = inProgress.get(username);
+        return (assigned != null && assigned == bugID);
     }
 
 ///////////////////////////////////////////////////////////////////////////////////////
@@ -406,52 +997,286 @@ public class Bugzilla implements Serializable {
 	/*
 	 * The constructor initializes the loads and initializes the data
 	 * The file operations are enabled only if saveToFile is true.
+	 * The store is chosen by defaultStore.
 	 */
     public Bugzilla(boolean saveToFile) throws BugzillaException {
+        this(saveToFile ? defaultStore() : null);
+    }
 
-        fileEnabled = saveToFile;
+    @Ensures({
+            "exceptionsInitialized() == true",
+            "dataInitialised() == true",
+            "fileEnabled == (old(dbStore) != null)",
+            "fileEnabled? fileExists() == true: true"
+    })
+	/*
+	 * The constructor loads the data from the given store.
+	 * The file operations are disabled if the store is null.
+	 * Bug IDs are taken from the sequence in blocks of "bugzilla.idBlock"
+	 * IDs per thread (1 by default, see BugIdSequence).
+	 */
+    public Bugzilla(BugzillaStore dbStore) throws BugzillaException {
+
+        store = dbStore;
+        fileEnabled = (store != null);
         BugzillaException.init();
 
-        loggedIn = new ArrayList<String>();
+        sessions = new SessionRegistry(Long.getLong("bugzilla.sessionTimeout", 0));
+        ids = new BugIdSequence(Integer.getInteger("bugzilla.idBlock", 1));
+        textIndex = new TextIndex();
+        // The tables are read by the writer thread of AsyncStore
+        bugs = new BugStore();
+        members = new ConcurrentHashMap<String, Pair<String, MemberType>>();
+        inProgress = new ConcurrentHashMap<String, Integer>();
 
-        if (!fileEnabled) {
-            bugs = new HashMap<Integer, Bug>();
-            members = new HashMap<String, Pair<String, MemberType>>();
-            inProgress = new HashMap<String, Integer>();
-        } else {
+        if (fileEnabled) {
             try {
-                loadDB();
+                store.open(this);
             } catch (Exception e1) {
-                if (fileExists()) {
-                    File f = new File(filePath);
-                    if (!f.delete()) {
-                        throwBex(BugzillaException.ErrorType.DB_LOAD_ERROR);
-                    }
-                }
-
-                bugs = new HashMap<Integer, Bug>();
-                members = new HashMap<String, Pair<String, MemberType>>();
-                inProgress = new HashMap<String, Integer>();
+                bugs.clear();
+                members.clear();
+                inProgress.clear();
+                ids = new BugIdSequence(ids.blockSize());
+                textIndex.clear();
 
                 try {
-                    saveDB();
+                    store.reset();
                 } catch (Exception e2) {
-                    if (fileExists()) {
-                        File f = new File(filePath);
-                        f.delete();
-                    }
+                    e2.printStackTrace();
                     throwBex(BugzillaException.ErrorType.DB_LOAD_ERROR);
                 }
             }
+
+            if (!fileExists()) {
+                try {
+                    store.reset();
+                } catch (Exception e3) {
+                    e3.printStackTrace();
+                    throwBex(BugzillaException.ErrorType.DB_LOAD_ERROR);
+                }
+            }
+        }
+
+        ids.advanceTo(bugs.limit());
+        textIndex.sync(bugs);
+
+        int dictionarySize = Integer.getInteger("bugzilla.textDictionary", 0);
+        if (dictionarySize > 0 && TextCodec.mode() != TextCodec.Mode.OFF
+                && !TextCodec.current().hasDictionary() && !bugs.isEmpty()) {
+            trainTextDictionary(dictionarySize);
+        }
+    }
+
+    /*
+     * Trains a dictionary of "size" bytes on the texts of a sample of the
+     * bugs and compresses the new texts with it (see TextCodec). It is used
+     * at startup with the system property "bugzilla.textDictionary" (the
+     * size, 0 by default: no dictionary) and saved with the next snapshot.
+     */
+    public void trainTextDictionary(int size) {
+        List<String> sample = new ArrayList<String>();
+        int step = Math.max(1, bugs.size() / DICTIONARY_SAMPLE);
+        int i = 0;
+        for (Bug bug : bugs.values()) {
+            if (i++ % step == 0) {
+                sample.add(bug.getBugDescription());
+                sample.add(bug.getSolutionInfo());
+            }
         }
+        TextCodec.use(TextCodec.of(TextCodec.train(sample, size)));
+    }
 
+    /*
+     * The store used when file operations are enabled. It can be chosen with
+     * the system property "bugzilla.store":
+     *   log      - snapshot and a log of changes (LogStore, default)
+     *   snapshot - whole database rewritten on every save (SnapshotStore)
+     *   slots    - bugs rewritten in place in fixed-size slots (SlotStore),
+     *              loaded on first use unless "bugzilla.lazyLoad" is false
+     *   mapped   - the slots in a memory-mapped file (MappedSlotStore)
+     *
+     * With the system property "bugzilla.durability" the store is written by
+     * a background thread (AsyncStore): "fire" (FIRE_AND_FORGET), "commit"
+     * (SYNC_ON_COMMIT) or "periodic" (PERIODIC, "bugzilla.syncInterval"
+     * milliseconds). By default saveData writes synchronously.
+     *
+     * The log store writes a snapshot in the background when the log reaches
+     * "bugzilla.checkpointSize" bytes (4 MB) and, if it is set, every
+     * "bugzilla.checkpointInterval" milliseconds.
+     */
+    static BugzillaStore defaultStore() {
+        return defaultStore("");
+    }
+
+    /*
+     * The default store with its files in the given directory
+     * ("" for the working directory)
+     */
+    static BugzillaStore defaultStore(String dir) {
+        String type = System.getProperty("bugzilla.store", "log");
+        String durability = System.getProperty("bugzilla.durability", "sync");
+
+        BugzillaStore dbStore;
+        if (type.equals("snapshot")) {
+            dbStore = new SnapshotStore(dir + filePath);
+        } else if (type.equals("slots")) {
+            dbStore = new SlotStore(dir + basePath,
+                    Boolean.parseBoolean(System.getProperty("bugzilla.lazyLoad", "true")));
+        } else if (type.equals("mapped")) {
+            dbStore = new MappedSlotStore(dir + basePath,
+                    Boolean.parseBoolean(System.getProperty("bugzilla.lazyLoad", "true")));
+        } else {
+            dbStore = new LogStore(dir + filePath, dir + logPath,
+                    Long.getLong("bugzilla.checkpointSize", 4 * 1024 * 1024),
+                    Long.getLong("bugzilla.checkpointInterval", 0));
+        }
+
+        long interval = Long.getLong("bugzilla.syncInterval", 1000);
+        if (durability.equals("fire")) {
+            dbStore = new AsyncStore(dbStore, AsyncStore.Durability.FIRE_AND_FORGET, interval);
+        } else if (durability.equals("commit")) {
+            dbStore = new AsyncStore(dbStore, AsyncStore.Durability.SYNC_ON_COMMIT, interval);
+        } else if (durability.equals("periodic")) {
+            dbStore = new AsyncStore(dbStore, AsyncStore.Durability.PERIODIC, interval);
+        }
+        return dbStore;
     }
 
     @Ensures({
             "isCopyOf(result) == true"
     })
     public Map<Integer, Bug> getBugList() {
-        return Collections.unmodifiableMap(bugs);
+        return bugs.asMap();
+    }
+
+    @Requires({
+            "st != null"
+    })
+    /*
+     * Returns the bugs that are in the given state, in the order of their IDs.
+     * The bugs come from the index (see BugIndex), the rest of the bugs are
+     * not looked at. A bug may change its state after it was returned.
+     */
+    public List<Bug> bugsInState(Bug.State st) {
+        long started = metrics.start();
+        try {
+            return bugsWithIDs(bugs.index().idsInState(st));
+        } finally {
+            metrics.finished(BugzillaMetrics.Operation.FIND_BUGS, started);
+        }
+    }
+
+    @Requires({
+            "type != null"
+    })
+    /*
+     * Returns the bugs that have the given resolution, in the order of their IDs
+     */
+    public List<Bug> bugsWithResolution(Bug.Resolution type) {
+        long started = metrics.start();
+        try {
+            return bugsWithIDs(bugs.index().idsWithResolution(type));
+        } finally {
+            metrics.finished(BugzillaMetrics.Operation.FIND_BUGS, started);
+        }
+    }
+
+    @Requires({
+            "fromID >= 0",
+            "size > 0"
+    })
+    /*
+     * Returns a page of at most "size" bugs, starting from the bug fromID.
+     * Pass the continuation of the page as fromID to get the next page.
+     */
+    public BugPage listBugs(int fromID, int size) {
+        long started = metrics.start();
+        try {
+            return bugs.page(fromID, Integer.MAX_VALUE, size, null);
+        } finally {
+            metrics.finished(BugzillaMetrics.Operation.LIST_BUGS, started);
+        }
+    }
+
+    @Requires({
+            "fromID >= 0",
+            "toID >= fromID",
+            "size > 0"
+    })
+    /*
+     * Returns a page of the bugs with IDs in [fromID, toID) accepted
+     * by the filter (null accepts all)
+     */
+    public BugPage listBugs(int fromID, int toID, int size, Predicate<Bug> filter) {
+        long started = metrics.start();
+        try {
+            return bugs.page(fromID, toID, size, filter);
+        } finally {
+            metrics.finished(BugzillaMetrics.Operation.LIST_BUGS, started);
+        }
+    }
+
+    @Requires({
+            "st != null",
+            "fromID >= 0",
+            "size > 0"
+    })
+    /*
+     * Returns a page of the bugs in the given state, read from the state index
+     */
+    public BugPage listBugs(Bug.State st, int fromID, int size) {
+        long started = metrics.start();
+        try {
+            // One more ID is the continuation of the page
+            int[] found = bugs.index().idsInState(st, fromID, (size < Integer.MAX_VALUE) ? size + 1 : size);
+            int next = (found.length > size) ? found[size] : BugPage.END;
+            return new BugPage(bugsWithIDs(Arrays.copyOf(found, Math.min(size, found.length))), next);
+        } finally {
+            metrics.finished(BugzillaMetrics.Operation.LIST_BUGS, started);
+        }
+    }
+
+    /*
+     * Returns the bugs in the order of their IDs without copying the table.
+     * Bugs submitted during the walk may or may not be returned.
+     */
+    public Iterator<Bug> bugIterator() {
+        return bugs.iterator(0);
+    }
+
+    public Stream<Bug> streamBugs() {
+        Spliterator<Bug> split = Spliterators.spliterator(bugs.iterator(0), bugs.size(),
+                Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL);
+        return StreamSupport.stream(split, false);
+    }
+
+    @Requires({
+            "query != null",
+            "limit > 0"
+    })
+    /*
+     * Returns at most "limit" bugs whose description or solution contains
+     * words of the query, the best match first (see TextIndex)
+     */
+    public List<Bug> searchBugs(String query, int limit) {
+        long started = metrics.start();
+        try {
+            return bugsWithIDs(textIndex.search(query, limit));
+        } finally {
+            metrics.finished(BugzillaMetrics.Operation.SEARCH_BUGS, started);
+        }
+    }
+
+    private List<Bug> bugsWithIDs(int[] bugIDs) {
+        List<Bug> result = new ArrayList<Bug>(bugIDs.length);
+        for (int id : bugIDs) {
+            Bug bug = bugs.get(id);
+            // A stored bug may turn out to be unreadable (see SlotStore.isComplete)
+            if (bug != null) {
+                result.add(bug);
+            }
+        }
+        return result;
     }
 
     private Pair<String, MemberType> getMember(String passwd, MemberType type) {
@@ -459,71 +1284,171 @@ public class Bugzilla implements Serializable {
     }
 
     private boolean isCopyOf(Map<Integer, Bug> map) {
-        return map.equals(bugs);
+        return map.equals(bugs.asMap());
     }
 
+    /*
+     * Makes the changes done since the last call durable
+     */
     public void saveData() throws BugzillaException {
-        if (fileEnabled) {
-            try {
-                saveDB();
-            } catch (Exception ex) {
-                ex.printStackTrace();
-                throwBex(BugzillaException.ErrorType.DB_SAVE_ERROR);
+        long started = metrics.start();
+        try {
+            if (fileEnabled) {
+                try {
+                    store.commit();
+                } catch (Exception ex) {
+                    ex.printStackTrace();
+                    throwBex(BugzillaException.ErrorType.DB_SAVE_ERROR);
 
+                }
             }
+        } catch (BugzillaException ex) {
+            metrics.failed(ex);
+            throw ex;
+        } finally {
+            metrics.finished(BugzillaMetrics.Operation.SAVE_DATA, started);
         }
     }
 
-    private void saveDB() throws Exception {
-        try {
-            FileOutputStream fileOut =
-                    new FileOutputStream(filePath);
-            ObjectOutputStream out = new ObjectOutputStream(fileOut);
+    /*
+     * Stops the background threads of Bugzilla (the session expiry).
+     * The store is closed by its owner.
+     */
+    public void close() {
+        sessions.close();
+    }
+
+    /*
+     * The sessions of the logged in members. Sessions expire after
+     * "bugzilla.sessionTimeout" milliseconds without use (never by default).
+     */
+    public SessionRegistry getSessions() {
+        return sessions;
+    }
 
-            out.writeObject(members);
-            out.writeObject(bugs);
-            out.writeObject(inProgress);
+    /*
+     * Registers a listener for the changes (see BugzillaEvent).
+     * The events are delivered in batches on a background thread.
+     */
+    public void addListener(BugzillaListener listener) {
+        events.subscribe(listener);
+    }
 
-            out.close();
-            fileOut.close();
+    public void removeListener(BugzillaListener listener) {
+        events.unsubscribe(listener);
+    }
 
-        } catch (Exception ex) {
-            ex.printStackTrace();
-            throw ex;
+    public EventBus getEvents() {
+        return events;
+    }
+
+    /*
+     * The latencies and the errors of the operations and the writes
+     * of the store (see BugzillaMetrics)
+     */
+    public BugzillaMetrics getMetrics() {
+        return metrics;
+    }
 
+    /*
+     * Starts saving the changes done since the last call and returns
+     * a Future that completes when they are saved. Only an AsyncStore
+     * saves in the background, other stores are saved before returning.
+     */
+    public Future<Void> saveDataAsync() throws BugzillaException {
+        if (fileEnabled && store instanceof AsyncStore) {
+            return ((AsyncStore) store).commitAsync();
         }
 
+        saveData();
+        return CompletableFuture.completedFuture(null);
     }
 
+    /*
+     * The following methods report the changes to the store and publish
+     * them to the listeners
+     */
 
-    @SuppressWarnings("unchecked")
-    private void loadDB() throws Exception {
+    private void recordMember(String username, String passwd, MemberType type) {
+        if (fileEnabled) {
+            store.memberRegistered(username, passwd, type);
+        }
+        events.publish(BugzillaEvent.member(BugzillaEvent.Type.MEMBER_REGISTERED, username));
+    }
 
-        try {
-            FileInputStream fileIn = new FileInputStream(filePath);
-            ObjectInputStream in = new ObjectInputStream(fileIn);
+    /*
+     * Reports a bug that was submitted (from == null) or left the state "from".
+     * Called with the lock of the bug, so the events of a bug are queued
+     * in the order of the changes.
+     */
+    private void recordBug(String username, int bugID, Bug.State from) {
+        if (fileEnabled) {
+            store.bugChanged(getBug(bugID));
+        }
+        events.publish(BugzillaEvent.bug(username, getBug(bugID), from));
+    }
 
-            members = (Map<String, Pair<String, MemberType>>) in.readObject();
-            bugs = (Map<Integer, Bug>) in.readObject();
-            inProgress = (Map<String, Integer>) in.readObject();
+    private void recordAssignment(String username) {
+        if (fileEnabled) {
+            if (inProgress.containsKey(username)) {
+                store.developerAssigned(username, inProgress.get(username));
+            } else {
+                store.developerReleased(username);
+            }
+        }
+    }
 
-            in.close();
-            fileIn.close();
+    /*
+     * Locks the stripe of the given bug. The lock orders the changes
+     * of the bug and the reports of the changes to the store.
+     * A member lock is always taken before a bug lock.
+     */
+    private Lock lockBug(int bugID) {
+        Lock lock = bugLocks.forInt(bugID);
+        lock.lock();
+        return lock;
+    }
 
-        } catch (Exception ex) {
-            ex.printStackTrace();
-            throw ex;
-        }
+    /*
+     * Locks the stripe of the given member (used for the inProgress entry of a developer)
+     */
+    private Lock lockMember(String username) {
+        Lock lock = memberLocks.forObject(username);
+        lock.lock();
+        return lock;
+    }
+
+    /*
+     * The tables are exposed to the stores for loading and writing snapshots
+     */
+
+    Map<String, Pair<String, MemberType>> memberTable() {
+        return members;
+    }
+
+    BugStore bugTable() {
+        return bugs;
+    }
+
+    Map<String, Integer> progressTable() {
+        return inProgress;
+    }
+
+    BugIdSequence idSequence() {
+        return ids;
+    }
+
+    TextIndex textIndex() {
+        return textIndex;
     }
 
     private boolean fileExists() {
-        File f = new File(filePath);
-        return (f.exists() && !f.isDirectory());
+        return store.exists();
     }
 
     private boolean dataInitialised() {
         return (members != null &&
-                loggedIn != null &&
+                sessions != null &&
                 bugs != null &&
                 inProgress != null);
     }
@@ -534,11 +1459,24 @@ public class Bugzilla implements Serializable {
 
 
     private Map<String, Pair<String, MemberType>> members;
-    private ArrayList<String> loggedIn;
+    private SessionRegistry sessions;
     private Map<String, Integer> inProgress;
-    private Map<Integer, Bug> bugs;
+    private BugStore bugs;
+    private BugIdSequence ids;
+    private TextIndex textIndex;
+    private final EventBus events = new EventBus();
+    private final BugzillaMetrics metrics = new BugzillaMetrics();
+
+    private final LockStripes bugLocks = new LockStripes(1024);
+    private final LockStripes memberLocks = new LockStripes(256);
 
     private boolean fileEnabled;
+    private BugzillaStore store;
+
+    // Bugs read to train the text dictionary
+    private static final int DICTIONARY_SAMPLE = 10000;
 
     private static final String filePath = "bl.bin";
+    private static final String logPath = "bl.log";
+    private static final String basePath = "bl";
 }
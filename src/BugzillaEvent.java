@@ -0,0 +1,91 @@
+
+/*
+ * A change published by Bugzilla to its listeners (see EventBus).
+ * The bug fields are set only for the bug events: the bug ID, the state
+ * before and after the change and, for BUG_RESOLVED, the resolution.
+ */
+public class BugzillaEvent {
+
+    public enum Type {
+        MEMBER_REGISTERED,
+        LOGIN,
+        LOGOUT,
+        BUG_SUBMITTED,
+        STATE_CHANGED,
+        BUG_RESOLVED
+    }
+
+    static BugzillaEvent member(Type type, String username) {
+        return new BugzillaEvent(type, username, -1, null, null, null);
+    }
+
+    /*
+     * The event of a bug that was submitted (from == null) or changed its state
+     */
+    static BugzillaEvent bug(String username, Bug bug, Bug.State from) {
+        if (from == null) {
+            return new BugzillaEvent(Type.BUG_SUBMITTED, username, bug.getID(), null, bug.getState(), null);
+        }
+        if (bug.getState() == Bug.State.RESOLVED) {
+            return new BugzillaEvent(Type.BUG_RESOLVED, username, bug.getID(), from, bug.getState(),
+                    bug.getSolutionType());
+        }
+        return new BugzillaEvent(Type.STATE_CHANGED, username, bug.getID(), from, bug.getState(), null);
+    }
+
+    private BugzillaEvent(Type eventType, String user, int id, Bug.State from, Bug.State to, Bug.Resolution type) {
+        this.type = eventType;
+        username = user;
+        bugID = id;
+        fromState = from;
+        toState = to;
+        resolution = type;
+        time = System.currentTimeMillis();
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    /*
+     * Returns the ID of the bug, -1 for the member events
+     */
+    public int getBugID() {
+        return bugID;
+    }
+
+    public Bug.State getFromState() {
+        return fromState;
+    }
+
+    public Bug.State getToState() {
+        return toState;
+    }
+
+    public Bug.Resolution getResolution() {
+        return resolution;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public String toString() {
+        if (bugID < 0) {
+            return type + " " + username;
+        }
+        return type + " " + bugID + " " + fromState + "->" + toState + (resolution != null ? " " + resolution : "");
+    }
+
+    private final Type type;
+    private final String username;
+    private final int bugID;
+    private final Bug.State fromState;
+    private final Bug.State toState;
+    private final Bug.Resolution resolution;
+    private final long time;
+}
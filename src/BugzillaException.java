@@ -1,7 +1,14 @@
-import java.util.HashMap;
+import java.util.EnumMap;
+import java.util.Map;
 
 import com.google.java.contract.Invariant;
 
+/*
+ * The messages are set once, in a table indexed by the ErrorType. A failed
+ * call of Bugzilla throws the shared exception of its type (of): it has no
+ * stack trace, so throwing it allocates nothing. Construct a new exception
+ * when the stack trace is needed.
+ */
 @Invariant({
         "true"
 })
@@ -33,11 +40,14 @@ public class BugzillaException extends Exception {
 
         BUG_WAS_NOT_ASSIGNED_TO_DEVELOPER,
         BUG_IS_STILL_ASSIGNED_TO_DEVELOPER,
-        BUG_CANNOT_START_PROGRESS
+        BUG_CANNOT_START_PROGRESS,
+        INVALID_DESCRIPTION,
+        INVALID_SOLUTION
         //...
     }
 
-    private static void addMessage() {
+    private static Map<ErrorType, String> addMessage() {
+        Map<ErrorType, String> msgList = new EnumMap<ErrorType, String>(ErrorType.class);
 
         msgList.put(ErrorType.UNKNOWN_ERROR, "Unknown error");
         msgList.put(ErrorType.DB_LOAD_ERROR, "Error: Failed to load database");
@@ -61,12 +71,16 @@ public class BugzillaException extends Exception {
 
         msgList.put(ErrorType.BUG_CANNOT_START_PROGRESS, "Bug cannot start progress");
         msgList.put(ErrorType.BUG_IS_STILL_ASSIGNED_TO_DEVELOPER, "Bug is still assigned to developer");
+        msgList.put(ErrorType.INVALID_DESCRIPTION, "Error: Bug description is empty");
+        msgList.put(ErrorType.INVALID_SOLUTION, "Error: Solution is empty or the resolution is missing");
+        return msgList;
     }
 
+    /*
+     * Checks that every error type has a message (the table is filled once)
+     */
     public static void init() throws BugzillaException {
 
-        addMessage();
-
         if (!exInitialized()) {
             throw new BugzillaException(ErrorType.ERROR_MISSING_MESSAGE);
         }
@@ -82,6 +96,22 @@ public class BugzillaException extends Exception {
         msg = msgList.get(error);
     }
 
+    /*
+     * Without a stack trace or suppressed exceptions, for the shared instances
+     */
+    protected BugzillaException(ErrorType et, boolean writableStackTrace) {
+        super(null, null, false, writableStackTrace);
+        error = et;
+        msg = msgList.get(error);
+    }
+
+    /*
+     * Returns the shared stackless exception of the type
+     */
+    public static BugzillaException of(ErrorType type) {
+        return SHARED[type.ordinal()];
+    }
+
     public ErrorType getError() {
         return error;
     }
@@ -92,5 +122,13 @@ public class BugzillaException extends Exception {
 
     protected ErrorType error;
     protected String msg;
-    protected static HashMap<ErrorType, String> msgList = new HashMap<ErrorType, String>();
+    protected static final Map<ErrorType, String> msgList = addMessage();
+
+    private static final BugzillaException[] SHARED = new BugzillaException[ErrorType.values().length];
+
+    static {
+        for (ErrorType type : ErrorType.values()) {
+            SHARED[type.ordinal()] = new BugzillaException(type, false);
+        }
+    }
 }
@@ -0,0 +1,11 @@
+import java.util.List;
+
+/*
+ * Receives the events of Bugzilla (see Bugzilla.addListener).
+ * The events come in batches, in the order they were published, on the
+ * delivery thread of the EventBus - not on the thread that made the change.
+ */
+public interface BugzillaListener {
+
+    void eventsPublished(List<BugzillaEvent> events);
+}
@@ -0,0 +1,297 @@
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/*
+ * Latencies and counters of a Bugzilla: a LatencyHistogram for every public
+ * operation (except the views of the table, getBugList, bugIterator and
+ * streamBugs, which return before the bugs are read), the exceptions by BugzillaException.ErrorType (also the items
+ * that failed in batch operations), and the bytes and durations of the
+ * commits and snapshots written by the stores.
+ *
+ * Recording takes a System.nanoTime and a few atomic increments on the
+ * calling thread, nothing is locked or allocated. With the system property
+ * "bugzilla.metrics" set to false nothing is recorded.
+ *
+ * The metrics are read through JMX (register) or as text (dump, startDump).
+ */
+public class BugzillaMetrics implements BugzillaMetricsMXBean {
+
+    public enum Operation {
+        REGISTER,
+        LOGIN,
+        LOGOUT,
+        SUBMIT_BUG,
+        CONFIRM_BUG,
+        INVALIDATE_BUG,
+        START_DEVELOPMENT,
+        STOP_DEVELOPMENT,
+        FIXED_BUG,
+        APPROVE_FIX,
+        REJECT_FIX,
+        SUBMIT_BUGS,
+        CONFIRM_BUGS,
+        INVALIDATE_BUGS,
+        APPROVE_FIXES,
+        REJECT_FIXES,
+        LIST_BUGS,
+        FIND_BUGS,
+        SEARCH_BUGS,
+        SAVE_DATA
+    }
+
+    public BugzillaMetrics() {
+        this(Boolean.parseBoolean(System.getProperty("bugzilla.metrics", "true")));
+    }
+
+    public BugzillaMetrics(boolean on) {
+        enabled = on;
+        latencies = new LatencyHistogram[OPERATIONS.length];
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new LatencyHistogram();
+        }
+    }
+
+    /*
+     * Returns the start time to pass to finished
+     */
+    long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    void finished(Operation op, long started) {
+        if (enabled) {
+            latencies[op.ordinal()].record(System.nanoTime() - started);
+        }
+    }
+
+    void failed(BugzillaException ex) {
+        if (enabled) {
+            errors.incrementAndGet(ex.getError().ordinal());
+        }
+    }
+
+    void failed(BatchResult result) {
+        for (BugzillaException ex : result.getFailures().values()) {
+            failed(ex);
+        }
+    }
+
+    /*
+     * Called by the stores after a commit
+     */
+    void committed(long bytes, long nanos) {
+        if (enabled) {
+            commits.record(nanos);
+            bytesCommitted.addAndGet(bytes);
+        }
+    }
+
+    /*
+     * Called after a snapshot was written (see SnapshotStore.writeSnapshot)
+     */
+    void snapshotWritten(long bytes, long nanos) {
+        if (enabled) {
+            snapshots.record(nanos);
+            snapshotBytes.addAndGet(bytes);
+        }
+    }
+
+    public LatencyHistogram latency(Operation op) {
+        return latencies[op.ordinal()];
+    }
+
+    public long errors(BugzillaException.ErrorType type) {
+        return errors.get(type.ordinal());
+    }
+
+    public Map<String, Long> getCalls() {
+        Map<String, Long> calls = new LinkedHashMap<String, Long>();
+        for (Operation op : OPERATIONS) {
+            calls.put(op.name(), latency(op).count());
+        }
+        return calls;
+    }
+
+    public Map<String, Long> getErrors() {
+        Map<String, Long> counts = new LinkedHashMap<String, Long>();
+        for (BugzillaException.ErrorType type : ERROR_TYPES) {
+            counts.put(type.name(), errors(type));
+        }
+        return counts;
+    }
+
+    public Map<String, Double> getMeanMicros() {
+        Map<String, Double> values = new LinkedHashMap<String, Double>();
+        for (Operation op : OPERATIONS) {
+            values.put(op.name(), latency(op).mean() / 1000);
+        }
+        return values;
+    }
+
+    public Map<String, Double> getP50Micros() {
+        return percentiles(50);
+    }
+
+    public Map<String, Double> getP99Micros() {
+        return percentiles(99);
+    }
+
+    public Map<String, Double> getMaxMicros() {
+        Map<String, Double> values = new LinkedHashMap<String, Double>();
+        for (Operation op : OPERATIONS) {
+            values.put(op.name(), micros(latency(op).max()));
+        }
+        return values;
+    }
+
+    public long getCommits() {
+        return commits.count();
+    }
+
+    public long getBytesCommitted() {
+        return bytesCommitted.get();
+    }
+
+    public double getCommitP99Micros() {
+        return micros(commits.percentile(99));
+    }
+
+    public long getSnapshots() {
+        return snapshots.count();
+    }
+
+    public long getSnapshotBytes() {
+        return snapshotBytes.get();
+    }
+
+    public double getSnapshotP99Micros() {
+        return micros(snapshots.percentile(99));
+    }
+
+    /*
+     * One line for every operation that was called and every error type that
+     * occurred, then the commits and the snapshots
+     */
+    public String dump() {
+        StringBuilder text = new StringBuilder();
+        text.append(String.format("%-18s %10s %10s %10s %10s %10s %10s%n",
+                "operation", "calls", "mean us", "p50 us", "p99 us", "p99.9 us", "max us"));
+        for (Operation op : OPERATIONS) {
+            if (latency(op).count() > 0) {
+                dumpLine(text, op.name(), latency(op));
+            }
+        }
+        if (commits.count() > 0) {
+            dumpLine(text, "commit", commits);
+        }
+        if (snapshots.count() > 0) {
+            dumpLine(text, "snapshot", snapshots);
+        }
+        text.append(String.format("bytes committed %d, snapshot bytes %d%n", getBytesCommitted(), getSnapshotBytes()));
+
+        for (BugzillaException.ErrorType type : ERROR_TYPES) {
+            if (errors(type) > 0) {
+                text.append(String.format("error %s %d%n", type, errors(type)));
+            }
+        }
+        return text.toString();
+    }
+
+    public void reset() {
+        for (LatencyHistogram histogram : latencies) {
+            histogram.clear();
+        }
+        for (int i = 0; i < ERROR_TYPES.length; i++) {
+            errors.set(i, 0);
+        }
+        commits.clear();
+        snapshots.clear();
+        bytesCommitted.set(0);
+        snapshotBytes.set(0);
+    }
+
+    /*
+     * Registers the metrics in the platform MBean server under the given name,
+     * e.g. "bugzilla:type=Metrics"
+     */
+    public void register(String name) throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objectName = new ObjectName(name);
+        if (!server.isRegistered(objectName)) {
+            server.registerMBean(this, objectName);
+        }
+    }
+
+    /*
+     * Prints the dump every "interval" milliseconds on a daemon thread
+     */
+    public synchronized void startDump(final long interval, final PrintStream out) {
+        if (dumper != null) {
+            return;
+        }
+
+        dumper = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    while (true) {
+                        TimeUnit.MILLISECONDS.sleep(interval);
+                        out.print(dump());
+                        out.flush();
+                    }
+                } catch (InterruptedException ex) {
+                    // Stopped
+                }
+            }
+        }, "bugzilla-metrics");
+        dumper.setDaemon(true);
+        dumper.start();
+    }
+
+    public synchronized void stopDump() {
+        if (dumper != null) {
+            dumper.interrupt();
+            dumper = null;
+        }
+    }
+
+    private Map<String, Double> percentiles(double percent) {
+        Map<String, Double> values = new LinkedHashMap<String, Double>();
+        for (Operation op : OPERATIONS) {
+            values.put(op.name(), micros(latency(op).percentile(percent)));
+        }
+        return values;
+    }
+
+    private static void dumpLine(StringBuilder text, String name, LatencyHistogram histogram) {
+        text.append(String.format("%-18s %10d %10.1f %10.1f %10.1f %10.1f %10.1f%n",
+                name, histogram.count(), histogram.mean() / 1000, micros(histogram.percentile(50)),
+                micros(histogram.percentile(99)), micros(histogram.percentile(99.9)),
+                micros(histogram.max())));
+    }
+
+    private static double micros(long nanos) {
+        return nanos / 1000.0;
+    }
+
+    private static final Operation[] OPERATIONS = Operation.values();
+    private static final BugzillaException.ErrorType[] ERROR_TYPES = BugzillaException.ErrorType.values();
+
+    private final boolean enabled;
+    private final LatencyHistogram[] latencies;
+    private final AtomicLongArray errors = new AtomicLongArray(ERROR_TYPES.length);
+    private final LatencyHistogram commits = new LatencyHistogram();
+    private final LatencyHistogram snapshots = new LatencyHistogram();
+    private final AtomicLong bytesCommitted = new AtomicLong();
+    private final AtomicLong snapshotBytes = new AtomicLong();
+
+    private Thread dumper;
+}
@@ -0,0 +1,40 @@
+import java.util.Map;
+
+/*
+ * The metrics of Bugzilla as seen in JMX (jconsole, VisualVM ...).
+ * The maps are keyed by the operation or the error type; the latencies
+ * are in microseconds.
+ */
+public interface BugzillaMetricsMXBean {
+
+    Map<String, Long> getCalls();
+
+    Map<String, Long> getErrors();
+
+    Map<String, Double> getMeanMicros();
+
+    Map<String, Double> getP50Micros();
+
+    Map<String, Double> getP99Micros();
+
+    Map<String, Double> getMaxMicros();
+
+    long getCommits();
+
+    long getBytesCommitted();
+
+    double getCommitP99Micros();
+
+    long getSnapshots();
+
+    long getSnapshotBytes();
+
+    double getSnapshotP99Micros();
+
+    /*
+     * The metrics as text (see BugzillaMetrics.dump)
+     */
+    String dump();
+
+    void reset();
+}
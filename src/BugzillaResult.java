@@ -0,0 +1,67 @@
+/*
+ * The outcome of an operation of the non-throwing API of Bugzilla
+ * (tryConfirmBug ...): OK, or the reason why the operation was refused.
+ * The reason is the shared stackless exception of its type (see
+ * BugzillaException.of), so a refused operation costs no stack trace and
+ * its message is only formatted when asked for.
+ */
+public class BugzillaResult {
+
+    public static final BugzillaResult OK = new BugzillaResult(null, -1);
+
+    BugzillaResult(BugzillaException ex) {
+        this(ex, -1);
+    }
+
+    private BugzillaResult(BugzillaException ex, int id) {
+        failure = ex;
+        bugID = id;
+    }
+
+    static BugzillaResult submitted(int bugID) {
+        return new BugzillaResult(null, bugID);
+    }
+
+    public boolean isOk() {
+        return failure == null;
+    }
+
+    /*
+     * Returns the error type, null for OK
+     */
+    public BugzillaException.ErrorType getError() {
+        return (failure == null) ? null : failure.getError();
+    }
+
+    public String getErrorMsg() {
+        return (failure == null) ? null : failure.getErrorMsg();
+    }
+
+    public BugzillaException getFailure() {
+        return failure;
+    }
+
+    /*
+     * The ID of the bug submitted by trySubmitBug, otherwise -1
+     */
+    public int getBugID() {
+        return bugID;
+    }
+
+    /*
+     * Throws the failure, for callers that want the exception after all
+     */
+    public void check() throws BugzillaException {
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return (failure == null) ? "OK" : failure.getError() + ": " + failure.getErrorMsg();
+    }
+
+    private final BugzillaException failure;
+    private final int bugID;
+}
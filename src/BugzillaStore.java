@@ -0,0 +1,39 @@
+
+/*
+ * Persistence backend of Bugzilla.
+ * Bugzilla reports every change through the callbacks below and calls
+ * commit when the changes have to reach the disk (see Bugzilla.saveData).
+ */
+public interface BugzillaStore {
+
+    /*
+     * Loads the database into the given Bugzilla and binds the store to it.
+     * Throws if the stored data cannot be read.
+     */
+    void open(Bugzilla bz) throws Exception;
+
+    /*
+     * Discards the stored data and starts from the current (empty) state
+     */
+    void reset() throws Exception;
+
+    boolean exists();
+
+    void memberRegistered(String username, String passwd, Bugzilla.MemberType type);
+
+    /*
+     * Called after a bug was submitted or changed its state
+     */
+    void bugChanged(Bug bug);
+
+    void developerAssigned(String username, int bugID);
+
+    void developerReleased(String username);
+
+    void commit() throws Exception;
+
+    /*
+     * Forces the committed changes to the storage device
+     */
+    void sync() throws Exception;
+}
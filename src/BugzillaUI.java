@@ -7,8 +7,11 @@ import javax.swing.JPasswordField;
 import javax.swing.JButton;
 import java.awt.event.ActionListener;
 import java.awt.event.ActionEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import javax.swing.JComboBox;
 import javax.swing.DefaultComboBoxModel;
+import javax.management.JMException;
 
 public class BugzillaUI {
 
@@ -55,9 +58,27 @@ public class BugzillaUI {
             System.exit(0);
         }
 
+        // The metrics are shown in jconsole and printed every
+        // "bugzilla.metricsInterval" milliseconds (never by default)
+        try {
+            bz.getMetrics().register("bugzilla:type=Metrics");
+        } catch (JMException e2) {
+            e2.printStackTrace();
+        }
+        long interval = Long.getLong("bugzilla.metricsInterval", 0);
+        if (interval > 0) {
+            bz.getMetrics().startDump(interval, System.out);
+        }
+
         frame = new JFrame();
         frame.setResizable(false);
         frame.setBounds(100, 100, 418, 176);
+        frame.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                bz.close();
+            }
+        });
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         frame.getContentPane().setLayout(null);
 
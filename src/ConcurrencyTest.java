@@ -0,0 +1,346 @@
+import com.google.java.contract.PreconditionError;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/*
+ * Stress tests of Bugzilla used by many threads at once
+ */
+public class ConcurrencyTest {
+
+    static final int THREADS = 32;
+    static final int OPERATIONS = 5000;
+    static final int BUGS = 256;
+
+    Bugzilla bugzilla;
+    RecordingStore store;
+
+    @Before
+    public void setUp() throws Exception {
+        store = new RecordingStore();
+        bugzilla = new Bugzilla(store);
+
+        for (int t = 0; t < THREADS; t++) {
+            register("user" + t, Bugzilla.MemberType.USER);
+            register("analyst" + t, Bugzilla.MemberType.SYSTEMANALYST);
+            register("developer" + t, Bugzilla.MemberType.DEVELOPER);
+            register("qa" + t, Bugzilla.MemberType.QUALITYASSURANCE);
+        }
+    }
+
+    @Test
+    public void shouldAllocateUniqueBugIDs() throws Exception {
+        run(new Worker() {
+            void work(int t, Random random) throws Exception {
+                for (int i = 0; i < OPERATIONS; i++) {
+                    bugzilla.submitBug("user" + t, "bug " + t + "/" + i);
+                }
+            }
+        });
+
+        Map<Integer, Bug> bugs = bugzilla.getBugList();
+        assertEquals(THREADS * OPERATIONS, bugs.size());
+        for (int id = 0; id < THREADS * OPERATIONS; id++) {
+            assertEquals(id, bugs.get(id).getID());
+        }
+    }
+
+    @Test
+    public void shouldNotGiveOutIDTwiceFromBlocks() throws Exception {
+        final BugIdSequence ids = new BugIdSequence(64);
+        final AtomicIntegerArray taken = new AtomicIntegerArray(THREADS * OPERATIONS + THREADS * 64);
+
+        run(new Worker() {
+            void work(int t, Random random) throws Exception {
+                for (int i = 0; i < OPERATIONS; i++) {
+                    assertEquals(0, taken.getAndIncrement(ids.next()));
+                }
+            }
+        });
+
+        int count = 0;
+        for (int id = 0; id < taken.length(); id++) {
+            count += taken.get(id);
+        }
+        assertEquals(THREADS * OPERATIONS, count);
+        assertTrue(ids.highWaterMark() <= taken.length());
+    }
+
+    @Test
+    public void shouldNotLoseUpdatesOrMakeIllegalTransitions() throws Exception {
+        for (int i = 0; i < BUGS; i++) {
+            bugzilla.submitBug("user0", "bug " + i);
+        }
+
+        final AtomicIntegerArray changes = new AtomicIntegerArray(BUGS);
+        final AtomicInteger starts = new AtomicInteger();
+        final AtomicIntegerArray events = new AtomicIntegerArray(BUGS);
+        bugzilla.addListener(new BugzillaListener() {
+            public void eventsPublished(List<BugzillaEvent> published) {
+                for (BugzillaEvent event : published) {
+                    events.incrementAndGet(event.getBugID());
+                }
+            }
+        });
+
+        run(new Worker() {
+            void work(int t, Random random) throws Exception {
+                String developer = "developer" + t;
+                int assigned = -1;
+
+                for (int i = 0; i < OPERATIONS; i++) {
+                    int bugID = random.nextInt(BUGS);
+                    int op = random.nextInt(6);
+
+                    try {
+                        if (op == 0) {
+                            bugzilla.confirmBug("analyst" + t, bugID);
+                        } else if (op == 1) {
+                            bugzilla.invalidateBug("analyst" + t, bugID, "invalid");
+                        } else if (op == 2 && assigned < 0) {
+                            bugzilla.startDevelopment(developer, bugID);
+                            assigned = bugID;
+                            starts.incrementAndGet();
+                        } else if (op == 2) {
+                            bugID = assigned;
+                            assigned = -1;
+                            bugzilla.fixedBug(developer, bugID, Bug.Resolution.FIXED, "fixed");
+                        } else if (op == 3) {
+                            bugzilla.approveFix("qa" + t, bugID);
+                        } else if (op == 4) {
+                            bugzilla.rejectFix("qa" + t, bugID);
+                        } else if (assigned >= 0) {
+                            bugID = assigned;
+                            assigned = -1;
+                            bugzilla.stopDevelopment(developer, bugID);
+                        } else {
+                            continue;
+                        }
+                        changes.incrementAndGet(bugID);
+                    } catch (BugzillaException ex) {
+                        // rejected transition
+                    } catch (PreconditionError ex) {
+                        // rejected transition
+                    }
+                }
+            }
+        });
+
+        assertTrue(starts.get() > 0);
+        bugzilla.getEvents().flush();
+
+        for (int id = 0; id < BUGS; id++) {
+            List<Bug.State> history = store.history(id);
+
+            assertEquals("changes of bug " + id, changes.get(id) + 1, history.size());
+            assertEquals("events of bug " + id, changes.get(id), events.get(id));
+            assertEquals(Bug.State.UNCONFIRMED, history.get(0));
+            for (int i = 1; i < history.size(); i++) {
+                assertTrue("bug " + id + ": " + history.get(i - 1) + " -> " + history.get(i),
+                        isLegal(history.get(i - 1), history.get(i)));
+            }
+            assertEquals(history.get(history.size() - 1), bugzilla.getBugList().get(id).getState());
+        }
+
+        for (Bug.State st : Bug.State.values()) {
+            int count = 0;
+            for (Bug bug : bugzilla.getBugList().values()) {
+                count += (bug.getState() == st) ? 1 : 0;
+            }
+            assertEquals("bugs in " + st, count, bugzilla.bugsInState(st).size());
+            for (Bug bug : bugzilla.bugsInState(st)) {
+                assertEquals(st, bug.getState());
+            }
+        }
+    }
+
+    @Test
+    public void shouldKeepTransitionsMadeDuringSlotCommits() throws Exception {
+        File dir = Files.createTempDirectory("bugzilla").toFile();
+        String base = new File(dir, "bl").getPath();
+        bugzilla = new Bugzilla(new SlotStore(base));
+        for (int t = 0; t < THREADS; t++) {
+            register("user" + t, Bugzilla.MemberType.USER);
+            register("analyst" + t, Bugzilla.MemberType.SYSTEMANALYST);
+            register("developer" + t, Bugzilla.MemberType.DEVELOPER);
+        }
+        for (int i = 0; i < BUGS; i++) {
+            bugzilla.submitBug("user0", "bug " + i);
+        }
+        bugzilla.saveData();
+
+        final AtomicInteger working = new AtomicInteger(THREADS - 1);
+        run(new Worker() {
+            void work(int t, Random random) throws Exception {
+                // One thread commits while the others change the bugs
+                if (t == 0) {
+                    while (working.get() > 0) {
+                        bugzilla.saveData();
+                    }
+                    return;
+                }
+
+                String developer = "developer" + t;
+                for (int i = 0; i < OPERATIONS / 10; i++) {
+                    int bugID = random.nextInt(BUGS);
+                    try {
+                        if (random.nextBoolean()) {
+                            bugzilla.confirmBug("analyst" + t, bugID);
+                        } else if (random.nextBoolean()) {
+                            bugzilla.invalidateBug("analyst" + t, bugID, "invalid " + i);
+                        } else {
+                            bugzilla.startDevelopment(developer, bugID);
+                            bugzilla.fixedBug(developer, bugID, Bug.Resolution.FIXED, "fixed " + i);
+                        }
+                    } catch (BugzillaException ex) {
+                        // rejected transition
+                    } catch (PreconditionError ex) {
+                        // rejected transition
+                    }
+                }
+                working.decrementAndGet();
+            }
+        });
+        bugzilla.saveData();
+
+        Bugzilla reopened = new Bugzilla(new SlotStore(base, false));
+        for (int id = 0; id < BUGS; id++) {
+            Bug expected = bugzilla.getBugList().get(id);
+            Bug actual = reopened.getBugList().get(id);
+            assertEquals("state of bug " + id, expected.getState(), actual.getState());
+            assertEquals("solution of bug " + id, expected.getSolutionType(), actual.getSolutionType());
+            assertEquals("solution of bug " + id, expected.getSolutionInfo(), actual.getSolutionInfo());
+        }
+
+        for (File f : dir.listFiles()) {
+            f.delete();
+        }
+        dir.delete();
+    }
+
+    private static boolean isLegal(Bug.State from, Bug.State to) {
+        switch (from) {
+            case UNCONFIRMED:
+                return to == Bug.State.CONFIRMED || to == Bug.State.RESOLVED;
+            case CONFIRMED:
+                return to == Bug.State.INPROGRESS;
+            case INPROGRESS:
+                return to == Bug.State.CONFIRMED || to == Bug.State.RESOLVED;
+            case RESOLVED:
+                return to == Bug.State.CONFIRMED || to == Bug.State.VERIFIED;
+            default:
+                return false;
+        }
+    }
+
+    private void register(String username, Bugzilla.MemberType type) throws BugzillaException {
+        bugzilla.register(username, "pass", type);
+        bugzilla.login(username, "pass");
+    }
+
+    /*
+     * Runs the worker on THREADS threads started at the same time
+     */
+    private void run(final Worker worker) throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        List<Thread> threads = new ArrayList<Thread>();
+
+        for (int t = 0; t < THREADS; t++) {
+            final int index = t;
+            Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        start.await();
+                        worker.work(index, new Random(index));
+                    } catch (Throwable ex) {
+                        failure.compareAndSet(null, ex);
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        if (failure.get() != null) {
+            failure.get().printStackTrace();
+        }
+        assertNull(failure.get());
+    }
+
+    private abstract static class Worker {
+        abstract void work(int t, Random random) throws Exception;
+    }
+
+    /*
+     * Store that keeps the sequence of states reported for every bug
+     */
+    static class RecordingStore implements BugzillaStore {
+
+        public void open(Bugzilla bz) {
+        }
+
+        public void reset() {
+        }
+
+        public boolean exists() {
+            return true;
+        }
+
+        public void memberRegistered(String username, String passwd, Bugzilla.MemberType type) {
+        }
+
+        public synchronized void bugChanged(Bug bug) {
+            List<Bug.State> history = states.get(bug.getID());
+            if (history == null) {
+                history = new ArrayList<Bug.State>();
+                states.put(bug.getID(), history);
+            }
+            history.add(bug.getState());
+        }
+
+        public void developerAssigned(String username, int bugID) {
+        }
+
+        public void developerReleased(String username) {
+        }
+
+        public synchronized void commit() {
+            commits++;
+        }
+
+        public void sync() {
+        }
+
+        synchronized List<Bug.State> history(int bugID) {
+            return states.get(bugID);
+        }
+
+        synchronized int commits() {
+            return commits;
+        }
+
+        private final Map<Integer, List<Bug.State>> states = new HashMap<Integer, List<Bug.State>>();
+        private int commits;
+    }
+}
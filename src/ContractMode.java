@@ -0,0 +1,66 @@
+import java.util.Random;
+
+import com.google.java.contract.ContractEnvironment;
+
+/*
+ * Chooses which cofoja contracts the agent weaves into the classes, with
+ * the system property "bugzilla.contracts":
+ *   full          - preconditions, postconditions and invariants (default)
+ *   preconditions - only the preconditions
+ *   off           - nothing, as if running without the agent
+ *   sampled       - one JVM in "bugzilla.contractSample" (100 by default)
+ *                   runs with full contracts, the others with none
+ *
+ * The agent calls configure when it starts (it finds the method by its
+ * name, like a ContractEnvironmentConfigurator; the interface itself
+ * cannot be implemented under the contract annotation processor):
+ *   java -javaagent:lib/cofoja.asm-1.2-20140817.jar
+ *        -Dcom.google.java.contract.configurator=ContractMode
+ *        -Dbugzilla.contracts=preconditions ...
+ *
+ * cofoja decides when a class is loaded whether its contracts are woven in,
+ * so a contract cannot be checked on some calls only; sampled mode picks
+ * the JVMs instead. Without the contracts the method bodies still refuse a
+ * call that breaks a precondition, with a BugzillaException (see
+ * Bugzilla.checkMember and Bug.canSetState).
+ */
+public class ContractMode {
+
+    public enum Mode {
+        FULL,
+        PRECONDITIONS,
+        OFF,
+        SAMPLED
+    }
+
+    public void configure(ContractEnvironment env) {
+        Mode mode = effectiveMode(mode(), Integer.getInteger("bugzilla.contractSample", 100), new Random());
+
+        for (String name : CONTRACT_CLASSES) {
+            if (mode != Mode.FULL) {
+                env.disablePostconditions(name);
+                env.disableInvariants(name);
+            }
+            if (mode == Mode.OFF) {
+                env.disablePreconditions(name);
+            }
+        }
+    }
+
+    public static Mode mode() {
+        return Mode.valueOf(System.getProperty("bugzilla.contracts", "full").toUpperCase());
+    }
+
+    /*
+     * Returns the mode this JVM runs with: FULL or OFF for SAMPLED
+     */
+    static Mode effectiveMode(Mode mode, int sample, Random random) {
+        if (mode != Mode.SAMPLED) {
+            return mode;
+        }
+        return (sample <= 1 || random.nextInt(sample) == 0) ? Mode.FULL : Mode.OFF;
+    }
+
+    // The classes with contracts
+    private static final String[] CONTRACT_CLASSES = {"Bug", "Bugzilla", "BugzillaException"};
+}
@@ -0,0 +1,128 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * Delivers the events of Bugzilla to the listeners.
+ * Publishing adds the event to a lock-free queue and returns; a delivery
+ * thread ("bugzilla-events") takes all the waiting events (at most
+ * MAX_BATCH) and hands them to every listener in one call. Without
+ * listeners nothing is queued and the thread is not started.
+ *
+ * A listener that throws does not stop the delivery to the others.
+ * An Error stops the delivery thread; the batch it was delivering counts
+ * as delivered and flush no longer waits.
+ */
+public class EventBus {
+
+    public void subscribe(BugzillaListener listener) {
+        listeners.add(listener);
+        start();
+    }
+
+    public void unsubscribe(BugzillaListener listener) {
+        listeners.remove(listener);
+    }
+
+    public void publish(BugzillaEvent event) {
+        if (listeners.isEmpty()) {
+            return;
+        }
+
+        queue.offer(event);
+        published.incrementAndGet();
+
+        // The thread checks the queue again after it says it is idle,
+        // so an event is never left in the queue while it sleeps
+        if (idle) {
+            LockSupport.unpark(deliverer);
+        }
+    }
+
+    /*
+     * Waits until the events published before the call are delivered.
+     * Throws IllegalStateException if the delivery thread stopped.
+     */
+    public void flush() throws InterruptedException {
+        long target = published.get();
+        while (delivered.get() < target) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            Thread thread = deliverer;
+            if (thread != null && !thread.isAlive() && delivered.get() < target) {
+                throw new IllegalStateException("The delivery thread stopped");
+            }
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+
+    public long deliveredCount() {
+        return delivered.get();
+    }
+
+    private synchronized void start() {
+        if (deliverer != null) {
+            return;
+        }
+
+        deliverer = new Thread(new Runnable() {
+            public void run() {
+                deliverLoop();
+            }
+        }, "bugzilla-events");
+        deliverer.setDaemon(true);
+        deliverer.start();
+    }
+
+    private void deliverLoop() {
+        List<BugzillaEvent> batch = new ArrayList<BugzillaEvent>();
+
+        while (true) {
+            BugzillaEvent event;
+            while (batch.size() < MAX_BATCH && (event = queue.poll()) != null) {
+                batch.add(event);
+            }
+
+            if (batch.isEmpty()) {
+                idle = true;
+                if (queue.isEmpty()) {
+                    LockSupport.parkNanos(IDLE_NANOS);
+                }
+                idle = false;
+                continue;
+            }
+
+            List<BugzillaEvent> events = Collections.unmodifiableList(new ArrayList<BugzillaEvent>(batch));
+            try {
+                for (BugzillaListener listener : listeners) {
+                    try {
+                        listener.eventsPublished(events);
+                    } catch (RuntimeException ex) {
+                        ex.printStackTrace();
+                    }
+                }
+            } finally {
+                delivered.addAndGet(batch.size());
+                batch.clear();
+            }
+        }
+    }
+
+    static final int MAX_BATCH = 1024;
+    private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final Queue<BugzillaEvent> queue = new ConcurrentLinkedQueue<BugzillaEvent>();
+    private final List<BugzillaListener> listeners = new CopyOnWriteArrayList<BugzillaListener>();
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+
+    private volatile Thread deliverer;
+    private volatile boolean idle;
+}
@@ -0,0 +1,144 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Histogram of latencies in nanoseconds that many threads can record into
+ * without locking. The values are counted in log-linear buckets: every power
+ * of two is split into SUB_BUCKETS buckets, so a percentile is at most
+ * 1/SUB_BUCKETS (about 3%) above the recorded value, for any value from one
+ * nanosecond to hours, in a fixed table of BUCKETS counters.
+ *
+ * The counters and the total are LongAdders, which spread the updates of
+ * many threads over cells instead of one contended cache line. A bucket's
+ * counter is created the first time a value falls into it. The maximum is
+ * read before it is replaced, so it is only written while it grows.
+ */
+public class LatencyHistogram {
+
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counter(bucket(value)).increment();
+        total.add(value);
+
+        long current;
+        while (value > (current = max.get())) {
+            if (max.compareAndSet(current, value)) {
+                break;
+            }
+        }
+    }
+
+    /*
+     * Counted from the buckets, so recording touches one counter less
+     */
+    public long count() {
+        long n = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            n += count(i);
+        }
+        return n;
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    public double mean() {
+        long n = count();
+        return (n == 0) ? 0 : (double) total.sum() / n;
+    }
+
+    /*
+     * Returns the value (the upper bound of its bucket) below which the given
+     * percentage of the recorded values lie, 0 if nothing was recorded
+     */
+    public long percentile(double percent) {
+        long n = count();
+        if (n == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(n * percent / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += count(i);
+            if (seen >= rank) {
+                return Math.min(upperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /*
+     * Adds the values of the other histogram to this one
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            long c = other.count(i);
+            if (c != 0) {
+                counter(i).add(c);
+            }
+        }
+        total.add(other.total.sum());
+
+        long value = other.max.get();
+        long current;
+        while (value > (current = max.get())) {
+            if (max.compareAndSet(current, value)) {
+                break;
+            }
+        }
+    }
+
+    public void clear() {
+        for (int i = 0; i < BUCKETS; i++) {
+            LongAdder counter = counts.get(i);
+            if (counter != null) {
+                counter.reset();
+            }
+        }
+        total.reset();
+        max.set(0);
+    }
+
+    private long count(int bucket) {
+        LongAdder counter = counts.get(bucket);
+        return (counter == null) ? 0 : counter.sum();
+    }
+
+    private LongAdder counter(int bucket) {
+        LongAdder counter = counts.get(bucket);
+        if (counter == null) {
+            counts.compareAndSet(bucket, null, new LongAdder());
+            counter = counts.get(bucket);
+        }
+        return counter;
+    }
+
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lower + (1L << shift) - 1;
+    }
+
+    private static final int SUB_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+    private final AtomicReferenceArray<LongAdder> counts = new AtomicReferenceArray<LongAdder>(BUCKETS);
+    private final LongAdder total = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+}
@@ -0,0 +1,38 @@
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ * A fixed set of locks shared by many keys. Keys that map to different
+ * stripes never wait for each other. Consecutive int keys (bug IDs) always
+ * map to different stripes.
+ */
+public class LockStripes {
+
+    /*
+     * The number of stripes is rounded up to a power of two
+     */
+    public LockStripes(int stripes) {
+        int size = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        locks = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        mask = size - 1;
+    }
+
+    public Lock forInt(int key) {
+        return locks[key & mask];
+    }
+
+    public Lock forObject(Object key) {
+        int h = key.hashCode();
+        return locks[(h ^ (h >>> 16)) & mask];
+    }
+
+    public int size() {
+        return locks.length;
+    }
+
+    private final ReentrantLock[] locks;
+    private final int mask;
+}
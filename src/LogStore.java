@@ -0,0 +1,465 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.apache.commons.lang3.tuple.ImmutablePair;
+
+/*
+ * The store keeps the last snapshot of the database and an append-only log
+ * of the changes made after it. A commit only appends the pending change
+ * records to the log, so its cost depends on the size of the change and not
+ * on the size of the database. Loading reads the snapshot and replays the log.
+ *
+ * Every record carries the complete new value (whole bug, whole member,
+ * assignment, bug ID high-water mark), so replaying a record twice gives
+ * the same result.
+ * When the log grows over the checkpoint size (and, if a checkpoint interval
+ * is given, every interval once the log has MIN_CHECKPOINT_SIZE bytes) a
+ * background thread writes a new snapshot:
+ *   1. the log is closed and renamed to the next segment ("bl.log.1",
+ *      "bl.log.2", ...) and an empty log is opened, under the store lock;
+ *   2. the snapshot is written from the live tables while the commits
+ *      go on to the new log;
+ *   3. the segments up to the renamed one are deleted.
+ * The snapshot of step 2 may already hold some changes of the new log, and
+ * the new log holds every change the snapshot may have missed, so the
+ * snapshot followed by the new log gives the current state. Loading replays
+ * the segments left by an interrupted checkpoint in order and then the log,
+ * so it reads the snapshot and at most about two checkpoint sizes of log.
+ *
+ * Bugzilla reports a change of a bug while it holds the lock of the bug,
+ * so the records of one bug are logged in the order of the changes.
+ */
+public class LogStore implements BugzillaStore {
+
+    public LogStore(String snapshot, String log) {
+        this(snapshot, log, CHECKPOINT_SIZE, 0);
+    }
+
+    /*
+     * checkpointSize - log size in bytes that starts a checkpoint
+     * checkpointInterval - milliseconds between the timed checkpoints, 0 for none
+     */
+    public LogStore(String snapshot, String log, long checkpointSize, long checkpointInterval) {
+        snapshotPath = snapshot;
+        logPath = log;
+        this.checkpointSize = checkpointSize;
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    public void open(Bugzilla b) throws Exception {
+        bz = b;
+
+        if (SnapshotStore.fileExists(snapshotPath)) {
+            SnapshotStore.readSnapshot(bz, snapshotPath);
+        }
+
+        List<Integer> segments = segments();
+        for (int segment : segments) {
+            replay(segmentPath(segment));
+            lastSegment = segment;
+        }
+        long validLength = replay(logPath);
+        openLog(validLength);
+        loggedMark = bz.idSequence().highWaterMark();
+
+        if (checkpointInterval > 0) {
+            startCheckpointer();
+        }
+    }
+
+    public void reset() throws Exception {
+        synchronized (checkpointLock) {
+            synchronized (this) {
+                closeLog();
+                SnapshotStore.deleteFile(logPath);
+                deleteSegments(lastSegment);
+                SnapshotStore.deleteFile(snapshotPath);
+                SnapshotStore.writeSnapshot(bz, snapshotPath);
+                pending.reset();
+                openLog(0);
+                loggedMark = bz.idSequence().highWaterMark();
+            }
+        }
+    }
+
+    public boolean exists() {
+        return SnapshotStore.fileExists(snapshotPath);
+    }
+
+    public synchronized void memberRegistered(String username, String passwd, Bugzilla.MemberType type) {
+        try {
+            record.writeByte(OP_REGISTER);
+            SnapshotWriter.writeString(record, username);
+            SnapshotWriter.writeString(record, passwd);
+            record.writeByte(type.ordinal());
+            endRecord();
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    public synchronized void bugChanged(Bug bug) {
+        try {
+            record.writeByte(OP_BUG);
+            SnapshotWriter.writeBug(record, bug);
+            endRecord();
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    public synchronized void developerAssigned(String username, int bugID) {
+        try {
+            record.writeByte(OP_ASSIGN);
+            SnapshotWriter.writeString(record, username);
+            record.writeInt(bugID);
+            endRecord();
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    public synchronized void developerReleased(String username) {
+        try {
+            record.writeByte(OP_RELEASE);
+            SnapshotWriter.writeString(record, username);
+            endRecord();
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    public synchronized void commit() throws Exception {
+        long started = System.nanoTime();
+        long sizeBefore = logSize;
+
+        // The high-water mark goes before the bugs that took the IDs
+        int mark = bz.idSequence().highWaterMark();
+        if (mark != loggedMark) {
+            ByteArrayOutputStream sequence = new ByteArrayOutputStream();
+            record.writeByte(OP_SEQUENCE);
+            record.writeInt(mark);
+            endRecord(sequence);
+            sequence.writeTo(logOut);
+            logSize += sequence.size();
+            loggedMark = mark;
+        }
+
+        if (pending.size() > 0) {
+            pending.writeTo(logOut);
+            logOut.flush();
+            logSize += pending.size();
+            pending.reset();
+        }
+        bz.getMetrics().committed(logSize - sizeBefore, System.nanoTime() - started);
+
+        if (logSize > checkpointSize && !checkpointRequested) {
+            requestCheckpoint();
+        }
+    }
+
+    public synchronized void sync() throws Exception {
+        logOut.getChannel().force(true);
+    }
+
+    /*
+     * Moves the log to a new segment, writes a new snapshot and deletes the
+     * segments it covers. Only the first step blocks the commits.
+     * If the process stops before the last step, the segments are replayed
+     * on top of the new snapshot, which is harmless.
+     */
+    public void checkpoint() throws Exception {
+        synchronized (checkpointLock) {
+            int segment = rotate();
+            SnapshotStore.writeSnapshot(bz, snapshotPath);
+            deleteSegments(segment);
+            checkpoints++;
+        }
+    }
+
+    /*
+     * Stops the checkpoint thread, after the checkpoint it was asked for
+     */
+    public void close() throws InterruptedException {
+        Thread thread;
+        synchronized (this) {
+            stopped = true;
+            thread = checkpointer;
+            notifyAll();
+        }
+        if (thread != null) {
+            thread.join();
+        }
+    }
+
+    public synchronized long logSize() {
+        return logSize;
+    }
+
+    /*
+     * Returns the number of completed checkpoints
+     */
+    public long checkpoints() {
+        return checkpoints;
+    }
+
+    private synchronized void requestCheckpoint() {
+        if (stopped) {
+            return;
+        }
+        checkpointRequested = true;
+        startCheckpointer();
+        notifyAll();
+    }
+
+    private synchronized void startCheckpointer() {
+        if (checkpointer != null || stopped) {
+            return;
+        }
+
+        checkpointer = new Thread(new Runnable() {
+            public void run() {
+                checkpointLoop();
+            }
+        }, "bugzilla-checkpoint");
+        checkpointer.setDaemon(true);
+        checkpointer.start();
+    }
+
+    private void checkpointLoop() {
+        while (true) {
+            synchronized (this) {
+                try {
+                    if (!checkpointRequested && !stopped) {
+                        // An interval of 0 waits for a request
+                        wait(checkpointInterval);
+                    }
+                } catch (InterruptedException ex) {
+                    return;
+                }
+                if (stopped && !checkpointRequested) {
+                    return;
+                }
+                if (!checkpointRequested && logSize < MIN_CHECKPOINT_SIZE) {
+                    continue;
+                }
+                checkpointRequested = false;
+            }
+
+            try {
+                checkpoint();
+            } catch (Exception ex) {
+                ex.printStackTrace();
+            }
+        }
+    }
+
+    /*
+     * Renames the log to the next segment and opens an empty log.
+     * Returns the number of the segment.
+     */
+    private synchronized int rotate() throws Exception {
+        // The commits in the segment are not synced by sync() any more
+        logOut.getChannel().force(true);
+        closeLog();
+
+        lastSegment++;
+        SnapshotStore.replaceFile(new File(logPath), new File(segmentPath(lastSegment)));
+        openLog(0);
+        return lastSegment;
+    }
+
+    private void deleteSegments(int last) throws Exception {
+        for (int segment : segments()) {
+            if (segment <= last) {
+                SnapshotStore.deleteFile(segmentPath(segment));
+            }
+        }
+    }
+
+    /*
+     * The numbers of the segments on the disk, in ascending order
+     */
+    private List<Integer> segments() {
+        File log = new File(logPath).getAbsoluteFile();
+        String prefix = log.getName() + ".";
+        List<Integer> segments = new ArrayList<Integer>();
+
+        String[] names = log.getParentFile().list();
+        if (names == null) {
+            return segments;
+        }
+        for (String name : names) {
+            String suffix = name.substring(Math.min(prefix.length(), name.length()));
+            if (name.startsWith(prefix) && suffix.matches("[0-9]{1,9}")) {
+                segments.add(Integer.parseInt(suffix));
+            }
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+
+    private String segmentPath(int segment) {
+        return logPath + "." + segment;
+    }
+
+    /*
+     * Applies the records of a log file to the loaded snapshot. Reading stops
+     * at the first incomplete or corrupted record (a write interrupted by a
+     * crash). Returns the length of the valid part of the file.
+     */
+    private long replay(String path) throws Exception {
+        if (!SnapshotStore.fileExists(path)) {
+            return 0;
+        }
+
+        long validLength = 0;
+        long fileLength = new File(path).length();
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(path)));
+
+        try {
+            while (true) {
+                int length;
+                byte[] payload;
+                int crc;
+
+                try {
+                    length = in.readInt();
+                    // A corrupted length is not trusted with the allocation
+                    if (length <= 0 || length > fileLength - validLength - 8) {
+                        break;
+                    }
+                    payload = new byte[length];
+                    in.readFully(payload);
+                    crc = in.readInt();
+                } catch (EOFException ex) {
+                    break;
+                }
+
+                if (crc != checksum(payload, 0, length)) {
+                    break;
+                }
+
+                apply(new DataInputStream(new ByteArrayInputStream(payload)));
+                validLength += length + 8;
+            }
+        } finally {
+            in.close();
+        }
+
+        return validLength;
+    }
+
+    private void apply(DataInputStream in) throws IOException {
+        int op = in.readByte();
+
+        if (op == OP_REGISTER) {
+            String username = SnapshotReader.readString(in);
+            String passwd = SnapshotReader.readString(in);
+            Bugzilla.MemberType type = SnapshotReader.readMemberType(in);
+            bz.memberTable().put(username, new ImmutablePair<String, Bugzilla.MemberType>(passwd, type));
+        } else if (op == OP_BUG) {
+            Bug bug = SnapshotReader.readBug(in);
+            bz.bugTable().put(bug);
+        } else if (op == OP_ASSIGN) {
+            String username = SnapshotReader.readString(in);
+            bz.progressTable().put(username, in.readInt());
+        } else if (op == OP_RELEASE) {
+            bz.progressTable().remove(SnapshotReader.readString(in));
+        } else if (op == OP_SEQUENCE) {
+            bz.idSequence().advanceTo(in.readInt());
+        } else {
+            throw new IOException("Unknown log record " + op);
+        }
+    }
+
+    private void openLog(long validLength) throws IOException {
+        if (SnapshotStore.fileExists(logPath)) {
+            RandomAccessFile f = new RandomAccessFile(logPath, "rw");
+            try {
+                f.setLength(validLength);
+            } finally {
+                f.close();
+            }
+        }
+
+        logOut = new FileOutputStream(logPath, true);
+        logSize = validLength;
+    }
+
+    private void closeLog() throws IOException {
+        if (logOut != null) {
+            logOut.close();
+            logOut = null;
+        }
+    }
+
+    /*
+     * Frames the record collected in "current" as
+     * [payload length][payload][CRC32 of payload] and adds it to the pending changes
+     */
+    private void endRecord() throws IOException {
+        endRecord(pending);
+    }
+
+    private void endRecord(ByteArrayOutputStream target) throws IOException {
+        byte[] payload = current.toByteArray();
+        current.reset();
+
+        DataOutputStream out = new DataOutputStream(target);
+        out.writeInt(payload.length);
+        out.write(payload);
+        out.writeInt(checksum(payload, 0, payload.length));
+    }
+
+    static int checksum(byte[] data, int off, int len) {
+        CRC32 crc = new CRC32();
+        crc.update(data, off, len);
+        return (int) crc.getValue();
+    }
+
+    private static final int OP_REGISTER = 1;
+    private static final int OP_BUG = 2;
+    private static final int OP_ASSIGN = 3;
+    private static final int OP_RELEASE = 4;
+    private static final int OP_SEQUENCE = 5;
+
+    private static final long CHECKPOINT_SIZE = 4 * 1024 * 1024;
+    // A timed checkpoint is skipped while the log is smaller
+    private static final long MIN_CHECKPOINT_SIZE = 64 * 1024;
+
+    private Bugzilla bz;
+    private FileOutputStream logOut;
+    private long logSize;
+    private int loggedMark;
+    private int lastSegment;
+
+    private Thread checkpointer;
+    private boolean checkpointRequested;
+    private boolean stopped;
+    private volatile long checkpoints;
+    // Held for a whole checkpoint, before the store lock
+    private final Object checkpointLock = new Object();
+    private final long checkpointSize;
+    private final long checkpointInterval;
+
+    private final ByteArrayOutputStream current = new ByteArrayOutputStream();
+    private final DataOutputStream record = new DataOutputStream(current);
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+
+    private final String snapshotPath;
+    private final String logPath;
+}
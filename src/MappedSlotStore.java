@@ -0,0 +1,115 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/*
+ * The slot store (see SlotStore) with the slot file mapped into memory in
+ * regions of REGION_SIZE bytes. Reading a slot copies it from the page
+ * cache without a system call, and a state transition is a write of two
+ * bytes into the mapping; sync forces the mapped regions to the disk.
+ * The texts stay in the text file.
+ *
+ * A region is mapped the first time a slot in it is used, mapping it
+ * extends the file to the end of the region. The header keeps the end of
+ * the slots, so SlotStore reads the files of this store and the other way
+ * round. A slot never crosses the end of a region.
+ */
+public class MappedSlotStore extends SlotStore {
+
+    public MappedSlotStore(String basePath) {
+        this(basePath, true);
+    }
+
+    public MappedSlotStore(String basePath, boolean lazy) {
+        super(basePath, lazy);
+    }
+
+    void putSlots(ByteBuffer buf, long pos) throws IOException {
+        while (buf.hasRemaining()) {
+            int offset = (int) (pos & REGION_MASK);
+            int length = Math.min(buf.remaining(), REGION_SIZE - offset);
+
+            ByteBuffer part = buf.duplicate();
+            part.limit(part.position() + length);
+            ByteBuffer region = region(pos, true).duplicate();
+            region.position(offset);
+            region.put(part);
+
+            buf.position(buf.position() + length);
+            pos += length;
+        }
+    }
+
+    boolean getSlots(ByteBuffer buf, long pos) throws IOException {
+        while (buf.hasRemaining()) {
+            MappedByteBuffer mapped = region(pos, false);
+            if (mapped == null) {
+                return false;
+            }
+            int offset = (int) (pos & REGION_MASK);
+            int length = Math.min(buf.remaining(), REGION_SIZE - offset);
+
+            ByteBuffer region = mapped.duplicate();
+            region.position(offset);
+            region.limit(offset + length);
+            buf.put(region);
+            pos += length;
+        }
+        return true;
+    }
+
+    void forceSlots() throws IOException {
+        for (MappedByteBuffer region : regions) {
+            if (region != null) {
+                region.force();
+            }
+        }
+    }
+
+    void slotsClosed() {
+        // The mappings are released by the garbage collector
+        regions = new MappedByteBuffer[0];
+    }
+
+    /*
+     * Returns the region holding the byte at pos, or null if a read
+     * is past the end of the file
+     */
+    private MappedByteBuffer region(long pos, boolean write) throws IOException {
+        int index = (int) (pos >>> REGION_BITS);
+        MappedByteBuffer[] mapped = regions;
+        if (index < mapped.length && mapped[index] != null) {
+            return mapped[index];
+        }
+        return map(index, write);
+    }
+
+    private synchronized MappedByteBuffer map(int index, boolean write) throws IOException {
+        MappedByteBuffer[] mapped = regions;
+        if (index < mapped.length && mapped[index] != null) {
+            return mapped[index];
+        }
+
+        FileChannel channel = slotChannel();
+        long start = (long) index << REGION_BITS;
+        if (!write && start >= channel.size()) {
+            return null;
+        }
+
+        if (index >= mapped.length) {
+            mapped = Arrays.copyOf(mapped, Math.max(index + 1, 2 * mapped.length));
+        }
+        mapped[index] = channel.map(FileChannel.MapMode.READ_WRITE, start, REGION_SIZE);
+        // Publishes the new region to the readers
+        regions = mapped;
+        return mapped[index];
+    }
+
+    static final int REGION_BITS = 22;
+    static final int REGION_SIZE = 1 << REGION_BITS;
+    private static final long REGION_MASK = REGION_SIZE - 1;
+
+    private volatile MappedByteBuffer[] regions = new MappedByteBuffer[0];
+}
@@ -4,9 +4,12 @@ import javax.swing.JOptionPane;
 import javax.swing.JScrollPane;
 import javax.swing.JLabel;
 import javax.swing.ListSelectionModel;
+import javax.swing.SwingUtilities;
 import javax.swing.JComboBox;
 import javax.swing.JButton;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 import javax.swing.DefaultComboBoxModel;
@@ -35,6 +38,7 @@ public class MemberUI {
     private JFrame frame;
     private JComboBox<ActionType> comboBox;
     private JList<Object> list;
+    private BugListModel model;
     private JComboBox<Bug.Resolution> comboBoxType;
 
     private JTextArea textDescription;
@@ -46,6 +50,7 @@ public class MemberUI {
     private Map<Integer, Bug> bugs;
     private int bugID;
     private JFrame login;
+    private BugzillaListener listener;
 
     /**
      * Create the application.
@@ -76,6 +81,7 @@ public class MemberUI {
             @Override
             public void windowClosed(WindowEvent e) {
                 try {
+                    bz.removeListener(listener);
                     bz.logout(username);
                     login.setVisible(true);
                 } catch (BugzillaException e1) {
@@ -92,27 +98,38 @@ public class MemberUI {
         frame.getContentPane().setLayout(null);
 
 
-        list = new JList<Object>();
+        bugs = bz.getBugList();
+        model = new BugListModel(bz);
+
+        list = new JList<Object>(model);
+
+        // The changes made in other windows come from the event bus
+        listener = new BugzillaListener() {
+            public void eventsPublished(final List<BugzillaEvent> events) {
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run() {
+                        applyEvents(events);
+                    }
+                });
+            }
+        };
+        bz.addListener(listener);
+        // A fixed cell size, so the list never measures all the rows
+        list.setPrototypeCellValue(Integer.MAX_VALUE);
         list.addListSelectionListener(new ListSelectionListener() {
             public void valueChanged(ListSelectionEvent e) {
 
                 bugID = (list.getSelectedValue() == null ? bugID : (int) list.getSelectedValue());
-                if (bugs.containsKey(bugID)) {
-
-                    textDescription.setText(
-                            bugs.get(bugID).getBugDescription());
-                    textSolution.setText(
-                            bugs.get(bugID).getSolutionInfo());
-                    lblStateVal.setText(
-                            bugs.get(bugID).getState().toString());
-                    comboBoxType.setSelectedItem(
-                            bugs.get(bugID).getSolutionType());
-                }
+                showBug();
             }
         });
-        list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
-        list.setBounds(20, 35, 135, 155);
-        frame.getContentPane().add(list);
+        // Several bugs can be selected for CONFIRM, INVALIDATE, APPROVE and REJECT
+        list.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
+
+        // Only the visible rows are read from the model
+        JScrollPane listScroll = new JScrollPane(list);
+        listScroll.setBounds(20, 35, 135, 155);
+        frame.getContentPane().add(listScroll);
 
         JLabel lblBugList = new JLabel("Bug List");
         lblBugList.setBounds(20, 10, 67, 14);
@@ -172,8 +189,26 @@ public class MemberUI {
                     String solution = textSolution.getText();
                     String description = textDescription.getText();
                     Bug.Resolution resType = comboBoxType.getItemAt(comboBoxType.getSelectedIndex());
+                    List<Integer> selected = selectedBugs();
+                    BatchResult batch = null;
+
+                    if (selected.size() > 1) {
+                        if (act == ActionType.CONFIRM) {
+                            batch = bz.confirmBugs(username, selected);
+                        } else if (act == ActionType.INVALIDATE) {
+                            batch = bz.invalidateBugs(username, selected, solution);
+                        } else if (act == ActionType.APPROVE) {
+                            batch = bz.approveFixes(username, selected);
+                        } else if (act == ActionType.REJECT) {
+                            batch = bz.rejectFixes(username, selected);
+                        }
+                    }
 
-                    if (act == ActionType.SUBMIT) {
+                    if (batch != null) {
+                        if (!batch.isComplete()) {
+                            displayMsg(batch, selected.size());
+                        }
+                    } else if (act == ActionType.SUBMIT) {
                         bz.submitBug(username, description);
                     } else if (act == ActionType.CONFIRM) {
                         bz.confirmBug(username, bugID);
@@ -191,7 +226,10 @@ public class MemberUI {
                         bz.approveFix(username, bugID);
                     }
 
-                    bz.saveData();
+                    // A batch action is committed by Bugzilla already
+                    if (batch == null) {
+                        bz.saveData();
+                    }
                     loadUIData();
 
                 } catch (BugzillaException e1) {
@@ -213,8 +251,6 @@ public class MemberUI {
         btnLogout.setBounds(324, 248, 146, 23);
         frame.getContentPane().add(btnLogout);
 
-        bugs = bz.getBugList();
-
         try {
             loadUIData();
         } catch (BugzillaException e1) {
@@ -227,25 +263,81 @@ public class MemberUI {
         JOptionPane.showMessageDialog(null, ex.getErrorMsg(), "Error", JOptionPane.ERROR_MESSAGE);
     }
 
+    private void displayMsg(BatchResult batch, int count) {
+        BugzillaException first = batch.getFailures().values().iterator().next();
+        JOptionPane.showMessageDialog(null,
+                batch.getFailures().size() + " of " + count + " bugs were not changed: " + first.getErrorMsg(),
+                "Error", JOptionPane.ERROR_MESSAGE);
+    }
+
+    private List<Integer> selectedBugs() {
+        List<Integer> selected = new ArrayList<Integer>();
+        for (Object value : list.getSelectedValuesList()) {
+            selected.add((Integer) value);
+        }
+        return selected;
+    }
+
+    /*
+     * Shows the fields of the selected bug
+     */
+    private void showBug() {
+        if (bugs.containsKey(bugID)) {
+
+            textDescription.setText(
+                    bugs.get(bugID).getBugDescription());
+            textSolution.setText(
+                    bugs.get(bugID).getSolutionInfo());
+            lblStateVal.setText(
+                    bugs.get(bugID).getState().toString());
+            comboBoxType.setSelectedItem(
+                    bugs.get(bugID).getSolutionType());
+        }
+    }
+
+    /*
+     * Updates the rows and the selected bug for the events of the bus
+     * (called on the event dispatch thread)
+     */
+    private void applyEvents(List<BugzillaEvent> events) {
+        boolean submitted = false;
+        boolean selectedChanged = false;
+
+        for (BugzillaEvent event : events) {
+            if (event.getBugID() < 0) {
+                continue;
+            }
+            if (event.getType() == BugzillaEvent.Type.BUG_SUBMITTED) {
+                submitted = true;
+            } else {
+                model.refresh(event.getBugID());
+            }
+            selectedChanged |= (event.getBugID() == bugID);
+        }
+
+        if (submitted) {
+            model.refresh(-1);
+        }
+        if (selectedChanged) {
+            showBug();
+        }
+    }
+
     private void loadUIData() throws BugzillaException {
         bugID = list.getSelectedValue() == null ? bugID : (int) list.getSelectedValue();
 
         try {
+            // The rows are refreshed by the events of the bus (see applyEvents)
             if (!bugs.isEmpty()) {
-                list.setListData((Object[]) bugs.keySet().toArray());
                 if (!bugs.containsKey(bugID)) {
-                    bugID = 0;
+                    bugID = (Integer) model.getElementAt(0);
                 }
-                list.setSelectedValue(bugID, true);
-
-                textDescription.setText(
-                        bugs.get(bugID).getBugDescription());
-                textSolution.setText(
-                        bugs.get(bugID).getSolutionInfo());
-                lblStateVal.setText(
-                        bugs.get(bugID).getState().toString());
-                comboBoxType.setSelectedItem(
-                        bugs.get(bugID).getSolutionType());
+
+                int row = model.rowOf(bugID);
+                list.setSelectedIndex(row);
+                list.ensureIndexIsVisible(row);
+
+                showBug();
             }
         } catch (Exception ex) {
 
@@ -4,6 +4,39 @@ import com.google.java.contract.PreconditionError;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
+
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
+
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.apache.commons.lang3.tuple.Pair;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
 
 public class ProgramTest {
 
@@ -407,6 +440,1139 @@ public class ProgramTest {
         new Bug(0, "crash on OK press").setState(Bug.State.INPROGRESS);
     }
 
+    @Test
+    public void shouldKeepBugsWithSparseIDs() throws Exception {
+        BugStore store = new BugStore();
+        store.put(new Bug(3, "three"));
+        store.put(new Bug(5000, "five thousand"));
+        store.put(new Bug(3, "three again"));
+
+        assertEquals(2, store.size());
+        assertEquals(5001, store.limit());
+        assertEquals("three again", store.get(3).getBugDescription());
+        assertEquals(null, store.get(4));
+        assertEquals(null, store.get(1 << 20));
+        assertFalse(store.contains(-1));
+
+        Map<Integer, Bug> map = new HashMap<Integer, Bug>(store.asMap());
+        assertEquals(map, store.asMap());
+        assertEquals("[3, 5000]", store.asMap().keySet().toString());
+    }
+
+    @Test
+    public void shouldLoadOnlyTheBugsOfAPage() throws Exception {
+        final List<Integer> loaded = new ArrayList<Integer>();
+        BugStore store = new BugStore();
+        // Stored bugs at the even IDs below 100
+        store.setLoader(new BugStore.Loader() {
+            public Bug load(int bugID) {
+                if (!contains(bugID)) {
+                    return null;
+                }
+                loaded.add(bugID);
+                return Bug.restore(bugID, "stored " + bugID, Bug.State.UNCONFIRMED, Bug.Resolution.UNRESOLVED, "");
+            }
+
+            public boolean contains(int bugID) {
+                return bugID < 100 && bugID % 2 == 0;
+            }
+
+            public void readStates(int fromID, Bug.State[] states, Bug.Resolution[] types) {
+                for (int i = 0; i < states.length; i++) {
+                    if (contains(fromID + i)) {
+                        states[i] = Bug.State.UNCONFIRMED;
+                        types[i] = Bug.Resolution.UNRESOLVED;
+                    }
+                }
+            }
+
+            public Integer textHash(int bugID) {
+                return contains(bugID) ? Bug.textHash("stored " + bugID, "") : null;
+            }
+        }, 100, 50);
+
+        BugPage page = store.page(0, Integer.MAX_VALUE, 5, null);
+        assertEquals(5, page.getBugs().size());
+        assertEquals(10, page.getContinuation());
+        assertEquals("[0, 2, 4, 6, 8, 10]", loaded.toString());
+
+        // The loaded bug changed after it was stored
+        store.get(2).setState(Bug.State.CONFIRMED);
+        assertEquals(49, store.index().countInState(Bug.State.UNCONFIRMED));
+        assertEquals(1, store.index().countInState(Bug.State.CONFIRMED));
+        assertEquals(6, loaded.size());
+        assertFalse(store.isFullyLoaded());
+    }
+
+    @Test
+    public void shouldFindBugsByStateAndResolution() throws Exception {
+        bugzilla.register("user", "pass", Bugzilla.MemberType.USER);
+        bugzilla.register("analyst", "pass", Bugzilla.MemberType.SYSTEMANALYST);
+        bugzilla.register("developer", "pass", Bugzilla.MemberType.DEVELOPER);
+        bugzilla.login("user", "pass");
+        bugzilla.login("analyst", "pass");
+        bugzilla.login("developer", "pass");
+        for (int i = 0; i < 4; i++) {
+            bugzilla.submitBug("user", "description " + i);
+        }
+        bugzilla.confirmBug("analyst", 1);
+        bugzilla.confirmBug("analyst", 3);
+        bugzilla.invalidateBug("analyst", 2, "invalid");
+        bugzilla.startDevelopment("developer", 3);
+        bugzilla.fixedBug("developer", 3, Bug.Resolution.FIXED, "fixed");
+
+        assertEquals(1, bugzilla.bugsInState(Bug.State.UNCONFIRMED).size());
+        assertEquals(1, bugzilla.bugsInState(Bug.State.CONFIRMED).get(0).getID());
+        assertEquals(2, bugzilla.bugsInState(Bug.State.RESOLVED).size());
+        assertEquals(0, bugzilla.bugsInState(Bug.State.INPROGRESS).size());
+        assertEquals(3, bugzilla.bugsWithResolution(Bug.Resolution.FIXED).get(0).getID());
+        assertEquals(2, bugzilla.bugsWithResolution(Bug.Resolution.UNRESOLVED).size());
+    }
+
+    @Test
+    public void shouldRankBugsByQueryWords() throws Exception {
+        bugzilla.register("user", "pass", Bugzilla.MemberType.USER);
+        bugzilla.register("analyst", "pass", Bugzilla.MemberType.SYSTEMANALYST);
+        bugzilla.login("user", "pass");
+        bugzilla.login("analyst", "pass");
+        bugzilla.submitBug("user", "Crash on login");
+        bugzilla.submitBug("user", "Login page is slow, login takes a minute");
+        bugzilla.submitBug("user", "Typo in the footer");
+        bugzilla.invalidateBug("analyst", 2, "Duplicate of the login crash");
+
+        assertEquals(3, bugzilla.searchBugs("LOGIN", 10).size());
+        assertEquals(1, bugzilla.searchBugs("login", 10).get(0).getID());
+        assertEquals(0, bugzilla.searchBugs("crash", 10).get(0).getID());
+        assertEquals(1, bugzilla.searchBugs("login crash", 1).size());
+        assertEquals(2, bugzilla.searchBugs("duplicate", 10).get(0).getID());
+        assertEquals(0, bugzilla.searchBugs("nothing", 10).size());
+    }
+
+    @Test
+    public void shouldPageThroughBugs() throws Exception {
+        bugzilla.register("user", "pass", Bugzilla.MemberType.USER);
+        bugzilla.register("analyst", "pass", Bugzilla.MemberType.SYSTEMANALYST);
+        bugzilla.login("user", "pass");
+        bugzilla.login("analyst", "pass");
+        for (int i = 0; i < 10; i++) {
+            bugzilla.submitBug("user", "description " + i);
+        }
+        for (int i = 0; i < 10; i += 3) {
+            bugzilla.confirmBug("analyst", i);
+        }
+
+        BugPage page = bugzilla.listBugs(0, 4);
+        assertEquals(4, page.getBugs().size());
+        assertEquals(4, page.getContinuation());
+        page = bugzilla.listBugs(8, 4);
+        assertEquals(9, page.getBugs().get(1).getID());
+        assertFalse(page.hasMore());
+
+        page = bugzilla.listBugs(0, 10, 2, new Predicate<Bug>() {
+            public boolean test(Bug bug) {
+                return bug.getState() == Bug.State.CONFIRMED;
+            }
+        });
+        assertEquals(3, page.getBugs().get(1).getID());
+        page = bugzilla.listBugs(page.getContinuation(), 10, 2, null);
+        assertEquals(4, page.getBugs().get(0).getID());
+
+        page = bugzilla.listBugs(Bug.State.CONFIRMED, 1, 2);
+        assertEquals(3, page.getBugs().get(0).getID());
+        assertEquals(9, page.getContinuation());
+        assertFalse(bugzilla.listBugs(Bug.State.CONFIRMED, 9, 2).hasMore());
+        page = bugzilla.listBugs(Bug.State.CONFIRMED, 0, Integer.MAX_VALUE);
+        assertEquals(bugzilla.bugsInState(Bug.State.CONFIRMED).size(), page.getBugs().size());
+        assertFalse(page.hasMore());
+
+        assertEquals(10, bugzilla.streamBugs().count());
+        assertEquals(0, bugzilla.bugIterator().next().getID());
+    }
+
+    @Test
+    public void shouldReadListRowsInPages() throws Exception {
+        bugzilla.register("user", "pass", Bugzilla.MemberType.USER);
+        bugzilla.register("analyst", "pass", Bugzilla.MemberType.SYSTEMANALYST);
+        bugzilla.login("user", "pass");
+        bugzilla.login("analyst", "pass");
+        for (int i = 0; i < 600; i++) {
+            bugzilla.submitBug("user", "description " + i);
+        }
+
+        BugListModel model = new BugListModel(bugzilla);
+        final List<String> events = new ArrayList<String>();
+        model.addListDataListener(new ListDataListener() {
+            public void intervalAdded(ListDataEvent e) {
+                events.add("added " + e.getIndex0() + "-" + e.getIndex1());
+            }
+
+            public void intervalRemoved(ListDataEvent e) {
+                events.add("removed");
+            }
+
+            public void contentsChanged(ListDataEvent e) {
+                events.add("changed " + e.getIndex0() + "-" + e.getIndex1());
+            }
+        });
+
+        assertEquals(600, model.getSize());
+        assertEquals(599, model.getElementAt(599));
+        assertEquals(300, model.getElementAt(300));
+        assertEquals(42, model.rowOf(42));
+
+        bugzilla.submitBug("user", "new");
+        bugzilla.confirmBug("analyst", 42);
+        model.refresh(42);
+        assertEquals(601, model.getSize());
+        assertEquals(600, model.getElementAt(600));
+        assertEquals("[added 600-600, changed 42-42]", events.toString());
+    }
+
+    @Test
+    public void shouldApplyBatchWithOneCommit() throws Exception {
+        ConcurrencyTest.RecordingStore store = new ConcurrencyTest.RecordingStore();
+        Bugzilla bz = new Bugzilla(store);
+        bz.register("user", "pass", Bugzilla.MemberType.USER);
+        bz.register("analyst", "pass", Bugzilla.MemberType.SYSTEMANALYST);
+        bz.login("user", "pass");
+        bz.login("analyst", "pass");
+
+        BatchResult submitted = bz.submitBugs("user", Arrays.asList("one", "", "three", "four"));
+        assertEquals(Arrays.asList(0, 1, 2), submitted.getSucceeded());
+        assertEquals(BugzillaException.ErrorType.INVALID_DESCRIPTION, submitted.getFailures().get(1).getError());
+        assertEquals(1, store.commits());
+
+        bz.invalidateBugs("analyst", Arrays.asList(2), "duplicate");
+        BatchResult confirmed = bz.confirmBugs("analyst", Arrays.asList(0, 1, 7));
+        assertEquals(Arrays.asList(0, 1), confirmed.getSucceeded());
+        assertEquals(BugzillaException.ErrorType.INVALID_BUGID, confirmed.getFailures().get(7).getError());
+        assertEquals(3, store.commits());
+
+        BatchResult invalidated = bz.invalidateBugs("analyst", Arrays.asList(0, 2), "invalid");
+        assertFalse(invalidated.isComplete());
+        assertEquals(BugzillaException.ErrorType.INVALID_STATE_TRANSITION,
+                invalidated.getFailures().get(0).getError());
+        assertEquals(Bug.State.CONFIRMED, bz.getBugList().get(0).getState());
+    }
+
+    @Test(expected = BugzillaException.class)
+    public void shouldRefuseBatchOfWrongMember() throws Exception {
+        bugzilla.register("user", "pass", Bugzilla.MemberType.USER);
+        bugzilla.login("user", "pass");
+        bugzilla.confirmBugs("user", Arrays.asList(0));
+    }
+
+    @Test
+    public void shouldPublishEventsOfChanges() throws Exception {
+        final List<String> received = new ArrayList<String>();
+        bugzilla.addListener(new BugzillaListener() {
+            public void eventsPublished(List<BugzillaEvent> events) {
+                for (BugzillaEvent event : events) {
+                    received.add(event.toString());
+                }
+            }
+        });
+
+        bugzilla.register("user", "pass", Bugzilla.MemberType.USER);
+        bugzilla.register("analyst", "pass", Bugzilla.MemberType.SYSTEMANALYST);
+        bugzilla.login("user", "pass");
+        bugzilla.login("analyst", "pass");
+        bugzilla.submitBug("user", "description");
+        bugzilla.submitBug("user", "other");
+        bugzilla.confirmBug("analyst", 0);
+        bugzilla.invalidateBug("analyst", 1, "invalid");
+        bugzilla.logout("user");
+        bugzilla.getEvents().flush();
+
+        assertEquals(Arrays.asList(
+                "MEMBER_REGISTERED user",
+                "MEMBER_REGISTERED analyst",
+                "LOGIN user",
+                "LOGIN analyst",
+                "BUG_SUBMITTED 0 null->UNCONFIRMED",
+                "BUG_SUBMITTED 1 null->UNCONFIRMED",
+                "STATE_CHANGED 0 UNCONFIRMED->CONFIRMED",
+                "BUG_RESOLVED 1 UNCONFIRMED->RESOLVED INVALID",
+                "LOGOUT user"), received);
+    }
+
+    @Test
+    public void shouldNotWaitForStoppedDelivery() throws Exception {
+        EventBus bus = new EventBus();
+        bus.subscribe(new BugzillaListener() {
+            public void eventsPublished(List<BugzillaEvent> events) {
+                throw new AssertionError("listener failed");
+            }
+        });
+
+        // The failed batch counts as delivered, later events are never delivered
+        bus.publish(BugzillaEvent.member(BugzillaEvent.Type.LOGIN, "user"));
+        bus.flush();
+        bus.publish(BugzillaEvent.member(BugzillaEvent.Type.LOGOUT, "user"));
+        try {
+            bus.flush();
+            fail("The events were delivered");
+        } catch (IllegalStateException ex) {
+            assertEquals(1, bus.deliveredCount());
+        }
+    }
+
+/// Sessions
+
+    @Test
+    public void shouldKeepOneSessionPerMember() throws Exception {
+        bugzilla.register("user", "pass", Bugzilla.MemberType.USER);
+        bugzilla.login("user", "pass");
+        bugzilla.login("user", "pass");
+        assertEquals(1, bugzilla.getSessions().activeSessions());
+        assertEquals(2, bugzilla.getSessions().loginCount());
+
+        bugzilla.logout("user");
+        assertEquals(0, bugzilla.getSessions().activeSessions());
+        assertEquals(null, bugzilla.getSessions().getSession("user"));
+    }
+
+    @Test
+    public void shouldExpireIdleSessions() throws Exception {
+        SessionRegistry sessions = new SessionRegistry(1000, 0);
+        String token = sessions.login("idle", 0).getToken();
+        sessions.login("busy", 0);
+        assertEquals("idle", sessions.findByToken(token).getUsername());
+
+        assertEquals(0, sessions.expire(900));
+        assertTrue(sessions.isLoggedIn("busy", 900));
+        assertEquals(1, sessions.expire(1500));
+        assertFalse(sessions.isLoggedIn("idle", 1500));
+        assertTrue(sessions.getSession("busy") != null);
+        assertEquals(null, sessions.findByToken(token));
+
+        assertEquals(1, sessions.expire(2000));
+        assertEquals(0, sessions.activeSessions());
+        assertEquals(2, sessions.expiredCount());
+    }
+
+    @Test
+    public void shouldCancelDeadlineOfReplacedSession() throws Exception {
+        TimerWheel<String> wheel = new TimerWheel<String>(8, 10, 0);
+        TimerWheel.Entry<String> first = wheel.schedule("first", 50);
+        wheel.schedule("second", 50);
+        assertTrue(wheel.cancel(first));
+        assertFalse(wheel.cancel(first));
+        assertEquals(1, wheel.size());
+        assertEquals("[second]", wheel.advance(100).toString());
+
+        SessionRegistry sessions = new SessionRegistry(1000, 0);
+        sessions.login("user", 0);
+        sessions.login("user", 500);
+        sessions.logout("user");
+        sessions.login("user", 900);
+        assertEquals(0, sessions.expire(1600));
+        assertEquals(1, sessions.expire(2000));
+
+        SessionRegistry timed = new SessionRegistry(1000);
+        timed.close();
+        timed.close();
+    }
+
+/// Persistence
+
+    @Test
+    public void shouldReplayLogAfterRestart() throws Exception {
+        File dir = tempDir();
+        Bugzilla bz = new Bugzilla(logStore(dir));
+        bz.register("user", "pass", Bugzilla.MemberType.USER);
+        bz.register("analyst", "pass", Bugzilla.MemberType.SYSTEMANALYST);
+        bz.register("developer", "pass", Bugzilla.MemberType.DEVELOPER);
+        bz.login("user", "pass");
+        bz.login("analyst", "pass");
+        bz.login("developer", "pass");
+        bz.submitBug("user", "description");
+        bz.submitBug("user", "other");
+        bz.confirmBug("analyst", 0);
+        bz.startDevelopment("developer", 0);
+        bz.saveData();
+
+        Bugzilla reloaded = new Bugzilla(logStore(dir));
+        reloaded.login("developer", "pass");
+        assertEquals(2, reloaded.getBugList().size());
+        assertEquals(Bug.State.INPROGRESS, reloaded.getBugList().get(0).getState());
+        assertEquals(Bug.State.UNCONFIRMED, reloaded.getBugList().get(1).getState());
+        reloaded.fixedBug("developer", 0, Bug.Resolution.FIXED, "solution");
+    }
+
+    @Test
+    public void shouldIgnoreTornLogRecord() throws Exception {
+        File dir = tempDir();
+        Bugzilla bz = new Bugzilla(logStore(dir));
+        bz.register("user", "pass", Bugzilla.MemberType.USER);
+        bz.login("user", "pass");
+        bz.submitBug("user", "description");
+        bz.saveData();
+        bz.submitBug("user", "lost");
+        bz.saveData();
+
+        File log = new File(dir, "bl.log");
+        RandomAccessFile f = new RandomAccessFile(log, "rw");
+        f.setLength(f.length() - 3);
+        f.close();
+
+        Bugzilla reloaded = new Bugzilla(logStore(dir));
+        assertEquals(1, reloaded.getBugList().size());
+        reloaded.login("user", "pass");
+        reloaded.submitBug("user", "again");
+        reloaded.saveData();
+        assertEquals(2, new Bugzilla(logStore(dir)).getBugList().size());
+    }
+
+    @Test
+    public void shouldIgnoreLogRecordWithCorruptedLength() throws Exception {
+        File dir = tempDir();
+        Bugzilla bz = new Bugzilla(logStore(dir));
+        bz.register("user", "pass", Bugzilla.MemberType.USER);
+        bz.login("user", "pass");
+        bz.submitBug("user", "description");
+        bz.saveData();
+        File log = new File(dir, "bl.log");
+        long valid = log.length();
+        bz.submitBug("user", "lost");
+        bz.saveData();
+
+        RandomAccessFile f = new RandomAccessFile(log, "rw");
+        f.seek(valid);
+        f.writeInt(Integer.MAX_VALUE);
+        f.close();
+
+        Bugzilla reloaded = new Bugzilla(logStore(dir));
+        assertEquals(1, reloaded.getBugList().size());
+    }
+
+    @Test
+    public void shouldEmptyLogOnCheckpoint() throws Exception {
+        File dir = tempDir();
+        LogStore store = logStore(dir);
+        Bugzilla bz = new Bugzilla(store);
+        bz.register("user", "pass", Bugzilla.MemberType.USER);
+        bz.saveData();
+        assertTrue(store.logSize() > 0);
+
+        store.checkpoint();
+        assertEquals(0, store.logSize());
+        assertFalse(new Bugzilla(logStore(dir)).getBugList().containsKey(0));
+        new Bugzilla(logStore(dir)).login("user", "pass");
+    }
+
+    @Test
+    public void shouldCheckpointInBackground() throws Exception {
+        File dir = tempDir();
+        // Every commit asks for a checkpoint
+        LogStore store = new LogStore(new File(dir, "bl.bin").getPath(), new File(dir, "bl.log").getPath(), 1, 0);
+        Bugzilla bz = new Bugzilla(store);
+        bz.register("user", "pass", Bugzilla.MemberType.USER);
+        bz.register("analyst", "pass", Bugzilla.MemberType.SYSTEMANALYST);
+        bz.login("user", "pass");
+        bz.login("analyst", "pass");
+        for (int i = 0; i < 100; i++) {
+            bz.submitBug("user", "description " + i);
+            if (i % 2 == 0) {
+                bz.confirmBug("analyst", i);
+            }
+            bz.saveData();
+        }
+        store.close();
+        assertTrue(store.checkpoints() > 0);
+        // bl.bin, bl.idx and bl.log, no segments
+        assertEquals(3, dir.list().length);
+
+        Bugzilla reloaded = new Bugzilla(logStore(dir));
+        assertEquals(100, reloaded.getBugList().size());
+        assertEquals(Bug.State.CONFIRMED, reloaded.getBugList().get(98).getState());
+        assertEquals(Bug.State.UNCONFIRMED, reloaded.getBugList().get(99).getState());
+        assertEquals("description 99", reloaded.getBugList().get(99).getBugDescription());
+        reloaded.login("analyst", "pass");
+    }
+
+    @Test
+    public void shouldReplaySegmentsOfInterruptedCheckpoint() throws Exception {
+        File dir = tempDir();
+        Bugzilla bz = new Bugzilla(logStore(dir));
+        bz.register("user", "pass", Bugzilla.MemberType.USER);
+        bz.register("analyst", "pass", Bugzilla.MemberType.SYSTEMANALYST);
+        bz.login("user", "pass");
+        bz.submitBug("user", "description");
+        bz.saveData();
+        // The log was moved to a segment, the snapshot was not written
+        assertTrue(new File(dir, "bl.log").renameTo(new File(dir, "bl.log.7")));
+
+        LogStore store = logStore(dir);
+        Bugzilla reloaded = new Bugzilla(store);
+        reloaded.login("analyst", "pass");
+        reloaded.confirmBug("analyst", 0);
+        reloaded.saveData();
+        assertEquals(Bug.State.CONFIRMED, new Bugzilla(logStore(dir)).getBugList().get(0).getState());
+
+        store.checkpoint();
+        assertFalse(new File(dir, "bl.log.7").exists());
+        assertFalse(new File(dir, "bl.log.8").exists());
+        assertEquals(Bug.State.CONFIRMED, new Bugzilla(logStore(dir)).getBugList().get(0).getState());
+    }
+
+    @Test
+    public void shouldLoadSnapshotSegmentsInParallel() throws Exception {
+        File dir = tempDir();
+        String path = new File(dir, "bl.bin").getPath();
+        int count = 5 * SnapshotWriter.SEGMENT_BUGS / 2;
+        Bugzilla bz = segmentedSnapshot(path, count);
+
+        byte[] header = Arrays.copyOf(Files.readAllBytes(new File(path).toPath()), 5);
+        assertEquals(4, header[4]);
+
+        Bugzilla loaded = new Bugzilla(new SnapshotStore(path));
+        assertEquals(count, loaded.getBugList().size());
+        for (Bug bug : bz.getBugList().values()) {
+            Bug read = loaded.getBugList().get(bug.getID());
+            assertEquals(bug.getBugDescription(), read.getBugDescription());
+            assertEquals(bug.getState(), read.getState());
+            assertEquals(bug.getSolutionInfo(), read.getSolutionInfo());
+        }
+        assertFalse(loaded.getBugList().containsKey(SnapshotWriter.SEGMENT_BUGS + 10));
+        assertEquals(count, loaded.bugTable().index().countWithResolution(Bug.Resolution.UNRESOLVED)
+                + loaded.bugTable().index().countWithResolution(Bug.Resolution.FIXED));
+        assertEquals(Integer.valueOf(1), loaded.progressTable().get("developer"));
+        loaded.login("developer", "pass");
+    }
+
+    @Test(expected = EOFException.class)
+    public void shouldFailOnTruncatedSnapshotSegment() throws Exception {
+        File dir = tempDir();
+        String path = new File(dir, "bl.bin").getPath();
+        segmentedSnapshot(path, 3 * SnapshotWriter.SEGMENT_BUGS);
+
+        RandomAccessFile f = new RandomAccessFile(path, "rw");
+        f.setLength(f.length() / 2);
+        f.close();
+        SnapshotStore.readSnapshot(new Bugzilla((BugzillaStore) null), path);
+    }
+
+    @Test(expected = EOFException.class)
+    public void shouldRefuseTextLongerThanTheInput() throws Exception {
+        // A length of Integer.MAX_VALUE followed by a few bytes
+        byte[] corrupt = {(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07, 'a', 'b'};
+        SnapshotReader.readString(new DataInputStream(new ByteArrayInputStream(corrupt)));
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldRefuseUnknownStateOrdinal() throws Exception {
+        SnapshotReader.readState(new DataInputStream(new ByteArrayInputStream(new byte[] {99})));
+    }
+
+    @Test
+    public void shouldConvertLegacySnapshot() throws Exception {
+        File dir = tempDir();
+        String legacy = new File(dir, "legacy.bin").getPath();
+        String converted = new File(dir, "converted.bin").getPath();
+
+        HashMap<String, Pair<String, Bugzilla.MemberType>> members = new HashMap<String, Pair<String, Bugzilla.MemberType>>();
+        members.put("user", new ImmutablePair<String, Bugzilla.MemberType>("pass", Bugzilla.MemberType.USER));
+        HashMap<Integer, Bug> bugs = new HashMap<Integer, Bug>();
+        bugs.put(0, new Bug(0, "description"));
+        bugs.put(1, new Bug(1, "other"));
+        bugs.get(1).setAsResolved(Bug.Resolution.WONTFIX, "solution");
+        HashMap<String, Integer> inProgress = new HashMap<String, Integer>();
+
+        ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(legacy));
+        out.writeObject(members);
+        out.writeObject(bugs);
+        out.writeObject(inProgress);
+        out.close();
+
+        assertEquals(2, SnapshotConverter.convert(legacy, converted));
+        assertTrue(SnapshotStore.isBinarySnapshot(converted));
+        assertTrue(new File(converted).length() < new File(legacy).length());
+
+        Bugzilla bz = new Bugzilla(new SnapshotStore(converted));
+        bz.login("user", "pass");
+        assertEquals(Bug.State.RESOLVED, bz.getBugList().get(1).getState());
+        assertEquals(Bug.Resolution.WONTFIX, bz.getBugList().get(1).getSolutionType());
+        assertEquals("solution", bz.getBugList().get(1).getSolutionInfo());
+        assertEquals("description", bz.getBugList().get(0).getBugDescription());
+    }
+
+    @Test
+    public void shouldRewriteOnlyChangedSlots() throws Exception {
+        File dir = tempDir();
+        String base = new File(dir, "bl").getPath();
+        SlotStore store = new SlotStore(base);
+        Bugzilla bz = new Bugzilla(store);
+        bz.register("user", "pass", Bugzilla.MemberType.USER);
+        bz.register("analyst", "pass", Bugzilla.MemberType.SYSTEMANALYST);
+        bz.register("developer", "pass", Bugzilla.MemberType.DEVELOPER);
+        bz.login("user", "pass");
+        bz.login("analyst", "pass");
+        bz.login("developer", "pass");
+        for (int i = 0; i < 100; i++) {
+            bz.submitBug("user", "description " + i);
+        }
+        bz.saveData();
+
+        bz.confirmBug("analyst", 42);
+        bz.saveData();
+        assertEquals(2, store.lastCommitBytes());
+
+        bz.startDevelopment("developer", 42);
+        bz.fixedBug("developer", 42, Bug.Resolution.FIXED, "solution");
+        bz.saveData();
+        assertTrue(store.lastCommitBytes() < 100);
+
+        Bugzilla reloaded = new Bugzilla(new SlotStore(base));
+        assertEquals(100, reloaded.getBugList().size());
+        assertEquals(Bug.State.RESOLVED, reloaded.getBugList().get(42).getState());
+        assertEquals("solution", reloaded.getBugList().get(42).getSolutionInfo());
+        assertEquals("description 99", reloaded.getBugList().get(99).getBugDescription());
+        reloaded.login("developer", "pass");
+    }
+
+    @Test
+    public void shouldKeepSlotStoreAfterTornWrites() throws Exception {
+        File dir = tempDir();
+        String base = new File(dir, "bl").getPath();
+        Bugzilla bz = new Bugzilla(new SlotStore(base));
+        bz.register("user", "pass", Bugzilla.MemberType.USER);
+        bz.login("user", "pass");
+        for (int i = 0; i < 10; i++) {
+            bz.submitBug("user", "description " + i);
+        }
+        bz.saveData();
+
+        // Half a member record, a slot with a broken text and half the last slot
+        FileOutputStream members = new FileOutputStream(base + ".members", true);
+        members.write(new byte[] {0, 0, 0});
+        members.close();
+        RandomAccessFile slots = new RandomAccessFile(base + ".slots", "rw");
+        slots.seek(SlotStore.HEADER_SIZE + 5 * SlotStore.SLOT_SIZE + 16);
+        slots.writeInt(Integer.MAX_VALUE);
+        slots.setLength(slots.length() - SlotStore.SLOT_SIZE / 2);
+        slots.close();
+
+        Bugzilla eager = new Bugzilla(new SlotStore(base, false));
+        assertEquals(8, eager.getBugList().size());
+        Bugzilla lazy = new Bugzilla(new SlotStore(base));
+        assertEquals(8, lazy.bugsInState(Bug.State.UNCONFIRMED).size());
+        assertEquals(null, lazy.bugTable().get(5));
+        lazy.register("analyst", "pass", Bugzilla.MemberType.SYSTEMANALYST);
+        lazy.saveData();
+
+        Bugzilla reloaded = new Bugzilla(new SlotStore(base));
+        reloaded.login("user", "pass");
+        reloaded.login("analyst", "pass");
+    }
+
+    @Test
+    public void shouldReadUnframedMemberFile() throws Exception {
+        File dir = tempDir();
+        String base = new File(dir, "bl").getPath();
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(base + ".members"));
+        SnapshotWriter.writeString(out, "user");
+        SnapshotWriter.writeString(out, "pass");
+        out.writeByte(Bugzilla.MemberType.USER.ordinal());
+        SnapshotWriter.writeString(out, "torn");
+        out.close();
+
+        Bugzilla bz = new Bugzilla(new SlotStore(base));
+        bz.login("user", "pass");
+        bz.register("developer", "pass", Bugzilla.MemberType.DEVELOPER);
+        bz.saveData();
+
+        Bugzilla reloaded = new Bugzilla(new SlotStore(base));
+        reloaded.login("user", "pass");
+        reloaded.login("developer", "pass");
+        assertEquals(2, reloaded.memberTable().size());
+    }
+
+    @Test
+    public void shouldGroupCommitsInBackground() throws Exception {
+        File dir = tempDir();
+        AsyncStore store = new AsyncStore(logStore(dir), AsyncStore.Durability.FIRE_AND_FORGET, 0);
+        Bugzilla bz = new Bugzilla(store);
+        bz.register("user", "pass", Bugzilla.MemberType.USER);
+        bz.login("user", "pass");
+        for (int i = 0; i < 200; i++) {
+            bz.submitBug("user", "description " + i);
+            bz.saveData();
+        }
+        bz.saveDataAsync().get();
+        assertTrue(store.groupCommits() <= 201);
+
+        store.close();
+        Bugzilla reloaded = new Bugzilla(logStore(dir));
+        assertEquals(200, reloaded.getBugList().size());
+        assertEquals("description 199", reloaded.getBugList().get(199).getBugDescription());
+    }
+
+    @Test
+    public void shouldRefuseCommitsAfterAsyncStoreStopped() throws Exception {
+        AsyncStore store = new AsyncStore(new ConcurrencyTest.RecordingStore(),
+                AsyncStore.Durability.SYNC_ON_COMMIT, 0);
+        Bugzilla bz = new Bugzilla(store);
+        bz.saveData();
+        store.close();
+        store.close();
+        assertRefused(store.commitAsync());
+
+        // A change after close is refused and the bug stays dirty
+        Bug bug = Bug.restore(0, "description", Bug.State.UNCONFIRMED, Bug.Resolution.UNRESOLVED, "");
+        bug.setState(Bug.State.CONFIRMED);
+        try {
+            store.bugChanged(bug);
+            fail("The change was queued");
+        } catch (IllegalStateException ex) {
+            assertTrue(bug.dirtyFlags() != 0);
+        }
+        try {
+            store.developerReleased("developer");
+            fail("The change was queued");
+        } catch (IllegalStateException ex) {
+            // expected
+        }
+
+        // An Error stops the writer, the waiting and the later commits fail
+        AsyncStore broken = new AsyncStore(new ConcurrencyTest.RecordingStore() {
+            public synchronized void commit() {
+                throw new AssertionError("disk lost");
+            }
+        }, AsyncStore.Durability.FIRE_AND_FORGET, 0);
+        new Bugzilla(broken);
+        assertRefused(broken.commitAsync());
+        assertRefused(broken.commitAsync());
+        broken.close();
+    }
+
+    private static void assertRefused(Future<Void> done) throws InterruptedException {
+        try {
+            done.get();
+            fail("The commit was done");
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    @Test
+    public void shouldLoadBugsFromSlotsOnFirstUse() throws Exception {
+        File dir = tempDir();
+        String base = new File(dir, "bl").getPath();
+        Bugzilla bz = new Bugzilla(new SlotStore(base));
+        bz.register("user", "pass", Bugzilla.MemberType.USER);
+        bz.register("analyst", "pass", Bugzilla.MemberType.SYSTEMANALYST);
+        bz.login("user", "pass");
+        bz.login("analyst", "pass");
+        for (int i = 0; i < 50; i++) {
+            bz.submitBug("user", "description " + i);
+        }
+        bz.invalidateBug("analyst", 7, "duplicate");
+        bz.saveData();
+
+        Bugzilla lazy = new Bugzilla(new SlotStore(base));
+        assertFalse(lazy.bugTable().isFullyLoaded());
+        assertEquals(50, lazy.bugTable().size());
+        assertEquals("duplicate", lazy.bugTable().get(7).getSolutionInfo());
+        lazy.login("analyst", "pass");
+        lazy.confirmBug("analyst", 8);
+        lazy.login("user", "pass");
+        lazy.submitBug("user", "window gamma");
+        lazy.saveData();
+        assertFalse(lazy.bugTable().isFullyLoaded());
+        assertEquals(51, lazy.bugTable().size());
+
+        Bugzilla reloaded = new Bugzilla(new SlotStore(base));
+        assertEquals(51, reloaded.bugTable().size());
+        assertEquals(1, reloaded.searchBugs("gamma", 10).size());
+        assertEquals(1, reloaded.searchBugs("duplicate", 10).size());
+        // The index saved in bl.idx is checked without loading every bug
+        assertTrue(new File(base + ".idx").exists());
+        assertFalse(reloaded.bugTable().isFullyLoaded());
+        assertEquals(51, reloaded.textIndex().documentCount());
+        assertEquals(Bug.State.CONFIRMED, reloaded.getBugList().get(8).getState());
+
+        // Slot files written before the header kept the count
+        RandomAccessFile slots = new RandomAccessFile(base + ".slots", "rw");
+        slots.seek(SlotStore.COUNT_FIELD);
+        slots.writeInt(0);
+        slots.close();
+        assertEquals(51, new Bugzilla(new SlotStore(base)).bugTable().size());
+        Bugzilla eager = new Bugzilla(new SlotStore(base, false));
+        assertTrue(eager.bugTable().isFullyLoaded());
+        assertEquals(51, eager.getBugList().size());
+    }
+
+    @Test
+    public void shouldWriteSlotsInPlaceThroughMapping() throws Exception {
+        File dir = tempDir();
+        String base = new File(dir, "bl").getPath();
+        MappedSlotStore store = new MappedSlotStore(base);
+        Bugzilla bz = new Bugzilla(store);
+        bz.register("user", "pass", Bugzilla.MemberType.USER);
+        bz.register("analyst", "pass", Bugzilla.MemberType.SYSTEMANALYST);
+        bz.login("user", "pass");
+        bz.login("analyst", "pass");
+        for (int i = 0; i < 100; i++) {
+            bz.submitBug("user", "description " + i);
+        }
+        bz.saveData();
+        assertEquals(MappedSlotStore.REGION_SIZE, new File(base + ".slots").length());
+
+        bz.confirmBug("analyst", 42);
+        bz.saveData();
+        assertEquals(2, store.lastCommitBytes());
+        bz.invalidateBug("analyst", 43, "duplicate");
+        bz.saveData();
+        store.sync();
+
+        Bugzilla mapped = new Bugzilla(new MappedSlotStore(base));
+        assertEquals(100, mapped.bugTable().size());
+        assertTrue(mapped.bugTable().contains(99));
+        assertFalse(mapped.bugTable().contains(100));
+        assertFalse(mapped.bugTable().isFullyLoaded());
+        assertEquals(Bug.State.CONFIRMED, mapped.getBugList().get(42).getState());
+        assertEquals("duplicate", mapped.getBugList().get(43).getSolutionInfo());
+        mapped.login("user", "pass");
+        mapped.submitBug("user", "after the mapping");
+        mapped.saveData();
+
+        // The files are the same as those of SlotStore
+        Bugzilla slots = new Bugzilla(new SlotStore(base, false));
+        assertEquals(101, slots.getBugList().size());
+        assertEquals("after the mapping", slots.getBugList().get(100).getBugDescription());
+        assertEquals(Bug.State.CONFIRMED, slots.getBugList().get(42).getState());
+    }
+
+    @Test
+    public void shouldKeepChangesOfAllCopiesInSlots() throws Exception {
+        File dir = tempDir();
+        String base = new File(dir, "bl").getPath();
+        AsyncStore store = new AsyncStore(new SlotStore(base), AsyncStore.Durability.SYNC_ON_COMMIT, 0);
+        Bugzilla bz = new Bugzilla(store);
+        bz.register("user", "pass", Bugzilla.MemberType.USER);
+        bz.register("analyst", "pass", Bugzilla.MemberType.SYSTEMANALYST);
+        bz.login("user", "pass");
+        bz.login("analyst", "pass");
+        bz.submitBug("user", "description");
+        bz.confirmBug("analyst", 0);
+        bz.saveData();
+        store.close();
+
+        Bugzilla reloaded = new Bugzilla(new SlotStore(base));
+        assertEquals("description", reloaded.getBugList().get(0).getBugDescription());
+        assertEquals(Bug.State.CONFIRMED, reloaded.getBugList().get(0).getState());
+    }
+
+    @Test
+    public void shouldContinueBugIDsAfterRestart() throws Exception {
+        File dir = tempDir();
+        LogStore store = logStore(dir);
+        Bugzilla bz = new Bugzilla(store);
+        bz.register("user", "pass", Bugzilla.MemberType.USER);
+        bz.login("user", "pass");
+        bz.idSequence().advanceTo(10);
+        bz.submitBug("user", "description");
+        bz.saveData();
+        assertTrue(bz.getBugList().containsKey(10));
+
+        bz.idSequence().advanceTo(20);
+        bz.saveData();
+        assertEquals(20, new Bugzilla(logStore(dir)).idSequence().highWaterMark());
+
+        store.checkpoint();
+        assertEquals(20, new Bugzilla(logStore(dir)).idSequence().highWaterMark());
+
+        String base = new File(dir, "bl").getPath();
+        Bugzilla slots = new Bugzilla(new SlotStore(base));
+        slots.idSequence().advanceTo(7);
+        slots.saveData();
+        assertEquals(7, new Bugzilla(new SlotStore(base)).idSequence().highWaterMark());
+    }
+
+    @Test
+    public void shouldUpdateSavedTextIndexFromLog() throws Exception {
+        File dir = tempDir();
+        LogStore store = logStore(dir);
+        Bugzilla bz = new Bugzilla(store);
+        bz.register("user", "pass", Bugzilla.MemberType.USER);
+        bz.register("analyst", "pass", Bugzilla.MemberType.SYSTEMANALYST);
+        bz.register("developer", "pass", Bugzilla.MemberType.DEVELOPER);
+        bz.register("qa", "pass", Bugzilla.MemberType.QUALITYASSURANCE);
+        bz.login("user", "pass");
+        bz.login("analyst", "pass");
+        bz.login("developer", "pass");
+        bz.login("qa", "pass");
+        bz.submitBug("user", "window crash");
+        bz.submitBug("user", "slow window");
+        bz.invalidateBug("analyst", 0, "alpha");
+        bz.saveData();
+        store.checkpoint();
+        assertTrue(new File(dir, "bl.idx").exists());
+
+        bz.rejectFix("qa", 0);
+        bz.startDevelopment("developer", 0);
+        bz.fixedBug("developer", 0, Bug.Resolution.FIXED, "beta");
+        bz.submitBug("user", "window gamma");
+        bz.saveData();
+
+        Bugzilla reloaded = new Bugzilla(logStore(dir));
+        assertEquals(0, reloaded.searchBugs("alpha", 10).size());
+        assertEquals(0, reloaded.searchBugs("beta", 10).get(0).getID());
+        assertEquals(2, reloaded.searchBugs("gamma", 10).get(0).getID());
+        assertEquals(3, reloaded.searchBugs("window", 10).size());
+        assertEquals(3, reloaded.textIndex().documentCount());
+    }
+
+    @Test
+    public void shouldRecordLatencyPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.percentile(99));
+
+        for (int micros = 1; micros <= 1000; micros++) {
+            histogram.record(micros * 1000L);
+        }
+
+        assertEquals(1000, histogram.count());
+        assertEquals(1000000, histogram.max());
+        assertEquals(500500, histogram.mean(), 0.001);
+        assertNear(500000, histogram.percentile(50));
+        assertNear(990000, histogram.percentile(99));
+        assertEquals(1000000, histogram.percentile(100));
+        assertNear(1000, histogram.percentile(0));
+
+        LatencyHistogram other = new LatencyHistogram();
+        other.record(5000000);
+        histogram.add(other);
+        assertEquals(1001, histogram.count());
+        assertEquals(5000000, histogram.percentile(100));
+    }
+
+    @Test
+    public void shouldRecordMetricsOfOperations() throws Exception {
+        File dir = tempDir();
+        Bugzilla bz = new Bugzilla(logStore(dir));
+        bz.register("user", "pass", Bugzilla.MemberType.USER);
+        bz.register("analyst", "pass", Bugzilla.MemberType.SYSTEMANALYST);
+        bz.login("user", "pass");
+        bz.login("analyst", "pass");
+        bz.submitBug("user", "description");
+        bz.submitBug("user", "other");
+        bz.confirmBugs("analyst", Arrays.asList(0, 7));
+        bz.saveData();
+        bz.bugsInState(Bug.State.CONFIRMED);
+
+        BugzillaMetrics metrics = bz.getMetrics();
+        assertEquals(1, metrics.latency(BugzillaMetrics.Operation.FIND_BUGS).count());
+        assertEquals(2, metrics.latency(BugzillaMetrics.Operation.REGISTER).count());
+        assertEquals(2, metrics.latency(BugzillaMetrics.Operation.SUBMIT_BUG).count());
+        assertEquals(1, metrics.latency(BugzillaMetrics.Operation.CONFIRM_BUGS).count());
+        // confirmBugs saves too
+        assertEquals(2, metrics.latency(BugzillaMetrics.Operation.SAVE_DATA).count());
+        assertEquals(1, metrics.errors(BugzillaException.ErrorType.INVALID_BUGID));
+        assertEquals(Long.valueOf(1), metrics.getErrors().get("INVALID_BUGID"));
+
+        assertEquals(2, metrics.getCommits());
+        assertEquals(new File(dir, "bl.log").length(), metrics.getBytesCommitted());
+        assertTrue(metrics.dump().contains("CONFIRM_BUGS"));
+
+        metrics.reset();
+        assertEquals(0, metrics.latency(BugzillaMetrics.Operation.REGISTER).count());
+        assertEquals(0, metrics.getBytesCommitted());
+    }
+
+    @Test
+    public void shouldChooseContractMode() {
+        Random random = new Random(1);
+        assertEquals(ContractMode.Mode.PRECONDITIONS,
+                ContractMode.effectiveMode(ContractMode.Mode.PRECONDITIONS, 100, random));
+        assertEquals(ContractMode.Mode.FULL, ContractMode.effectiveMode(ContractMode.Mode.SAMPLED, 1, random));
+
+        int full = 0;
+        for (int i = 0; i < 1000; i++) {
+            if (ContractMode.effectiveMode(ContractMode.Mode.SAMPLED, 10, random) == ContractMode.Mode.FULL) {
+                full++;
+            }
+        }
+        assertTrue(full > 50 && full < 150);
+        assertEquals(ContractMode.Mode.FULL, ContractMode.mode());
+    }
+
+    @Test
+    public void shouldReturnResultsWithoutThrowing() throws Exception {
+        Bugzilla bz = new Bugzilla((BugzillaStore) null);
+        bz.register("user", "pass", Bugzilla.MemberType.USER);
+        bz.register("analyst", "pass", Bugzilla.MemberType.SYSTEMANALYST);
+        bz.register("dev", "pass", Bugzilla.MemberType.DEVELOPER);
+        bz.login("user", "pass");
+        bz.login("analyst", "pass");
+        bz.login("dev", "pass");
+
+        BugzillaResult submitted = bz.trySubmitBug("user", "description");
+        assertTrue(submitted.isOk());
+        int bugID = submitted.getBugID();
+        assertEquals(BugzillaException.ErrorType.INVALID_DESCRIPTION, bz.trySubmitBug("user", "").getError());
+        assertEquals(BugzillaException.ErrorType.USER_ACTION_NOT_PERMITTED,
+                bz.tryConfirmBug("user", bugID).getError());
+        assertEquals(BugzillaException.ErrorType.INVALID_BUGID, bz.tryConfirmBug("analyst", 99).getError());
+
+        assertEquals(BugzillaResult.OK, bz.tryConfirmBug("analyst", bugID));
+        BugzillaResult refused = bz.tryConfirmBug("analyst", bugID);
+        assertEquals(BugzillaException.ErrorType.INVALID_STATE_TRANSITION, refused.getError());
+        assertEquals("Error: Bug state cannot be changed from CONFIRMED to CONFIRMED", refused.getErrorMsg());
+
+        assertTrue(bz.tryStartDevelopment("dev", bugID).isOk());
+        assertEquals(Bug.State.INPROGRESS, bz.getBugList().get(bugID).getState());
+        assertEquals(BugzillaException.ErrorType.INVALID_SOLUTION,
+                bz.tryFixedBug("dev", bugID, Bug.Resolution.FIXED, "").getError());
+        assertTrue(bz.tryFixedBug("dev", bugID, Bug.Resolution.FIXED, "fixed").isOk());
+        assertEquals("fixed", bz.getBugList().get(bugID).getSolutionInfo());
+        // The developer is free again
+        assertEquals(BugzillaException.ErrorType.INVALID_STATE_TRANSITION,
+                bz.tryStartDevelopment("dev", bugID).getError());
+
+        assertEquals(4, bz.getMetrics().latency(BugzillaMetrics.Operation.CONFIRM_BUG).count());
+        assertEquals(2, bz.getMetrics().errors(BugzillaException.ErrorType.INVALID_STATE_TRANSITION));
+    }
+
+    @Test
+    public void shouldKeepPackedBugThroughSerialization() throws Exception {
+        Bug fixed = new Bug(7, "description");
+        fixed.setAsResolved(Bug.Resolution.WONTFIX, "Works as designed");
+        Bug other = new Bug(8, "other");
+        other.setAsResolved(Bug.Resolution.INVALID, new String("Works as designed"));
+        assertTrue(fixed.getSolutionInfo() == other.getSolutionInfo());
+        assertTrue(bug.getSolutionInfo() == new Bug(9, "third").getSolutionInfo());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(fixed);
+        out.close();
+        Bug read = (Bug) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+
+        assertEquals(7, read.getID());
+        assertEquals("description", read.getBugDescription());
+        assertEquals(Bug.State.RESOLVED, read.getState());
+        assertEquals(Bug.Resolution.WONTFIX, read.getSolutionType());
+        assertTrue(read.getSolutionInfo() == fixed.getSolutionInfo());
+
+        read.setState(Bug.State.VERIFIED);
+        assertEquals(Bug.Resolution.WONTFIX, read.getSolutionType());
+        fixed.setState(Bug.State.CONFIRMED);
+        assertEquals(Bug.Resolution.UNRESOLVED, fixed.getSolutionType());
+    }
+
+    @Test
+    public void shouldKeepVerifiedTextsCompressed() throws Exception {
+        String description = "The window does not open after the update of the graphics driver";
+        String solution = "The driver update reset the window position, the position is now checked at startup";
+        TextCodec.setMode(TextCodec.Mode.VERIFIED);
+        try {
+            Bug verified = new Bug(3, description);
+            verified.setAsResolved(Bug.Resolution.FIXED, solution);
+            int hash = verified.textHash();
+            assertFalse(compressed(verified.descriptionText()));
+
+            verified.setState(Bug.State.VERIFIED);
+            assertTrue(compressed(verified.descriptionText()));
+            assertTrue(compressed(verified.solutionText()));
+            assertEquals(hash, verified.textHash());
+            assertEquals(31 * description.hashCode() + solution.hashCode(), hash);
+            assertEquals(description, verified.getBugDescription());
+            assertEquals(solution, verified.getSolutionInfo());
+
+            Bugzilla bz = new Bugzilla((BugzillaStore) null);
+            bz.bugTable().put(verified);
+            bz.bugTable().put(new Bug(4, description));
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            SnapshotWriter out = new SnapshotWriter(bytes);
+            out.write(bz);
+            out.close();
+
+            Bugzilla loaded = new Bugzilla((BugzillaStore) null);
+            new SnapshotReader(new ByteArrayInputStream(bytes.toByteArray())).read(loaded);
+            Bug read = loaded.bugTable().get(3);
+            assertTrue(compressed(read.descriptionText()));
+            assertEquals(description, read.getBugDescription());
+            assertEquals(solution, read.getSolutionInfo());
+            assertFalse(compressed(loaded.bugTable().get(4).descriptionText()));
+        } finally {
+            TextCodec.setMode(TextCodec.Mode.OFF);
+        }
+    }
+
+    @Test
+    public void shouldCompressBetterWithDictionary() {
+        List<String> texts = new ArrayList<String>();
+        for (int i = 0; i < 100; i++) {
+            texts.add("The window does not open after the update " + i + " of the graphics driver");
+        }
+        TextCodec plain = TextCodec.of(new byte[0]);
+        TextCodec trained = TextCodec.of(TextCodec.train(texts, 1024));
+        assertTrue(trained.hasDictionary());
+        assertTrue(trained == TextCodec.of(TextCodec.train(texts, 1024)));
+
+        String text = "The window does not open after the update 1000 of the graphics driver";
+        byte[] withDictionary = trained.compress(text);
+        assertTrue(withDictionary.length < text.length() / 2);
+        byte[] without = plain.compress(text);
+        assertTrue(without == null || without.length > withDictionary.length);
+        assertEquals(text, TextCodec.decompress(withDictionary));
+        assertEquals(text.hashCode(), TextCodec.hash(withDictionary));
+    }
+
+    @Test
+    public void shouldShareStacklessExceptions() {
+        BugzillaException ex = BugzillaException.of(BugzillaException.ErrorType.INVALID_BUGID);
+        assertTrue(ex == BugzillaException.of(BugzillaException.ErrorType.INVALID_BUGID));
+        assertEquals(0, ex.getStackTrace().length);
+        assertEquals("Error: Invalid bug ID", ex.getErrorMsg());
+
+        BugStateException state = BugStateException.of(Bug.State.VERIFIED, Bug.State.INPROGRESS);
+        assertTrue(state == BugStateException.of(Bug.State.VERIFIED, Bug.State.INPROGRESS));
+        assertEquals("Error: Bug state cannot be changed from VERIFIED to INPROGRESS", state.getErrorMsg());
+        assertTrue(new BugStateException(Bug.State.VERIFIED, Bug.State.INPROGRESS).getStackTrace().length > 0);
+    }
+
+    private boolean compressed(Object text) {
+        return (text instanceof byte[]) && TextCodec.isCompressed((byte[]) text);
+    }
+
+    private void assertNear(long expected, long actual) {
+        // The buckets are 1/32 of a power of two wide
+        assertTrue(actual + " is not near " + expected, actual >= expected && actual <= expected * 33 / 32);
+    }
+
+    /*
+     * Writes a snapshot of "count" bugs, every third resolved, with a gap
+     * in the IDs of the second segment
+     */
+    private Bugzilla segmentedSnapshot(String path, int count) throws Exception {
+        Bugzilla bz = new Bugzilla((BugzillaStore) null);
+        bz.register("developer", "pass", Bugzilla.MemberType.DEVELOPER);
+        for (int i = 0; i < count; i++) {
+            int id = (i < SnapshotWriter.SEGMENT_BUGS + 10) ? i : i + 100;
+            Bug bug = new Bug(id, "description " + id);
+            if (i % 3 == 0) {
+                bug.setAsResolved(Bug.Resolution.FIXED, "solution " + id);
+            }
+            bz.bugTable().put(bug);
+        }
+        bz.progressTable().put("developer", 1);
+        SnapshotStore.writeSnapshot(bz, path);
+        return bz;
+    }
+
+    private LogStore logStore(File dir) {
+        return new LogStore(new File(dir, "bl.bin").getPath(), new File(dir, "bl.log").getPath());
+    }
+
+    private File tempDir() throws Exception {
+        File dir = Files.createTempDirectory("bugzilla").toFile();
+        dir.deleteOnExit();
+        return dir;
+    }
+
     private Bug bug() throws BugzillaException {
         return new Bug(5, "testBug");
     }
@@ -0,0 +1,242 @@
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * The table of logged in members. A member has at most one session,
+ * looked up by username or by the session token in constant time.
+ *
+ * If an idle timeout is set, sessions that were not used for that long
+ * are closed. The deadlines are kept in a TimerWheel; using a session
+ * only updates its last access time and the wheel checks it again
+ * when the old deadline comes. The deadline of a session is taken out of
+ * the wheel when the member logs in again or logs out.
+ *
+ * close stops the background thread of the expiry.
+ */
+public class SessionRegistry {
+
+    public static class Session {
+        Session(String user, long now) {
+            username = user;
+            token = UUID.randomUUID().toString();
+            lastAccess = now;
+        }
+
+        public String getUsername() {
+            return username;
+        }
+
+        public String getToken() {
+            return token;
+        }
+
+        public long getLastAccess() {
+            return lastAccess;
+        }
+
+        private final String username;
+        private final String token;
+        private volatile long lastAccess;
+        // The deadline in the wheel
+        private volatile TimerWheel.Entry<Session> timeout;
+    }
+
+    /*
+     * Sessions never expire
+     */
+    public SessionRegistry() {
+        this(0);
+    }
+
+    /*
+     * Sessions expire after idleTimeoutMillis without use (0 - never).
+     * Expired sessions are closed by a background thread.
+     */
+    public SessionRegistry(long idleTimeoutMillis) {
+        this(idleTimeoutMillis, System.currentTimeMillis());
+
+        if (idleTimeout > 0) {
+            startExpiry();
+        }
+    }
+
+    /*
+     * Sessions expire only when expire is called
+     */
+    SessionRegistry(long idleTimeoutMillis, long now) {
+        idleTimeout = idleTimeoutMillis;
+        long tick = Math.max(1, idleTimeout / WHEEL_SIZE);
+        wheel = idleTimeout > 0 ? new TimerWheel<Session>(WHEEL_SIZE, tick, now) : null;
+    }
+
+    /*
+     * Opens a session or renews the existing session of the member
+     */
+    public Session login(String username) {
+        return login(username, System.currentTimeMillis());
+    }
+
+    Session login(String username, long now) {
+        Session session = new Session(username, now);
+        Session previous = sessions.put(username, session);
+
+        if (previous != null) {
+            tokens.remove(previous.token);
+            cancelTimeout(previous);
+        } else {
+            active.incrementAndGet();
+        }
+        tokens.put(session.token, session);
+        logins.incrementAndGet();
+
+        if (wheel != null) {
+            session.timeout = wheel.schedule(session, now + idleTimeout);
+        }
+        return session;
+    }
+
+    public boolean logout(String username) {
+        Session session = sessions.remove(username);
+        if (session == null) {
+            return false;
+        }
+
+        tokens.remove(session.token);
+        cancelTimeout(session);
+        active.decrementAndGet();
+        logouts.incrementAndGet();
+        return true;
+    }
+
+    /*
+     * Checks if the member is logged in and marks the session as used
+     */
+    public boolean isLoggedIn(String username) {
+        return isLoggedIn(username, wheel != null ? System.currentTimeMillis() : 0);
+    }
+
+    boolean isLoggedIn(String username, long now) {
+        Session session = sessions.get(username);
+        if (session == null) {
+            return false;
+        }
+
+        if (wheel != null) {
+            session.lastAccess = now;
+        }
+        return true;
+    }
+
+    public Session findByToken(String token) {
+        return tokens.get(token);
+    }
+
+    public Session getSession(String username) {
+        return sessions.get(username);
+    }
+
+    /*
+     * Closes the sessions that were idle longer than the timeout.
+     * Returns the number of closed sessions.
+     */
+    public int expire(long now) {
+        if (wheel == null) {
+            return 0;
+        }
+
+        int count = 0;
+        List<Session> due = wheel.advance(now);
+
+        for (Session session : due) {
+            if (sessions.get(session.username) != session) {
+                continue;
+            }
+
+            long deadline = session.lastAccess + idleTimeout;
+            if (deadline > now) {
+                session.timeout = wheel.schedule(session, deadline);
+            } else if (sessions.remove(session.username, session)) {
+                tokens.remove(session.token);
+                active.decrementAndGet();
+                expired.incrementAndGet();
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public int activeSessions() {
+        return active.get();
+    }
+
+    public long loginCount() {
+        return logins.get();
+    }
+
+    public long logoutCount() {
+        return logouts.get();
+    }
+
+    public long expiredCount() {
+        return expired.get();
+    }
+
+    public long idleTimeout() {
+        return idleTimeout;
+    }
+
+    /*
+     * Stops the thread that closes the expired sessions. The sessions
+     * are kept, they expire only when expire is called.
+     */
+    public synchronized void close() {
+        if (timer != null) {
+            timer.shutdownNow();
+            timer = null;
+        }
+    }
+
+    private void cancelTimeout(Session session) {
+        TimerWheel.Entry<Session> timeout = session.timeout;
+        if (timeout != null) {
+            wheel.cancel(timeout);
+        }
+    }
+
+    private synchronized void startExpiry() {
+        timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "bugzilla-sessions");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        long tick = wheel.tickMillis();
+        timer.scheduleAtFixedRate(new Runnable() {
+            public void run() {
+                expire(System.currentTimeMillis());
+            }
+        }, tick, tick, TimeUnit.MILLISECONDS);
+    }
+
+    private static final int WHEEL_SIZE = 512;
+
+    private final ConcurrentHashMap<String, Session> sessions = new ConcurrentHashMap<String, Session>();
+    private final ConcurrentHashMap<String, Session> tokens = new ConcurrentHashMap<String, Session>();
+    private final TimerWheel<Session> wheel;
+    private final long idleTimeout;
+    private ScheduledExecutorService timer;
+
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicLong logins = new AtomicLong();
+    private final AtomicLong logouts = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+}
@@ -0,0 +1,764 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.apache.commons.lang3.tuple.Pair;
+
+/*
+ * The store keeps every bug in a fixed-size slot of the <base>.slots file,
+ * at the position given by the bug ID. The texts of the bugs are appended
+ * to the <base>.text file and the slot keeps their offsets.
+ * On commit only the bugs that changed are written, and only the parts of
+ * their slots that changed (see Bug.dirtyFlags):
+ *
+ *   a state transition rewrites the two state bytes of the slot,
+ *   a new solution appends the text and rewrites the solution offset,
+ *   a new bug appends its texts and writes the whole slot.
+ *
+ * The header of the slot file keeps the bug ID high-water mark, the
+ * number of stored bugs and the end of the last slot. The slots are an index of the bugs by ID, so a
+ * lazy store (the default) reads only the header, the members and the
+ * inProgress table on open; a bug is read from its slot and its texts
+ * when it is first looked up (see BugStore.Loader).
+ * Members are appended to <base>.members when they register, framed like
+ * the records of LogStore (length, payload, CRC32) after the magic number.
+ * The inProgress table is small and is rewritten to <base>.progress only
+ * when it changed.
+ *
+ * A crash may leave the last write incomplete. Opening the store keeps the
+ * complete member records and cuts off the rest, ignores the slots past the
+ * end of the slot file, and leaves out a slot whose texts are not in the
+ * text file (see isComplete), instead of failing.
+ *
+ * Header (HEADER_SIZE bytes):
+ *   magic (int), SLOT_SIZE (int), bug ID high-water mark (int), stored bugs (int),
+ *   end of the slots (long, 0 for the end of the file)
+ *
+ * Slot layout (SLOT_SIZE bytes):
+ *   used (byte), State ordinal (byte), Resolution ordinal (byte), unused (byte),
+ *   bug ID (int), description offset (long), description length (int),
+ *   solution offset (long), solution length (int)
+ *
+ * The text index is saved to <base>.idx by commit (at most every
+ * INDEX_INTERVAL milliseconds) and checked against the slots on the first
+ * search (see TextIndex.sync).
+ *
+ * The slot file is read and written only through getSlots, putSlots and
+ * forceSlots, which MappedSlotStore replaces with a memory mapping.
+ */
+public class SlotStore implements BugzillaStore {
+
+    public SlotStore(String basePath) {
+        this(basePath, true);
+    }
+
+    /*
+     * lazy - load the bugs on first use instead of on open
+     */
+    public SlotStore(String basePath, boolean lazy) {
+        this.lazy = lazy;
+        slotPath = basePath + ".slots";
+        textPath = basePath + ".text";
+        memberPath = basePath + ".members";
+        progressPath = basePath + ".progress";
+        indexPath = basePath + ".idx";
+    }
+
+    public void open(Bugzilla b) throws Exception {
+        bz = b;
+
+        if (SnapshotStore.fileExists(memberPath)) {
+            readMembers();
+        }
+
+        if (SnapshotStore.fileExists(progressPath)) {
+            readProgress();
+        }
+
+        openFiles();
+        SnapshotStore.readIndex(bz, indexPath);
+
+        if (slotChannel.size() > 0) {
+            readHeader();
+            if (lazy) {
+                if (storedCount == 0 && slotEnd > HEADER_SIZE) {
+                    // Written before the header kept the count
+                    storedCount = countSlots();
+                }
+                bz.bugTable().setLoader(new BugStore.Loader() {
+                    public Bug load(int bugID) {
+                        try {
+                            return readSlot(bugID);
+                        } catch (IOException ex) {
+                            throw new IllegalStateException(ex);
+                        }
+                    }
+
+                    public boolean contains(int bugID) {
+                        try {
+                            return readUsed(HEADER_SIZE + (long) bugID * SLOT_SIZE);
+                        } catch (IOException ex) {
+                            throw new IllegalStateException(ex);
+                        }
+                    }
+
+                    public void readStates(int fromID, Bug.State[] states, Bug.Resolution[] types) {
+                        try {
+                            SlotStore.this.readStates(fromID, states, types);
+                        } catch (IOException ex) {
+                            throw new IllegalStateException(ex);
+                        }
+                    }
+
+                    public Integer textHash(int bugID) {
+                        try {
+                            return readTextHash(bugID);
+                        } catch (IOException ex) {
+                            throw new IllegalStateException(ex);
+                        }
+                    }
+                }, (int) ((slotEnd - HEADER_SIZE) / SLOT_SIZE), storedCount);
+            } else {
+                readBugs();
+            }
+        }
+    }
+
+    public synchronized void reset() throws Exception {
+        closeFiles();
+        SnapshotStore.deleteFile(slotPath);
+        SnapshotStore.deleteFile(textPath);
+        SnapshotStore.deleteFile(memberPath);
+        SnapshotStore.deleteFile(progressPath);
+        SnapshotStore.deleteFile(indexPath);
+
+        dirtyBugs.clear();
+        newMembers.clear();
+        progressDirty = true;
+        savedMark = 0;
+        storedCount = 0;
+        savedCount = 0;
+        savedEnd = 0;
+
+        openFiles();
+
+        newMembers.putAll(bz.memberTable());
+        for (Bug bug : bz.bugTable().values()) {
+            dirtyBugs.put(bug.getID(), bug.copy());
+            bug.markClean();
+        }
+        commit(true);
+    }
+
+    public boolean exists() {
+        return SnapshotStore.fileExists(slotPath);
+    }
+
+    public synchronized void memberRegistered(String username, String passwd, Bugzilla.MemberType type) {
+        newMembers.put(username, new ImmutablePair<String, Bugzilla.MemberType>(passwd, type));
+    }
+
+    /*
+     * Bugzilla calls it while it holds the lock of the bug, so the flags are
+     * taken from the bug here: commit writes the copy and never touches the
+     * live bug, which may change again meanwhile
+     */
+    public synchronized void bugChanged(Bug bug) {
+        Bug copy = bug.copy();
+        bug.markClean();
+
+        // The newer copy replaces the older one, keep both changes
+        Bug previous = dirtyBugs.put(copy.getID(), copy);
+        if (previous != null) {
+            copy.addDirtyFlags(previous.dirtyFlags());
+        }
+    }
+
+    public synchronized void developerAssigned(String username, int bugID) {
+        progressDirty = true;
+    }
+
+    public synchronized void developerReleased(String username) {
+        progressDirty = true;
+    }
+
+    public synchronized void commit() throws Exception {
+        long started = System.nanoTime();
+        commit(false);
+        bz.getMetrics().committed(lastCommitBytes, System.nanoTime() - started);
+
+        // The saved index only saves work on the next start, it is not
+        // written more often than every INDEX_INTERVAL
+        long now = System.currentTimeMillis();
+        if (bz.textIndex().isSynced() && now - indexSaved >= INDEX_INTERVAL) {
+            bz.textIndex().save(indexPath);
+            indexSaved = now;
+        }
+    }
+
+    public synchronized void sync() throws Exception {
+        textChannel.force(false);
+        forceSlots();
+        memberOut.getChannel().force(true);
+    }
+
+    /*
+     * Returns the number of bytes written to the slot and text files
+     * by the last commit
+     */
+    public synchronized long lastCommitBytes() {
+        return lastCommitBytes;
+    }
+
+    private void commit(boolean newBugs) throws Exception {
+        lastCommitBytes = 0;
+
+        for (Bug bug : dirtyBugs.values()) {
+            writeBug(bug, newBugs ? Bug.DIRTY_NEW : bug.dirtyFlags());
+        }
+        dirtyBugs.clear();
+
+        if (!newMembers.isEmpty()) {
+            writeMembers();
+        }
+
+        if (progressDirty) {
+            writeProgress();
+        }
+
+        int mark = bz.idSequence().highWaterMark();
+        if (mark != savedMark || storedCount != savedCount || slotEnd != savedEnd) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE - MARK_FIELD);
+            header.putInt(mark);
+            header.putInt(storedCount);
+            header.putLong(slotEnd);
+            header.flip();
+            writeSlots(header, MARK_FIELD);
+            savedMark = mark;
+            savedCount = storedCount;
+            savedEnd = slotEnd;
+        }
+    }
+
+    private void writeBug(Bug bug, int flags) throws IOException {
+        long pos = HEADER_SIZE + (long) bug.getID() * SLOT_SIZE;
+
+        if ((flags & Bug.DIRTY_NEW) == Bug.DIRTY_NEW) {
+            if (!slotUsed(pos)) {
+                storedCount++;
+            }
+            slotEnd = Math.max(slotEnd, pos + SLOT_SIZE);
+
+            byte[] description = bug.getBugDescription().getBytes(StandardCharsets.UTF_8);
+            byte[] solution = bug.getSolutionInfo().getBytes(StandardCharsets.UTF_8);
+            long descOffset = appendText(description);
+            long solOffset = appendText(solution);
+
+            ByteBuffer slot = ByteBuffer.allocate(SLOT_SIZE);
+            slot.put((byte) 1);
+            slot.put((byte) bug.getState().ordinal());
+            slot.put((byte) bug.getSolutionType().ordinal());
+            slot.put((byte) 0);
+            slot.putInt(bug.getID());
+            slot.putLong(descOffset);
+            slot.putInt(description.length);
+            slot.putLong(solOffset);
+            slot.putInt(solution.length);
+            slot.flip();
+            writeSlots(slot, pos);
+            return;
+        }
+
+        if ((flags & Bug.DIRTY_SOLUTION) != 0) {
+            byte[] solution = bug.getSolutionInfo().getBytes(StandardCharsets.UTF_8);
+            long solOffset = appendText(solution);
+
+            ByteBuffer ref = ByteBuffer.allocate(12);
+            ref.putLong(solOffset);
+            ref.putInt(solution.length);
+            ref.flip();
+            writeSlots(ref, pos + SOLUTION_FIELD);
+        }
+
+        if ((flags & Bug.DIRTY_STATE) != 0) {
+            ByteBuffer st = ByteBuffer.allocate(2);
+            st.put((byte) bug.getState().ordinal());
+            st.put((byte) bug.getSolutionType().ordinal());
+            st.flip();
+            writeSlots(st, pos + STATE_FIELD);
+        }
+    }
+
+    private long appendText(byte[] text) throws IOException {
+        long offset = textEnd;
+        writeFully(textChannel, ByteBuffer.wrap(text), offset);
+        textEnd += text.length;
+        return offset;
+    }
+
+    private void writeFully(FileChannel channel, ByteBuffer buf, long pos) throws IOException {
+        lastCommitBytes += buf.remaining();
+        while (buf.hasRemaining()) {
+            pos += channel.write(buf, pos);
+        }
+    }
+
+    private void writeSlots(ByteBuffer buf, long pos) throws IOException {
+        lastCommitBytes += buf.remaining();
+        putSlots(buf, pos);
+    }
+
+    /*
+     * Writes the remaining bytes of the buffer to the slot file at pos
+     */
+    void putSlots(ByteBuffer buf, long pos) throws IOException {
+        while (buf.hasRemaining()) {
+            pos += slotChannel.write(buf, pos);
+        }
+    }
+
+    /*
+     * Fills the buffer from the slot file at pos.
+     * Returns false if the file ends first.
+     */
+    boolean getSlots(ByteBuffer buf, long pos) throws IOException {
+        while (buf.hasRemaining()) {
+            int n = slotChannel.read(buf, pos);
+            if (n < 0) {
+                return false;
+            }
+            pos += n;
+        }
+        return true;
+    }
+
+    void forceSlots() throws IOException {
+        slotChannel.force(false);
+    }
+
+    /*
+     * Called when the slot file was closed
+     */
+    void slotsClosed() {
+    }
+
+    FileChannel slotChannel() {
+        return slotChannel;
+    }
+
+    private boolean slotUsed(long pos) throws IOException {
+        return pos < slotEnd && readUsed(pos);
+    }
+
+    private boolean readUsed(long pos) throws IOException {
+        ByteBuffer used = ByteBuffer.allocate(1);
+        return getSlots(used, pos) && used.get(0) != 0;
+    }
+
+    private void readHeader() throws IOException {
+        // Before a mapping makes the file longer (see MappedSlotStore)
+        long fileEnd = slotChannel.size();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        if (!getSlots(header, 0)) {
+            throw new IOException("Not a Bugzilla slot file");
+        }
+        header.flip();
+
+        if (header.getInt() != SnapshotWriter.MAGIC || header.getInt() != SLOT_SIZE) {
+            throw new IOException("Not a Bugzilla slot file");
+        }
+        savedMark = header.getInt(MARK_FIELD);
+        savedCount = header.getInt(COUNT_FIELD);
+        storedCount = savedCount;
+        savedEnd = header.getLong(END_FIELD);
+        // Files written before the header kept the end are not longer than their slots
+        slotEnd = (savedEnd != 0) ? savedEnd : Math.max(HEADER_SIZE, fileEnd);
+        if (slotEnd > fileEnd) {
+            // The last slots did not reach the disk, only the whole ones are read
+            slotEnd = Math.max(HEADER_SIZE, HEADER_SIZE + (fileEnd - HEADER_SIZE) / SLOT_SIZE * SLOT_SIZE);
+        }
+        bz.idSequence().advanceTo(savedMark);
+    }
+
+    private void readBugs() throws IOException {
+        ByteBuffer block = ByteBuffer.allocate(BLOCK_SLOTS * SLOT_SIZE);
+        storedCount = 0;
+
+        for (long pos = HEADER_SIZE; pos < slotEnd; pos += block.capacity()) {
+            block.clear();
+            block.limit((int) Math.min(block.capacity(), slotEnd - pos));
+            if (!getSlots(block, pos)) {
+                throw new EOFException("Bug slots are missing");
+            }
+
+            for (int slot = 0; slot < block.limit(); slot += SLOT_SIZE) {
+                block.limit(slot + SLOT_SIZE);
+                block.position(slot);
+                Bug bug = decodeSlot(block);
+                if (bug != null) {
+                    bz.bugTable().put(bug);
+                    storedCount++;
+                }
+                block.limit(block.capacity());
+            }
+        }
+    }
+
+    /*
+     * Reads the bug in the slot of the ID, or returns null for an empty slot
+     */
+    private Bug readSlot(int bugID) throws IOException {
+        long pos = HEADER_SIZE + (long) bugID * SLOT_SIZE;
+        ByteBuffer slot = ByteBuffer.allocate(SLOT_SIZE);
+        if (!getSlots(slot, pos)) {
+            return null;
+        }
+        slot.flip();
+        return decodeSlot(slot);
+    }
+
+    /*
+     * Returns the text hash of the bug in the slot (see Bug.textHash) from its
+     * texts, or null for an empty slot
+     */
+    private Integer readTextHash(int bugID) throws IOException {
+        ByteBuffer slot = ByteBuffer.allocate(SLOT_SIZE);
+        if (!getSlots(slot, HEADER_SIZE + (long) bugID * SLOT_SIZE) || !isComplete(slot, 0)) {
+            return null;
+        }
+        return Bug.textHash(readText(slot.getLong(8), slot.getInt(16)), readText(slot.getLong(20), slot.getInt(28)));
+    }
+
+    /*
+     * Reads the State and Resolution of the slots from fromID on, without
+     * their texts, leaving the entries of empty slots null
+     */
+    private void readStates(int fromID, Bug.State[] states, Bug.Resolution[] types) throws IOException {
+        long pos = HEADER_SIZE + (long) fromID * SLOT_SIZE;
+        ByteBuffer block = ByteBuffer.allocate(states.length * SLOT_SIZE);
+        block.limit((int) Math.max(0, Math.min(block.capacity(), slotEnd - pos)));
+        if (!getSlots(block, pos)) {
+            throw new EOFException("Bug slots are missing");
+        }
+
+        for (int i = 0; i * SLOT_SIZE < block.limit(); i++) {
+            int slot = i * SLOT_SIZE;
+            if (isComplete(block, slot)) {
+                states[i] = STATES[block.get(slot + 1)];
+                types[i] = RESOLUTIONS[block.get(slot + 2)];
+            }
+        }
+    }
+
+    private Bug decodeSlot(ByteBuffer buf) throws IOException {
+        if (!isComplete(buf, buf.position())) {
+            return null;
+        }
+
+        buf.get();
+        Bug.State state = STATES[buf.get()];
+        Bug.Resolution type = RESOLUTIONS[buf.get()];
+        buf.get();
+        int id = buf.getInt();
+        String description = readText(buf.getLong(), buf.getInt());
+        String solution = readText(buf.getLong(), buf.getInt());
+
+        return Bug.restore(id, description, state, type, solution);
+    }
+
+    private int countSlots() throws IOException {
+        ByteBuffer block = ByteBuffer.allocate(BLOCK_SLOTS * SLOT_SIZE);
+        int count = 0;
+
+        for (long pos = HEADER_SIZE; pos < slotEnd; pos += block.capacity()) {
+            block.clear();
+            block.limit((int) Math.min(block.capacity(), slotEnd - pos));
+            if (!getSlots(block, pos)) {
+                throw new EOFException("Bug slots are missing");
+            }
+            for (int slot = 0; slot < block.limit(); slot += SLOT_SIZE) {
+                if (block.get(slot) != 0) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /*
+     * Returns false for an empty slot, and for a slot that was written before
+     * its texts reached the disk (a crash) or is corrupted: such a slot is
+     * left out as if it were empty
+     */
+    private boolean isComplete(ByteBuffer buf, int slot) throws IOException {
+        int state = buf.get(slot + 1);
+        int type = buf.get(slot + 2);
+        return buf.get(slot) != 0
+                && state >= 0 && state < STATES.length && type >= 0 && type < RESOLUTIONS.length
+                && isText(buf.getLong(slot + 8), buf.getInt(slot + 16))
+                && isText(buf.getLong(slot + 20), buf.getInt(slot + 28));
+    }
+
+    private boolean isText(long offset, int length) throws IOException {
+        return offset >= 0 && length >= 0 && offset + length <= textChannel.size();
+    }
+
+    private String readText(long offset, int length) throws IOException {
+        // A corrupted slot is not trusted with the allocation
+        if (!isText(offset, length)) {
+            throw new IOException("Bug text is outside of the text file");
+        }
+
+        ByteBuffer buf = ByteBuffer.allocate(length);
+        while (buf.hasRemaining()) {
+            if (textChannel.read(buf, offset + buf.position()) < 0) {
+                throw new EOFException("Bug text is missing");
+            }
+        }
+        return new String(buf.array(), StandardCharsets.UTF_8);
+    }
+
+    private void writeMembers() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (Map.Entry<String, Pair<String, Bugzilla.MemberType>> e : newMembers.entrySet()) {
+            writeMember(out, e.getKey(), e.getValue());
+        }
+
+        bytes.writeTo(memberOut);
+
+        lastCommitBytes += bytes.size();
+        newMembers.clear();
+    }
+
+    /*
+     * Frames the member as [payload length][payload][CRC32 of payload]
+     */
+    private static void writeMember(DataOutputStream out, String username,
+                                    Pair<String, Bugzilla.MemberType> member) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream record = new DataOutputStream(bytes);
+        SnapshotWriter.writeString(record, username);
+        SnapshotWriter.writeString(record, member.getLeft());
+        record.writeByte(member.getRight().ordinal());
+
+        byte[] payload = bytes.toByteArray();
+        out.writeInt(payload.length);
+        out.write(payload);
+        out.writeInt(LogStore.checksum(payload, 0, payload.length));
+    }
+
+    /*
+     * Reads the members up to the first incomplete or corrupted record
+     * (a write interrupted by a crash) and cuts off the rest of the file
+     */
+    private void readMembers() throws Exception {
+        long fileLength = new File(memberPath).length();
+        long validLength = 4;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(memberPath)));
+
+        try {
+            if (fileLength < 4 || in.readInt() != SnapshotWriter.MAGIC) {
+                in.close();
+                readUnframedMembers();
+                return;
+            }
+
+            while (true) {
+                int length;
+                byte[] payload;
+                int crc;
+
+                try {
+                    length = in.readInt();
+                    if (length <= 0 || length > fileLength - validLength - 8) {
+                        break;
+                    }
+                    payload = new byte[length];
+                    in.readFully(payload);
+                    crc = in.readInt();
+                } catch (EOFException ex) {
+                    break;
+                }
+
+                if (crc != LogStore.checksum(payload, 0, length)) {
+                    break;
+                }
+
+                DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload));
+                String username = SnapshotReader.readString(record);
+                String passwd = SnapshotReader.readString(record);
+                Bugzilla.MemberType type = SnapshotReader.readMemberType(record);
+                bz.memberTable().put(username, new ImmutablePair<String, Bugzilla.MemberType>(passwd, type));
+                validLength += length + 8;
+            }
+        } finally {
+            in.close();
+        }
+
+        if (validLength < fileLength) {
+            RandomAccessFile members = new RandomAccessFile(memberPath, "rw");
+            try {
+                members.setLength(validLength);
+            } finally {
+                members.close();
+            }
+        }
+    }
+
+    /*
+     * Reads a member file written before the records were framed, up to
+     * the first incomplete record, and rewrites it framed
+     */
+    private void readUnframedMembers() throws Exception {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(memberPath)));
+
+        try {
+            while (true) {
+                String username = SnapshotReader.readString(in);
+                String passwd = SnapshotReader.readString(in);
+                Bugzilla.MemberType type = SnapshotReader.readMemberType(in);
+                bz.memberTable().put(username, new ImmutablePair<String, Bugzilla.MemberType>(passwd, type));
+            }
+        } catch (IOException ex) {
+            // the end of the file, or the incomplete last record
+        } finally {
+            in.close();
+        }
+
+        File tmp = new File(memberPath + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+        try {
+            out.writeInt(SnapshotWriter.MAGIC);
+            for (Map.Entry<String, Pair<String, Bugzilla.MemberType>> e : bz.memberTable().entrySet()) {
+                writeMember(out, e.getKey(), e.getValue());
+            }
+        } finally {
+            out.close();
+        }
+        SnapshotStore.replaceFile(tmp, new File(memberPath));
+    }
+
+    private void writeProgress() throws Exception {
+        File tmp = new File(progressPath + ".tmp");
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(tmp));
+
+        try {
+            Map<String, Integer> inProgress = bz.progressTable();
+            SnapshotWriter.writeVarInt(out, inProgress.size());
+            for (Map.Entry<String, Integer> e : inProgress.entrySet()) {
+                SnapshotWriter.writeString(out, e.getKey());
+                out.writeInt(e.getValue());
+            }
+        } finally {
+            out.close();
+        }
+
+        SnapshotStore.replaceFile(tmp, new File(progressPath));
+        lastCommitBytes += tmp.length();
+        progressDirty = false;
+    }
+
+    private void readProgress() throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(progressPath)));
+
+        try {
+            for (int i = SnapshotReader.readVarInt(in); i > 0; i--) {
+                String username = SnapshotReader.readString(in);
+                bz.progressTable().put(username, in.readInt());
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private void openFiles() throws IOException {
+        slots = new RandomAccessFile(slotPath, "rw");
+        text = new RandomAccessFile(textPath, "rw");
+        slotChannel = slots.getChannel();
+        textChannel = text.getChannel();
+        textEnd = text.length();
+        slotEnd = Math.max(HEADER_SIZE, slots.length());
+        memberOut = new FileOutputStream(memberPath, true);
+        if (memberOut.getChannel().size() == 0) {
+            new DataOutputStream(memberOut).writeInt(SnapshotWriter.MAGIC);
+        }
+
+        if (slots.length() == 0) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(SnapshotWriter.MAGIC);
+            header.putInt(SLOT_SIZE);
+            header.putLong(END_FIELD, HEADER_SIZE);
+            header.rewind();
+            writeSlots(header, 0);
+            savedEnd = HEADER_SIZE;
+        }
+    }
+
+    private void closeFiles() throws IOException {
+        if (slots != null) {
+            slots.close();
+            text.close();
+            memberOut.close();
+            slots = null;
+            text = null;
+            slotsClosed();
+        }
+    }
+
+    static final int HEADER_SIZE = 32;
+    static final int SLOT_SIZE = 32;
+    static final int MARK_FIELD = 8;
+    static final int COUNT_FIELD = 12;
+    static final int END_FIELD = 16;
+    // Slots read at once when all are read
+    private static final int BLOCK_SLOTS = 2048;
+    static final int STATE_FIELD = 1;
+    static final int SOLUTION_FIELD = 20;
+    private static final Bug.State[] STATES = Bug.State.values();
+    private static final Bug.Resolution[] RESOLUTIONS = Bug.Resolution.values();
+    private static final long INDEX_INTERVAL = Long.getLong("bugzilla.indexInterval", 10 * 60 * 1000);
+
+    private Bugzilla bz;
+
+    private RandomAccessFile slots;
+    private RandomAccessFile text;
+    private FileChannel slotChannel;
+    private FileChannel textChannel;
+    private FileOutputStream memberOut;
+    private long textEnd;
+    private long slotEnd;
+    private long lastCommitBytes;
+
+    private final Map<Integer, Bug> dirtyBugs = new LinkedHashMap<Integer, Bug>();
+    private final Map<String, Pair<String, Bugzilla.MemberType>> newMembers =
+            new LinkedHashMap<String, Pair<String, Bugzilla.MemberType>>();
+    private boolean progressDirty;
+    private long indexSaved;
+    private int savedMark;
+    private int storedCount;
+    private int savedCount;
+    private long savedEnd;
+    private final boolean lazy;
+
+    private final String slotPath;
+    private final String textPath;
+    private final String memberPath;
+    private final String progressPath;
+    private final String indexPath;
+}
@@ -0,0 +1,47 @@
+import java.io.File;
+
+/*
+ * Converts a database file written with Java serialization (the old bl.bin
+ * format) into the binary snapshot format.
+ *
+ * Usage: java SnapshotConverter <input file> [output file]
+ * Without an output file the input file is replaced.
+ */
+public class SnapshotConverter {
+
+    public static void main(String[] args) {
+        if (args.length < 1 || args.length > 2) {
+            System.out.println("USAGE: java SnapshotConverter <input file> [output file]");
+            System.exit(1);
+        }
+
+        String input = args[0];
+        String output = args.length == 2 ? args[1] : args[0];
+
+        try {
+            long before = new File(input).length();
+            int bugCount = convert(input, output);
+            long after = new File(output).length();
+
+            System.out.println(String.format("Converted %d bugs: %d bytes -> %d bytes", bugCount, before, after));
+        } catch (Exception ex) {
+            ex.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    /*
+     * Returns the number of converted bugs
+     */
+    public static int convert(String input, String output) throws Exception {
+        if (SnapshotStore.isBinarySnapshot(input)) {
+            throw new IllegalArgumentException(input + " is already in the binary format");
+        }
+
+        Bugzilla bz = new Bugzilla(false);
+        SnapshotStore.readLegacySnapshot(bz, input);
+        SnapshotStore.writeSnapshot(bz, output);
+
+        return bz.bugTable().size();
+    }
+}
@@ -0,0 +1,279 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.apache.commons.lang3.tuple.Pair;
+
+/*
+ * Reads a snapshot written by SnapshotWriter into the Bugzilla tables.
+ * Version 1 snapshots have no bug ID high-water mark, versions 1 and 2
+ * have no text dictionary and plain texts, versions 1 to 3 have the tables
+ * one after the other instead of segments. Compressed texts are kept
+ * compressed by the bugs (see TextCodec).
+ *
+ * The segments of a version 4 snapshot are read from the stream in order
+ * and decoded on the ForkJoinPool, while the next ones are read.
+ */
+public class SnapshotReader {
+
+    public SnapshotReader(InputStream stream) {
+        in = new DataInputStream(new BufferedInputStream(stream, BUFFER_SIZE));
+    }
+
+    public void read(Bugzilla bz) throws IOException {
+        if (in.readInt() != SnapshotWriter.MAGIC) {
+            throw new IOException("Not a Bugzilla snapshot");
+        }
+
+        int version = in.readByte();
+        if (version < 1 || version > SnapshotWriter.VERSION) {
+            throw new IOException("Unsupported snapshot version " + version);
+        }
+
+        if (version >= 2) {
+            bz.idSequence().advanceTo(readVarInt(in));
+        }
+
+        TextCodec codec = null;
+        if (version >= 3) {
+            byte[] dictionary = new byte[readLength(in)];
+            in.readFully(dictionary);
+            codec = TextCodec.of(dictionary);
+            TextCodec.adopt(codec);
+        }
+
+        if (version >= 4) {
+            readSegments(bz, codec);
+            return;
+        }
+
+        Map<String, Pair<String, Bugzilla.MemberType>> members = bz.memberTable();
+        for (int i = readVarInt(in); i > 0; i--) {
+            String username = readString(in);
+            String passwd = readString(in);
+            members.put(username, new ImmutablePair<String, Bugzilla.MemberType>(passwd, readMemberType(in)));
+        }
+
+        BugStore bugs = bz.bugTable();
+        for (int i = readVarInt(in); i > 0; i--) {
+            bugs.put((codec != null) ? readBug(in, codec) : readBug(in));
+        }
+
+        Map<String, Integer> inProgress = bz.progressTable();
+        for (int i = readVarInt(in); i > 0; i--) {
+            String username = readString(in);
+            inProgress.put(username, in.readInt());
+        }
+    }
+
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private void readSegments(Bugzilla bz, TextCodec codec) throws IOException {
+        int segments = readVarInt(in);
+        Deque<DecodeSegment> decoding = new ArrayDeque<DecodeSegment>();
+
+        try {
+            for (int segment = 0; segment < segments; segment++) {
+                // Checked before it is allocated and handed to the pool
+                byte[] payload = new byte[readLength(in)];
+                in.readFully(payload);
+
+                if (segment == 0) {
+                    readTables(bz, new DataInputStream(new ByteArrayInputStream(payload)));
+                    continue;
+                }
+
+                if (decoding.size() == SnapshotWriter.WINDOW) {
+                    decoding.poll().finish();
+                }
+                decoding.add(new DecodeSegment(bz.bugTable(), payload, codec));
+                ForkJoinPool.commonPool().execute(decoding.peekLast());
+            }
+
+            while (!decoding.isEmpty()) {
+                decoding.poll().finish();
+            }
+        } finally {
+            // A failed load is cleared (see Bugzilla), nothing may be added after it
+            for (DecodeSegment task : decoding) {
+                task.quietlyJoin();
+            }
+        }
+    }
+
+    private static void readTables(Bugzilla bz, DataInput in) throws IOException {
+        Map<String, Pair<String, Bugzilla.MemberType>> members = bz.memberTable();
+        for (int i = readVarInt(in); i > 0; i--) {
+            String username = readString(in);
+            String passwd = readString(in);
+            members.put(username, new ImmutablePair<String, Bugzilla.MemberType>(passwd, readMemberType(in)));
+        }
+
+        Map<String, Integer> inProgress = bz.progressTable();
+        for (int i = readVarInt(in); i > 0; i--) {
+            String username = readString(in);
+            inProgress.put(username, in.readInt());
+        }
+    }
+
+    /*
+     * Decodes the bugs of a segment into the table on a ForkJoinPool thread
+     */
+    private static class DecodeSegment extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        DecodeSegment(BugStore bugs, byte[] payload, TextCodec codec) {
+            this.bugs = bugs;
+            this.payload = payload;
+            this.codec = codec;
+        }
+
+        protected void compute() {
+            try {
+                DataInputStream segment = new DataInputStream(new ByteArrayInputStream(payload));
+                for (int i = readVarInt(segment); i > 0; i--) {
+                    bugs.put(readBug(segment, codec));
+                }
+            } catch (IOException ex) {
+                failure = ex;
+            }
+        }
+
+        void finish() throws IOException {
+            join();
+            if (failure != null) {
+                throw failure;
+            }
+        }
+
+        private final BugStore bugs;
+        private final byte[] payload;
+        private final TextCodec codec;
+        private IOException failure;
+    }
+
+    /*
+     * Checks the first bytes of a stream for the snapshot magic number
+     */
+    static boolean hasMagic(byte[] header) {
+        return header.length >= 4 &&
+                ((header[0] & 0xFF) << 24 | (header[1] & 0xFF) << 16 |
+                        (header[2] & 0xFF) << 8 | (header[3] & 0xFF)) == SnapshotWriter.MAGIC;
+    }
+
+    static Bug readBug(DataInput in) throws IOException {
+        int id = in.readInt();
+        String description = readString(in);
+        Bug.State state = readState(in);
+        Bug.Resolution type = readResolution(in);
+        String solution = readString(in);
+        return new Bug(id, description, state, type, solution);
+    }
+
+    static Bug readBug(DataInput in, TextCodec codec) throws IOException {
+        int id = in.readInt();
+        Object description = readText(in, codec);
+        Bug.State state = readState(in);
+        Bug.Resolution type = readResolution(in);
+        Object solution = readText(in, codec);
+        return Bug.restore(id, description, state, type, solution);
+    }
+
+    /*
+     * Returns a String, or the compressed bytes as a bug keeps them
+     */
+    static Object readText(DataInput in, TextCodec codec) throws IOException {
+        int header = readVarInt(in);
+        int length = checkLength(in, header >>> 1);
+        if ((header & 1) == 0) {
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        byte[] packed = new byte[length + 1];
+        packed[0] = codec.id();
+        in.readFully(packed, 1, length);
+        return packed;
+    }
+
+    static Bugzilla.MemberType readMemberType(DataInput in) throws IOException {
+        return MEMBER_TYPES[readOrdinal(in, MEMBER_TYPES.length)];
+    }
+
+    static Bug.State readState(DataInput in) throws IOException {
+        return STATES[readOrdinal(in, STATES.length)];
+    }
+
+    static Bug.Resolution readResolution(DataInput in) throws IOException {
+        return RESOLUTIONS[readOrdinal(in, RESOLUTIONS.length)];
+    }
+
+    private static int readOrdinal(DataInput in, int count) throws IOException {
+        int ordinal = in.readByte();
+        if (ordinal < 0 || ordinal >= count) {
+            throw new IOException("Malformed enum ordinal " + ordinal);
+        }
+        return ordinal;
+    }
+
+    static String readString(DataInput in) throws IOException {
+        byte[] bytes = new byte[readLength(in)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /*
+     * Reads the length of the bytes that follow, see checkLength
+     */
+    static int readLength(DataInput in) throws IOException {
+        return checkLength(in, readVarInt(in));
+    }
+
+    /*
+     * Fails with an IOException when a length read from a corrupted file is
+     * longer than the rest of the input, before anything is allocated for it.
+     * The inputs here are files and byte arrays, whose streams know the
+     * bytes left.
+     */
+    static int checkLength(DataInput in, int length) throws IOException {
+        if (length < 0 || (in instanceof InputStream && length > ((InputStream) in).available())) {
+            throw new EOFException("Length " + length + " is past the end of the input");
+        }
+        return length;
+    }
+
+    static int readVarInt(DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable-length integer");
+    }
+
+    private static final Bugzilla.MemberType[] MEMBER_TYPES = Bugzilla.MemberType.values();
+    private static final Bug.State[] STATES = Bug.State.values();
+    private static final Bug.Resolution[] RESOLUTIONS = Bug.Resolution.values();
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final DataInputStream in;
+}
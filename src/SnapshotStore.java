@@ -0,0 +1,194 @@
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+
+import org.apache.commons.lang3.tuple.Pair;
+
+/*
+ * The store keeps the whole database in a single file and rewrites
+ * the file on every commit.
+ */
+public class SnapshotStore implements BugzillaStore {
+
+    public SnapshotStore(String path) {
+        filePath = path;
+    }
+
+    public void open(Bugzilla b) throws Exception {
+        bz = b;
+        readSnapshot(bz, filePath);
+    }
+
+    public synchronized void reset() throws Exception {
+        deleteFile(filePath);
+        writeSnapshot(bz, filePath);
+    }
+
+    public boolean exists() {
+        return fileExists(filePath);
+    }
+
+    public void memberRegistered(String username, String passwd, Bugzilla.MemberType type) {
+    }
+
+    public void bugChanged(Bug bug) {
+    }
+
+    public void developerAssigned(String username, int bugID) {
+    }
+
+    public void developerReleased(String username) {
+    }
+
+    public synchronized void commit() throws Exception {
+        long started = System.nanoTime();
+        writeSnapshot(bz, filePath);
+        bz.getMetrics().committed(new File(filePath).length(), System.nanoTime() - started);
+    }
+
+    public void sync() throws Exception {
+        // writeSnapshot already forces every snapshot to the disk
+    }
+
+    /*
+     * Writes members, bugs and inProgress maps of the given Bugzilla
+     * in the binary snapshot format (see SnapshotWriter).
+     * The snapshot is written to a temporary file and forced to the disk
+     * first, so an interrupted write never destroys the previous snapshot.
+     * The text index of the bugs is saved next to it (see indexPath).
+     */
+    public static void writeSnapshot(Bugzilla bz, String path) throws Exception {
+        long started = System.nanoTime();
+        File tmp = new File(path + ".tmp");
+
+        try {
+            FileOutputStream fileOut = new FileOutputStream(tmp);
+            SnapshotWriter out = new SnapshotWriter(fileOut);
+            try {
+                out.write(bz);
+                fileOut.getFD().sync();
+            } finally {
+                out.close();
+            }
+
+            replaceFile(tmp, new File(path));
+            bz.textIndex().save(indexPath(path));
+            bz.getMetrics().snapshotWritten(new File(path).length() + new File(indexPath(path)).length(),
+                    System.nanoTime() - started);
+
+        } catch (Exception ex) {
+            ex.printStackTrace();
+            throw ex;
+
+        }
+    }
+
+    /*
+     * Reads a snapshot into the given Bugzilla. Files written with Java
+     * serialization by the earlier versions are still accepted.
+     */
+    public static void readSnapshot(Bugzilla bz, String path) throws Exception {
+
+        try {
+            if (!isBinarySnapshot(path)) {
+                readLegacySnapshot(bz, path);
+                return;
+            }
+
+            SnapshotReader in = new SnapshotReader(new FileInputStream(path));
+            try {
+                in.read(bz);
+            } finally {
+                in.close();
+            }
+
+            readIndex(bz, indexPath(path));
+
+        } catch (Exception ex) {
+            ex.printStackTrace();
+            throw ex;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public static void readLegacySnapshot(Bugzilla bz, String path) throws Exception {
+        FileInputStream fileIn = new FileInputStream(path);
+        ObjectInputStream in = new ObjectInputStream(fileIn);
+
+        bz.memberTable().putAll((Map<String, Pair<String, Bugzilla.MemberType>>) in.readObject());
+        for (Bug bug : ((Map<Integer, Bug>) in.readObject()).values()) {
+            bz.bugTable().put(bug);
+        }
+        bz.progressTable().putAll((Map<String, Integer>) in.readObject());
+
+        in.close();
+        fileIn.close();
+    }
+
+    public static boolean isBinarySnapshot(String path) throws IOException {
+        byte[] header = new byte[4];
+        DataInputStream in = new DataInputStream(new FileInputStream(path));
+        try {
+            in.readFully(header);
+        } catch (EOFException ex) {
+            return false;
+        } finally {
+            in.close();
+        }
+        return SnapshotReader.hasMagic(header);
+    }
+
+    /*
+     * Loads the saved text index. A missing or damaged index is not an error,
+     * Bugzilla indexes the bugs that the index does not cover (TextIndex.sync).
+     */
+    static void readIndex(Bugzilla bz, String path) {
+        if (!fileExists(path)) {
+            return;
+        }
+
+        try {
+            bz.textIndex().load(path);
+        } catch (IOException ex) {
+            ex.printStackTrace();
+            bz.textIndex().clear();
+        }
+    }
+
+    /*
+     * The text index of "bl.bin" is kept in "bl.idx"
+     */
+    static String indexPath(String snapshotPath) {
+        String base = snapshotPath.endsWith(".bin") ?
+                snapshotPath.substring(0, snapshotPath.length() - 4) : snapshotPath;
+        return base + ".idx";
+    }
+
+    public static boolean fileExists(String path) {
+        File f = new File(path);
+        return (f.exists() && !f.isDirectory());
+    }
+
+    public static void deleteFile(String path) throws Exception {
+        File f = new File(path);
+        if (f.exists() && !f.delete()) {
+            throw new IOException("Cannot delete " + path);
+        }
+    }
+
+    static void replaceFile(File from, File to) throws Exception {
+        Files.move(from.toPath(), to.toPath(),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Bugzilla bz;
+    private final String filePath;
+}
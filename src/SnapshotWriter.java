@@ -0,0 +1,209 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.apache.commons.lang3.tuple.Pair;
+
+/*
+ * Writes the Bugzilla tables in the binary snapshot format:
+ *
+ *   magic "BZDB", format version (byte)
+ *   bug ID high-water mark (see BugIdSequence)
+ *   text dictionary: length, bytes (see TextCodec, empty for none)
+ *   segments: count, then per segment: length, payload
+ *
+ * The payload of the first segment is the small tables:
+ *   members:    count, then per member: username, password, MemberType ordinal (byte)
+ *   inProgress: count, then per developer: username, bug ID (int)
+ * and of every other segment up to SEGMENT_BUGS bugs of a range of IDs:
+ *   bugs:       count, then per bug: ID (int), description text, State ordinal (byte),
+ *               Resolution ordinal (byte), solution text
+ *
+ * Counts, lengths and string lengths are unsigned variable-length integers,
+ * strings are UTF-8. A text is its length shifted left by one, with the
+ * low bit set if the bytes are compressed with the dictionary (the texts
+ * the bugs keep compressed are written as they are). SnapshotReader reads
+ * the format back.
+ *
+ * The segments do not depend on each other, so they are encoded on the
+ * ForkJoinPool (at most WINDOW ahead of the one being written) and
+ * SnapshotReader decodes them there too.
+ */
+public class SnapshotWriter {
+
+    public SnapshotWriter(OutputStream stream) {
+        out = new DataOutputStream(new BufferedOutputStream(stream, BUFFER_SIZE));
+    }
+
+    public void write(Bugzilla bz) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        writeVarInt(out, bz.idSequence().highWaterMark());
+
+        TextCodec codec = TextCodec.current();
+        writeVarInt(out, codec.dictionary().length);
+        out.write(codec.dictionary());
+
+        // The tables may change meanwhile (see LogStore.checkpoint), the counts must not be wrong
+        List<Bug> bugs = new ArrayList<Bug>(bz.bugTable().values());
+        int segments = (bugs.size() + SEGMENT_BUGS - 1) / SEGMENT_BUGS;
+        writeVarInt(out, 1 + segments);
+        writeSegment(tablesSegment(bz));
+
+        Deque<EncodeSegment> encoding = new ArrayDeque<EncodeSegment>();
+        int next = 0;
+        for (int segment = 0; segment < segments; segment++) {
+            while (next < segments && encoding.size() < WINDOW) {
+                List<Bug> part = bugs.subList(next * SEGMENT_BUGS, Math.min(bugs.size(), (next + 1) * SEGMENT_BUGS));
+                encoding.add(new EncodeSegment(part, codec));
+                ForkJoinPool.commonPool().execute(encoding.peekLast());
+                next++;
+            }
+            writeSegment(encoding.poll().result());
+        }
+
+        out.flush();
+    }
+
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private void writeSegment(ByteArrayOutputStream segment) throws IOException {
+        writeVarInt(out, segment.size());
+        segment.writeTo(out);
+    }
+
+    private static ByteArrayOutputStream tablesSegment(Bugzilla bz) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream segment = new DataOutputStream(bytes);
+
+        List<Map.Entry<String, Pair<String, Bugzilla.MemberType>>> members =
+                new ArrayList<Map.Entry<String, Pair<String, Bugzilla.MemberType>>>(bz.memberTable().entrySet());
+        writeVarInt(segment, members.size());
+        for (Map.Entry<String, Pair<String, Bugzilla.MemberType>> e : members) {
+            writeString(segment, e.getKey());
+            writeString(segment, e.getValue().getLeft());
+            segment.writeByte(e.getValue().getRight().ordinal());
+        }
+
+        List<Map.Entry<String, Integer>> inProgress =
+                new ArrayList<Map.Entry<String, Integer>>(bz.progressTable().entrySet());
+        writeVarInt(segment, inProgress.size());
+        for (Map.Entry<String, Integer> e : inProgress) {
+            writeString(segment, e.getKey());
+            segment.writeInt(e.getValue());
+        }
+        return bytes;
+    }
+
+    /*
+     * Encodes the bugs of a segment on a ForkJoinPool thread
+     */
+    private static class EncodeSegment extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        EncodeSegment(List<Bug> bugs, TextCodec codec) {
+            this.bugs = bugs;
+            this.codec = codec;
+        }
+
+        protected void compute() {
+            try {
+                DataOutputStream segment = new DataOutputStream(bytes);
+                writeVarInt(segment, bugs.size());
+                for (Bug bug : bugs) {
+                    writeBug(segment, bug, codec);
+                }
+            } catch (IOException ex) {
+                failure = ex;
+            }
+        }
+
+        ByteArrayOutputStream result() throws IOException {
+            join();
+            if (failure != null) {
+                throw failure;
+            }
+            return bytes;
+        }
+
+        private final List<Bug> bugs;
+        private final TextCodec codec;
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(SEGMENT_BUGS * 64);
+        private IOException failure;
+    }
+
+    static void writeBug(DataOutput out, Bug bug) throws IOException {
+        out.writeInt(bug.getID());
+        writeString(out, bug.getBugDescription());
+        out.writeByte(bug.getState().ordinal());
+        out.writeByte(bug.getSolutionType().ordinal());
+        writeString(out, bug.getSolutionInfo());
+    }
+
+    static void writeBug(DataOutput out, Bug bug, TextCodec codec) throws IOException {
+        out.writeInt(bug.getID());
+        writeText(out, bug.descriptionText(), codec);
+        out.writeByte(bug.getState().ordinal());
+        out.writeByte(bug.getSolutionType().ordinal());
+        writeText(out, bug.solutionText(), codec);
+    }
+
+    /*
+     * Writes a text kept by a bug (see Bug.packText), compressed only if the
+     * bug keeps it compressed with the codec of the snapshot
+     */
+    static void writeText(DataOutput out, Object text, TextCodec codec) throws IOException {
+        if (text instanceof byte[] && ((byte[]) text)[0] == codec.id()) {
+            byte[] packed = (byte[]) text;
+            writeVarInt(out, (packed.length - 1) << 1 | 1);
+            out.write(packed, 1, packed.length - 1);
+            return;
+        }
+
+        byte[] bytes = Bug.unpackText(text).getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length << 1);
+        out.write(bytes);
+    }
+
+    static void writeString(DataOutput out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length);
+        out.write(bytes);
+    }
+
+    /*
+     * Writes a non-negative int in 7-bit groups, low bits first.
+     * Values below 128 take a single byte.
+     */
+    static void writeVarInt(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    static final int MAGIC = 0x425A4442;
+    static final int VERSION = 4;
+    static final int SEGMENT_BUGS = 8192;
+    // Segments encoded or decoded ahead of the stream
+    static final int WINDOW = 2 * ForkJoinPool.getCommonPoolParallelism() + 1;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final DataOutputStream out;
+}
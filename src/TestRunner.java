@@ -5,7 +5,7 @@ import org.junit.runner.notification.Failure;
 
 public class TestRunner {
     public static void main(String[] args) {
-        Result result = JUnitCore.runClasses(ProgramTest.class);
+        Result result = JUnitCore.runClasses(ProgramTest.class, ConcurrencyTest.class);
         for (Failure failure : result.getFailures()) {
             System.out.println(failure.toString());
         }
@@ -0,0 +1,273 @@
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/*
+ * Compresses the texts of the bugs (descriptions and solutions) with
+ * Deflate, optionally with a preset dictionary of the words common in the
+ * bugs (see train). A bug keeps the compressed bytes and inflates them only
+ * when the text is asked for (see Bug.unpackText).
+ *
+ * The system property "bugzilla.compressText" chooses which texts are
+ * compressed:
+ *   off      - none (default)
+ *   verified - the texts of the VERIFIED bugs, which are rarely opened again
+ *   all      - every text of at least MIN_LENGTH characters
+ * A text is only kept compressed if that makes it smaller.
+ *
+ * A compressed text is the byte array:
+ *   codec ID (byte), String.hashCode of the text (int), Deflate data
+ * The hash lets the text index check a bug without inflating it (see
+ * Bug.textHash). The codec ID finds the dictionary again: every codec is
+ * registered under an ID (1..255) for the lifetime of the JVM, one per
+ * distinct dictionary. The snapshot keeps the dictionary of the current
+ * codec (see SnapshotWriter).
+ */
+public class TextCodec {
+
+    public enum Mode {
+        OFF,
+        VERIFIED,
+        ALL
+    }
+
+    private TextCodec(byte id, byte[] dictionary) {
+        this.id = id;
+        this.dictionary = dictionary;
+    }
+
+    /*
+     * Returns the codec of the dictionary (an empty one for none),
+     * registering it when it is new
+     */
+    static synchronized TextCodec of(byte[] dictionary) {
+        for (int i = 1; i <= registered; i++) {
+            if (Arrays.equals(CODECS[i].dictionary, dictionary)) {
+                return CODECS[i];
+            }
+        }
+        if (registered == CODECS.length - 1) {
+            throw new IllegalStateException("Too many text dictionaries");
+        }
+
+        registered++;
+        CODECS[registered] = new TextCodec((byte) registered, dictionary.clone());
+        return CODECS[registered];
+    }
+
+    /*
+     * The codec that compresses the new texts
+     */
+    static TextCodec current() {
+        return current;
+    }
+
+    static void use(TextCodec codec) {
+        current = codec;
+    }
+
+    /*
+     * Uses the codec of a loaded snapshot unless a dictionary is in use
+     */
+    static void adopt(TextCodec codec) {
+        if (!current.hasDictionary()) {
+            current = codec;
+        }
+    }
+
+    static Mode mode() {
+        return mode;
+    }
+
+    static void setMode(Mode m) {
+        mode = m;
+    }
+
+    byte id() {
+        return id;
+    }
+
+    byte[] dictionary() {
+        return dictionary;
+    }
+
+    boolean hasDictionary() {
+        return dictionary.length > 0;
+    }
+
+    /*
+     * Returns the compressed text, or null if it would not be smaller than
+     * the UTF-8 bytes
+     */
+    byte[] compress(String text) {
+        byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+        Buffers buffers = BUFFERS.get();
+        byte[] out = buffers.output(utf8.length);
+
+        Deflater deflater = buffers.deflater;
+        deflater.reset();
+        if (hasDictionary()) {
+            deflater.setDictionary(dictionary);
+        }
+        deflater.setInput(utf8);
+        deflater.finish();
+        int length = deflater.deflate(out);
+        if (!deflater.finished() || HEADER + length >= utf8.length) {
+            return null;
+        }
+
+        byte[] packed = new byte[HEADER + length];
+        packed[0] = id;
+        int hash = text.hashCode();
+        packed[1] = (byte) (hash >>> 24);
+        packed[2] = (byte) (hash >>> 16);
+        packed[3] = (byte) (hash >>> 8);
+        packed[4] = (byte) hash;
+        System.arraycopy(out, 0, packed, HEADER, length);
+        return packed;
+    }
+
+    static String decompress(byte[] packed) {
+        TextCodec codec = CODECS[packed[0] & 0xFF];
+        Buffers buffers = BUFFERS.get();
+        Inflater inflater = buffers.inflater;
+        inflater.reset();
+        if (codec.hasDictionary()) {
+            inflater.setDictionary(codec.dictionary);
+        }
+        inflater.setInput(packed, HEADER, packed.length - HEADER);
+
+        byte[] out = buffers.output(4 * packed.length);
+        int length = 0;
+        try {
+            while (!inflater.finished()) {
+                if (length == out.length) {
+                    // Keeps the bytes inflated so far
+                    out = buffers.output(2 * out.length);
+                }
+                int n = inflater.inflate(out, length, out.length - length);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalStateException("Truncated compressed text");
+                }
+                length += n;
+            }
+        } catch (DataFormatException ex) {
+            throw new IllegalStateException("Corrupt compressed text", ex);
+        }
+        return new String(out, 0, length, StandardCharsets.UTF_8);
+    }
+
+    static boolean isCompressed(byte[] packed) {
+        return packed[0] != 0;
+    }
+
+    /*
+     * The String.hashCode of the compressed text
+     */
+    static int hash(byte[] packed) {
+        return (packed[1] & 0xFF) << 24 | (packed[2] & 0xFF) << 16 | (packed[3] & 0xFF) << 8 | (packed[4] & 0xFF);
+    }
+
+    /*
+     * Builds a dictionary of at most "size" bytes from the phrases (one to
+     * PHRASE_WORDS words) that occur more than once in the given texts. The
+     * phrases that save the most (count * length) are put at the end, where
+     * Deflate reaches them with the shortest distances; a phrase already
+     * contained in a chosen one is skipped.
+     */
+    static byte[] train(Iterable<String> texts, int size) {
+        final Map<String, Integer> counts = new HashMap<String, Integer>();
+        for (String text : texts) {
+            String[] words = text.split("\\s+");
+            for (int i = 0; i < words.length; i++) {
+                StringBuilder phrase = new StringBuilder();
+                for (int n = 0; n < PHRASE_WORDS && i + n < words.length; n++) {
+                    phrase.append(words[i + n]).append(' ');
+                    if (phrase.length() > 3) {
+                        String key = phrase.toString();
+                        Integer count = counts.get(key);
+                        counts.put(key, (count == null) ? 1 : count + 1);
+                    }
+                }
+            }
+        }
+
+        List<String> phrases = new ArrayList<String>();
+        for (Map.Entry<String, Integer> e : counts.entrySet()) {
+            if (e.getValue() > 1) {
+                phrases.add(e.getKey());
+            }
+        }
+        Collections.sort(phrases, new Comparator<String>() {
+            public int compare(String a, String b) {
+                return Long.compare((long) counts.get(b) * b.length(), (long) counts.get(a) * a.length());
+            }
+        });
+
+        List<String> chosen = new ArrayList<String>();
+        StringBuilder all = new StringBuilder();
+        int length = 0;
+        // Every candidate is searched in the chosen ones, so only the best are tried
+        for (String phrase : phrases.subList(0, Math.min(phrases.size(), size))) {
+            int bytes = phrase.getBytes(StandardCharsets.UTF_8).length;
+            if (length + bytes > size) {
+                continue;
+            }
+            if (all.indexOf(phrase) < 0) {
+                chosen.add(phrase);
+                all.append(phrase);
+                length += bytes;
+            }
+        }
+
+        StringBuilder dictionary = new StringBuilder();
+        for (int i = chosen.size() - 1; i >= 0; i--) {
+            dictionary.append(chosen.get(i));
+        }
+        return dictionary.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /*
+     * Deflater and Inflater hold native memory, every thread reuses its own
+     */
+    private static class Buffers {
+        byte[] output(int size) {
+            if (out.length < size) {
+                out = Arrays.copyOf(out, Math.max(size, 2 * out.length));
+            }
+            return out;
+        }
+
+        final Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+        final Inflater inflater = new Inflater(true);
+        private byte[] out = new byte[256];
+    }
+
+    // The texts shorter than this are not compressed
+    static final int MIN_LENGTH = 24;
+    private static final int PHRASE_WORDS = 4;
+    static final int HEADER = 5;
+
+    private static final TextCodec[] CODECS = new TextCodec[256];
+    private static int registered;
+
+    private static final ThreadLocal<Buffers> BUFFERS = new ThreadLocal<Buffers>() {
+        protected Buffers initialValue() {
+            return new Buffers();
+        }
+    };
+
+    private static volatile TextCodec current = of(new byte[0]);
+    private static volatile Mode mode = Mode.valueOf(System.getProperty("bugzilla.compressText", "off").toUpperCase());
+
+    private final byte id;
+    private final byte[] dictionary;
+}
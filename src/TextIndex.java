@@ -0,0 +1,514 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/*
+ * Inverted index over the descriptions and solutions of the bugs.
+ * For every word (term) the index keeps a posting list: the IDs of the bugs
+ * that contain the word, in increasing order, and the number of times the
+ * word occurs in each of them.
+ *
+ * A query is split into words like the texts; the bugs that contain any of
+ * the words are ranked by TF-IDF (occurrences in the bug times log(1 + bugs
+ * / bugs with the word)) and the best ones are returned. The posting lists
+ * of the query words are merged in one pass, so a query costs the length
+ * of its posting lists and does not depend on the number of bugs.
+ *
+ * Bugzilla adds a bug when it is submitted and replaces the solution words
+ * when it is resolved. The index is saved next to the snapshot and checked
+ * against the loaded bugs (see sync), bugs changed after the save are
+ * indexed again. While the bugs are loaded on demand the check waits for
+ * the first use of the index, and takes the hashes of the bugs that were
+ * not loaded from the store (see BugStore.textHash), so only the bugs that
+ * are missing from the index or changed are loaded.
+ */
+public class TextIndex {
+
+    /*
+     * Returns the IDs of at most "limit" bugs matching the query,
+     * the best match first
+     */
+    public int[] search(String query, int limit) {
+        syncPending();
+        Set<String> terms = new LinkedHashSet<String>(tokenize(query));
+
+        lock.readLock().lock();
+        try {
+            List<Postings> lists = new ArrayList<Postings>();
+            List<Double> weights = new ArrayList<Double>();
+            for (String term : terms) {
+                Postings postings = index.get(term);
+                if (postings != null && postings.size > 0) {
+                    lists.add(postings);
+                    weights.add(Math.log(1.0 + (double) documents / postings.size));
+                }
+            }
+
+            return topScores(lists, weights, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int termCount() {
+        syncPending();
+        lock.readLock().lock();
+        try {
+            return index.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int documentCount() {
+        syncPending();
+        lock.readLock().lock();
+        try {
+            return documents;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /*
+     * Splits the text into lower case words of letters and digits
+     */
+    public static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<String>();
+        StringBuilder word = new StringBuilder();
+
+        for (int i = 0; i <= text.length(); i++) {
+            char c = (i < text.length()) ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                word.append(Character.toLowerCase(c));
+            } else if (word.length() > 0) {
+                tokens.add(word.toString());
+                word.setLength(0);
+            }
+        }
+        return tokens;
+    }
+
+    void add(Bug bug) {
+        lock.writeLock().lock();
+        try {
+            addTerms(bug.getID(), bug.getBugDescription());
+            addTerms(bug.getID(), bug.getSolutionInfo());
+            setHash(bug.getID(), bug.textHash());
+            if (!indexed.get(bug.getID())) {
+                indexed.set(bug.getID());
+                documents++;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /*
+     * Replaces the words of the old solution of the bug with the words of the new one
+     */
+    void solutionChanged(Bug bug, String oldSolution) {
+        lock.writeLock().lock();
+        try {
+            if (pending != null || !indexed.get(bug.getID())) {
+                // Not checked yet (see sync), its old hash makes it indexed whole later
+                return;
+            }
+            for (Map.Entry<String, Integer> e : countTerms(oldSolution).entrySet()) {
+                Postings postings = index.get(e.getKey());
+                if (postings != null) {
+                    postings.remove(bug.getID(), e.getValue());
+                    if (postings.size == 0) {
+                        index.remove(e.getKey());
+                    }
+                }
+            }
+            addTerms(bug.getID(), bug.getSolutionInfo());
+            setHash(bug.getID(), bug.textHash());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /*
+     * Brings the index up to date with the bugs, or puts it off until the
+     * first use of the index while the bugs are loaded on demand
+     */
+    void sync(BugStore bugs) {
+        if (!bugs.isFullyLoaded()) {
+            pending = bugs;
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            check(bugs);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /*
+     * Returns false while the check of the index is put off (see sync)
+     */
+    boolean isSynced() {
+        return pending == null;
+    }
+
+    /*
+     * Only the bugs that are missing from the index or changed since it was
+     * saved are indexed again; the words of the changed bugs are first
+     * removed in one pass over the posting lists. Runs under the write lock.
+     */
+    private void check(BugStore bugs) {
+        BitSet stale = new BitSet();
+
+        for (int id = indexed.nextSetBit(0); id >= 0; id = indexed.nextSetBit(id + 1)) {
+            Integer hash = bugs.textHash(id);
+            if (hash == null || hashes[id] != hash) {
+                stale.set(id);
+            }
+        }
+
+        if (!stale.isEmpty()) {
+            Iterator<Postings> it = index.values().iterator();
+            while (it.hasNext()) {
+                Postings postings = it.next();
+                postings.removeAll(stale);
+                if (postings.size == 0) {
+                    it.remove();
+                }
+            }
+            indexed.andNot(stale);
+            documents = indexed.cardinality();
+        }
+
+        // Loads only the stored bugs that are not indexed
+        int limit = bugs.limit();
+        for (int id = 0; id < limit; id++) {
+            if (!indexed.get(id)) {
+                Bug bug = bugs.get(id);
+                if (bug != null) {
+                    add(bug);
+                }
+            }
+        }
+        pending = null;
+    }
+
+    /*
+     * Runs the check put off by sync
+     */
+    private void syncPending() {
+        BugStore bugs = pending;
+        if (bugs != null) {
+            lock.writeLock().lock();
+            try {
+                if (pending == bugs) {
+                    check(bugs);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    void clear() {
+        lock.writeLock().lock();
+        try {
+            pending = null;
+            index.clear();
+            indexed.clear();
+            hashes = new int[0];
+            documents = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /*
+     * Writes the index to the given file (through a temporary file):
+     *   magic "BZIX", version (byte),
+     *   indexed bugs: count, then per bug: ID delta, text hash (int)
+     *   terms: count, then per term: word, posting count,
+     *          then per posting: ID delta, occurrences
+     * Counts, deltas and occurrences are variable-length integers.
+     */
+    void save(String path) throws Exception {
+        syncPending();
+        File tmp = new File(path + ".tmp");
+        FileOutputStream fileOut = new FileOutputStream(tmp);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut, 64 * 1024));
+
+        lock.readLock().lock();
+        try {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+
+            SnapshotWriter.writeVarInt(out, documents);
+            int last = 0;
+            for (int id = indexed.nextSetBit(0); id >= 0; id = indexed.nextSetBit(id + 1)) {
+                SnapshotWriter.writeVarInt(out, id - last);
+                out.writeInt(hashes[id]);
+                last = id;
+            }
+
+            SnapshotWriter.writeVarInt(out, index.size());
+            for (Map.Entry<String, Postings> e : index.entrySet()) {
+                Postings postings = e.getValue();
+                SnapshotWriter.writeString(out, e.getKey());
+                SnapshotWriter.writeVarInt(out, postings.size);
+                last = 0;
+                for (int i = 0; i < postings.size; i++) {
+                    SnapshotWriter.writeVarInt(out, postings.ids[i] - last);
+                    SnapshotWriter.writeVarInt(out, postings.counts[i]);
+                    last = postings.ids[i];
+                }
+            }
+
+            out.flush();
+            fileOut.getFD().sync();
+        } finally {
+            lock.readLock().unlock();
+            out.close();
+        }
+
+        SnapshotStore.replaceFile(tmp, new File(path));
+    }
+
+    /*
+     * Replaces the contents of the index with the saved index
+     */
+    void load(String path) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(path), 64 * 1024));
+
+        lock.writeLock().lock();
+        try {
+            if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+                throw new IOException("Not a Bugzilla text index");
+            }
+
+            index.clear();
+            indexed.clear();
+            hashes = new int[0];
+
+            documents = SnapshotReader.readVarInt(in);
+            int id = 0;
+            for (int i = 0; i < documents; i++) {
+                id += SnapshotReader.readVarInt(in);
+                indexed.set(id);
+                setHash(id, in.readInt());
+            }
+
+            for (int t = SnapshotReader.readVarInt(in); t > 0; t--) {
+                String term = SnapshotReader.readString(in);
+                int count = SnapshotReader.readVarInt(in);
+                Postings postings = new Postings(count);
+                id = 0;
+                for (int i = 0; i < count; i++) {
+                    id += SnapshotReader.readVarInt(in);
+                    postings.append(id, SnapshotReader.readVarInt(in));
+                }
+                index.put(term, postings);
+            }
+        } finally {
+            lock.writeLock().unlock();
+            in.close();
+        }
+    }
+
+    private void addTerms(int bugID, String text) {
+        for (Map.Entry<String, Integer> e : countTerms(text).entrySet()) {
+            Postings postings = index.get(e.getKey());
+            if (postings == null) {
+                postings = new Postings(1);
+                index.put(e.getKey(), postings);
+            }
+            postings.add(bugID, e.getValue());
+        }
+    }
+
+    private static Map<String, Integer> countTerms(String text) {
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        for (String token : tokenize(text)) {
+            Integer count = counts.get(token);
+            counts.put(token, (count == null) ? 1 : count + 1);
+        }
+        return counts;
+    }
+
+    private void setHash(int bugID, int hash) {
+        if (bugID >= hashes.length) {
+            hashes = Arrays.copyOf(hashes, Math.max(bugID + 1, hashes.length * 2));
+        }
+        hashes[bugID] = hash;
+    }
+
+    /*
+     * Merges the posting lists in the order of the bug IDs and keeps the
+     * "limit" best scores in a heap
+     */
+    private static int[] topScores(List<Postings> lists, List<Double> weights, int limit) {
+        PriorityQueue<Hit> best = new PriorityQueue<Hit>();
+        int[] pos = new int[lists.size()];
+
+        while (true) {
+            int id = Integer.MAX_VALUE;
+            for (int t = 0; t < lists.size(); t++) {
+                if (pos[t] < lists.get(t).size) {
+                    id = Math.min(id, lists.get(t).ids[pos[t]]);
+                }
+            }
+            if (id == Integer.MAX_VALUE) {
+                break;
+            }
+
+            double score = 0;
+            for (int t = 0; t < lists.size(); t++) {
+                Postings postings = lists.get(t);
+                if (pos[t] < postings.size && postings.ids[pos[t]] == id) {
+                    score += postings.counts[pos[t]] * weights.get(t);
+                    pos[t]++;
+                }
+            }
+
+            if (best.size() < limit) {
+                best.add(new Hit(id, score));
+            } else if (score > best.peek().score) {
+                best.poll();
+                best.add(new Hit(id, score));
+            }
+        }
+
+        int[] result = new int[best.size()];
+        for (int i = result.length - 1; i >= 0; i--) {
+            result[i] = best.poll().bugID;
+        }
+        return result;
+    }
+
+    /*
+     * Heap entry, the worst hit first (lower score, then higher ID)
+     */
+    private static class Hit implements Comparable<Hit> {
+        Hit(int id, double value) {
+            bugID = id;
+            score = value;
+        }
+
+        public int compareTo(Hit other) {
+            if (score != other.score) {
+                return (score < other.score) ? -1 : 1;
+            }
+            return Integer.compare(other.bugID, bugID);
+        }
+
+        final int bugID;
+        final double score;
+    }
+
+    /*
+     * Bug IDs in increasing order and the occurrences of the term in each bug
+     */
+    private static class Postings {
+        Postings(int capacity) {
+            ids = new int[Math.max(1, capacity)];
+            counts = new int[ids.length];
+        }
+
+        void append(int bugID, int count) {
+            grow();
+            ids[size] = bugID;
+            counts[size] = count;
+            size++;
+        }
+
+        void add(int bugID, int count) {
+            // New bugs have the highest IDs, so this is usually an append
+            if (size == 0 || ids[size - 1] < bugID) {
+                append(bugID, count);
+                return;
+            }
+
+            int i = Arrays.binarySearch(ids, 0, size, bugID);
+            if (i >= 0) {
+                counts[i] += count;
+                return;
+            }
+
+            i = -i - 1;
+            grow();
+            System.arraycopy(ids, i, ids, i + 1, size - i);
+            System.arraycopy(counts, i, counts, i + 1, size - i);
+            ids[i] = bugID;
+            counts[i] = count;
+            size++;
+        }
+
+        void remove(int bugID, int count) {
+            int i = Arrays.binarySearch(ids, 0, size, bugID);
+            if (i < 0) {
+                return;
+            }
+
+            counts[i] -= count;
+            if (counts[i] <= 0) {
+                System.arraycopy(ids, i + 1, ids, i, size - i - 1);
+                System.arraycopy(counts, i + 1, counts, i, size - i - 1);
+                size--;
+            }
+        }
+
+        void removeAll(BitSet bugIDs) {
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                if (!bugIDs.get(ids[i])) {
+                    ids[kept] = ids[i];
+                    counts[kept] = counts[i];
+                    kept++;
+                }
+            }
+            size = kept;
+        }
+
+        private void grow() {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                counts = Arrays.copyOf(counts, size * 2);
+            }
+        }
+
+        int[] ids;
+        int[] counts;
+        int size;
+    }
+
+    static final int MAGIC = 0x425A4958;
+    static final int VERSION = 1;
+
+    private final Map<String, Postings> index = new HashMap<String, Postings>();
+    private final BitSet indexed = new BitSet();
+    private int[] hashes = new int[0];
+    private int documents;
+    // The bugs to check on the first use (see sync)
+    private volatile BugStore pending;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+}
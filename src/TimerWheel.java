@@ -0,0 +1,106 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Hashed timer wheel. Items are put into the bucket of the tick of their
+ * deadline, so scheduling is O(1) and advancing the wheel only looks at
+ * the buckets of the ticks that passed. Items whose deadline is more than
+ * one turn of the wheel away stay in their bucket until their turn comes.
+ * An item is taken out before its deadline with the entry returned by
+ * schedule (see cancel).
+ */
+public class TimerWheel<T> {
+
+    /*
+     * The number of buckets is rounded up to a power of two
+     */
+    public TimerWheel(int buckets, long tickMillis, long now) {
+        int size = Integer.highestOneBit(Math.max(1, buckets - 1)) << 1;
+        wheel = new ArrayList<List<Entry<T>>>(size);
+        for (int i = 0; i < size; i++) {
+            wheel.add(new ArrayList<Entry<T>>());
+        }
+        mask = size - 1;
+        tick = Math.max(1, tickMillis);
+        currentTick = now / tick;
+    }
+
+    public synchronized Entry<T> schedule(T item, long deadline) {
+        long due = Math.max(deadline / tick, currentTick + 1);
+        Entry<T> entry = new Entry<T>(item, deadline, (int) (due & mask));
+        wheel.get(entry.bucket).add(entry);
+        size++;
+        return entry;
+    }
+
+    /*
+     * Takes the scheduled entry out of the wheel. Returns false if its
+     * deadline passed already.
+     */
+    public synchronized boolean cancel(Entry<T> entry) {
+        List<Entry<T>> bucket = wheel.get(entry.bucket);
+        for (int i = bucket.size() - 1; i >= 0; i--) {
+            if (bucket.get(i) == entry) {
+                bucket.set(i, bucket.get(bucket.size() - 1));
+                bucket.remove(bucket.size() - 1);
+                size--;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * Moves the wheel to the given time and returns the items
+     * whose deadline passed
+     */
+    public synchronized List<T> advance(long now) {
+        List<T> expired = new ArrayList<T>();
+        long target = now / tick;
+
+        // After a whole turn every bucket has been visited
+        long last = Math.min(target, currentTick + mask + 1);
+
+        for (long t = currentTick + 1; t <= last; t++) {
+            List<Entry<T>> bucket = wheel.get((int) (t & mask));
+            for (int i = bucket.size() - 1; i >= 0; i--) {
+                Entry<T> e = bucket.get(i);
+                if (e.deadline <= now) {
+                    expired.add(e.item);
+                    bucket.set(i, bucket.get(bucket.size() - 1));
+                    bucket.remove(bucket.size() - 1);
+                    size--;
+                }
+            }
+        }
+
+        currentTick = Math.max(currentTick, target);
+        return expired;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public long tickMillis() {
+        return tick;
+    }
+
+    static class Entry<T> {
+        Entry(T t, long d, int b) {
+            item = t;
+            deadline = d;
+            bucket = b;
+        }
+
+        final T item;
+        final long deadline;
+        final int bucket;
+    }
+
+    private final List<List<Entry<T>>> wheel;
+    private final int mask;
+    private final long tick;
+    private long currentTick;
+    private int size;
+}
@@ -4,6 +4,6 @@ if [ -f "./bin/PasswordCriteria.contracts" ]; then
 	rm "./bin/PasswordCriteria.contracts"
 fi
 	
-javac -cp "lib/*" "-Acom.google.java.contract.classpath=lib/cofoja.asm-1.2-20140817.jar:lib/commons-lang3-3.4.jar" "-Acom.google.java.contract.classoutput=bin" -d bin src/*.java
+javac -cp "lib/*" "-Acom.google.java.contract.classpath=lib/cofoja.asm-1.2-20140817.jar:lib/commons-lang3-3.4.jar" "-Acom.google.java.contract.sourcepath=src" "-Acom.google.java.contract.classoutput=bin" -d bin src/*.java
 
 java -cp "bin:lib/*" BugzillaUI
\ No newline at end of file
@@ -4,7 +4,7 @@ if [ -f "./bin/PasswordCriteria.contracts" ]; then
 	rm "./bin/PasswordCriteria.contracts"
 fi
 	
-javac -cp "lib/*" "-Acom.google.java.contract.classpath=lib/cofoja.asm-1.2-20140817.jar:lib/commons-lang3-3.4.jar" "-Acom.google.java.contract.classoutput=bin" -d bin src/Bug.java src/Bugzilla.java src/ProgramTest.java src/BugzillaException.java src/BugStateException.java src/TestRunner.java
+javac -cp "lib/*" "-Acom.google.java.contract.classpath=lib/cofoja.asm-1.2-20140817.jar:lib/commons-lang3-3.4.jar" "-Acom.google.java.contract.sourcepath=src" "-Acom.google.java.contract.classoutput=bin" -d bin src/Bug.java src/Bugzilla.java src/ProgramTest.java src/BugzillaException.java src/BugStateException.java src/TestRunner.java src/BugzillaStore.java src/SnapshotStore.java src/LogStore.java src/SnapshotWriter.java src/SnapshotReader.java src/SlotStore.java src/AsyncStore.java src/LockStripes.java src/ConcurrencyTest.java src/SessionRegistry.java src/TimerWheel.java src/BugStore.java src/BugIdSequence.java src/BugIndex.java src/TextIndex.java src/BugPage.java src/BugListModel.java src/BatchResult.java src/BugzillaEvent.java src/BugzillaListener.java src/EventBus.java src/LatencyHistogram.java src/BugzillaMetrics.java src/BugzillaMetricsMXBean.java src/ContractMode.java src/BugzillaResult.java src/TextCodec.java src/MappedSlotStore.java
 
 java "-javaagent:lib/cofoja.asm-1.2-20140817.jar" -cp "bin:lib/*" TestRunner
 